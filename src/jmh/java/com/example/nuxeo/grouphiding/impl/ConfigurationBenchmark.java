@@ -0,0 +1,134 @@
+package com.example.nuxeo.grouphiding.impl;
+
+import com.example.nuxeo.grouphiding.api.RuleChange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link GroupHidingConfigurationImpl} lookups under read-only and mixed
+ * read/write loads. Data is generated from a fixed seed so that runs are comparable.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class ConfigurationBenchmark {
+
+    private static final long SEED = 42L;
+
+    private static final int USERS = 4096;
+
+    private static final int GROUPS = 1000;
+
+    /** Number of users that have hiding rules. */
+    @Param({ "100", "10000" })
+    public int ruleUsers;
+
+    /** Number of hidden groups per user with rules. */
+    @Param({ "5", "50" })
+    public int hiddenGroups;
+
+    private GroupHidingConfigurationImpl configuration;
+
+    private String[] usernames;
+
+    private List<List<String>> userGroups;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(SEED);
+        configuration = new GroupHidingConfigurationImpl();
+        // A single snapshot build, instead of a copy of the rules per added rule
+        List<RuleChange> changes = new ArrayList<>(ruleUsers * hiddenGroups);
+        for (int i = 0; i < ruleUsers; i++) {
+            for (int j = 0; j < hiddenGroups; j++) {
+                changes.add(RuleChange.add("user" + i, "group" + random.nextInt(GROUPS)));
+            }
+        }
+        configuration.applyBulkUpdate(changes, false);
+        usernames = new String[USERS];
+        userGroups = new ArrayList<>(USERS);
+        for (int i = 0; i < USERS; i++) {
+            // Half of the looked up users have rules
+            usernames[i] = "user" + (i % 2 == 0 ? random.nextInt(ruleUsers) : ruleUsers + i);
+            List<String> groups = new ArrayList<>();
+            for (int j = 0; j < 20; j++) {
+                groups.add("group" + random.nextInt(GROUPS));
+            }
+            userGroups.add(groups);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int next;
+
+        int next() {
+            return next++ & (USERS - 1);
+        }
+    }
+
+    private Set<String> read(Cursor cursor) {
+        int i = cursor.next();
+        String username = usernames[i];
+        List<String> groups = userGroups.get(i);
+        if (!configuration.hasHidingRules(username, groups, null)) {
+            return null;
+        }
+        return configuration.getHiddenGroups(username, groups, null);
+    }
+
+    private void write(Cursor cursor) {
+        // Alternately hide and unhide the same group, so that the rule set size stays stable
+        int i = cursor.next();
+        String username = usernames[i & ~1];
+        String group = userGroups.get(i & ~1).get(0);
+        if ((i & 1) == 0) {
+            configuration.addHiddenGroup(username, group);
+        } else {
+            configuration.removeHiddenGroup(username, group);
+        }
+    }
+
+    @Benchmark
+    @Group("readOnly")
+    @GroupThreads(4)
+    public Set<String> readOnly(Cursor cursor) {
+        return read(cursor);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(7)
+    public Set<String> readWriteReader(Cursor cursor) {
+        return read(cursor);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public void readWriteWriter(Cursor cursor) {
+        write(cursor);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,144 @@
+package com.example.nuxeo.grouphiding.security;
+
+import com.example.nuxeo.grouphiding.api.RuleChange;
+import com.example.nuxeo.grouphiding.impl.GroupHidingConfigurationImpl;
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+import org.nuxeo.ecm.core.api.impl.UserPrincipal;
+import org.nuxeo.ecm.core.api.security.ACE;
+import org.nuxeo.ecm.core.api.security.ACP;
+import org.nuxeo.ecm.core.api.security.Access;
+import org.nuxeo.ecm.core.api.security.impl.ACLImpl;
+import org.nuxeo.ecm.core.api.security.impl.ACPImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link GroupHidingSecurityPolicy#checkPermission} per permission check, on synthetic
+ * principals and ACPs. All the data is generated from a fixed seed so that runs are comparable
+ * release over release.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class SecurityPolicyBenchmark {
+
+    private static final long SEED = 42L;
+
+    private static final int PRINCIPALS = 1024;
+
+    private static final int ACPS = 256;
+
+    private static final int GROUPS = 1000;
+
+    private static final String PERMISSION = "Read";
+
+    // Shared, so that checks do not allocate it
+    private static final String[] RESOLVED_PERMISSIONS = { PERMISSION };
+
+    /** Number of groups each user belongs to. */
+    @Param({ "10", "100" })
+    public int userGroups;
+
+    /** Number of hidden groups of the users that have rules. */
+    @Param({ "5", "50" })
+    public int hiddenGroups;
+
+    /** Number of ACEs of each ACP. */
+    @Param({ "10", "100" })
+    public int aces;
+
+    /** Fraction of the principals that have hiding rules, the others take the fast path. */
+    @Param({ "0.0", "0.1", "1.0" })
+    public double ruleRatio;
+
+    private GroupHidingSecurityPolicy policy;
+
+    private NuxeoPrincipal[] principals;
+
+    private ACP[] acps;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(SEED);
+        GroupHidingConfigurationImpl configuration = new GroupHidingConfigurationImpl();
+        policy = new GroupHidingSecurityPolicy(configuration);
+
+        // Applied as a single snapshot build, instead of a copy of the rules per added rule
+        List<RuleChange> changes = new ArrayList<>();
+        principals = new NuxeoPrincipal[PRINCIPALS];
+        for (int i = 0; i < PRINCIPALS; i++) {
+            String username = "user" + i;
+            List<String> groups = new ArrayList<>(userGroups);
+            for (int j = 0; j < userGroups; j++) {
+                groups.add(group(random));
+            }
+            if (random.nextDouble() < ruleRatio) {
+                for (int j = 0; j < hiddenGroups; j++) {
+                    // Hide mostly groups the user belongs to, so that decisions actually differ
+                    changes.add(RuleChange.add(username,
+                            j < groups.size() && random.nextBoolean() ? groups.get(j) : group(random)));
+                }
+            }
+            principals[i] = new UserPrincipal(username, groups, false, false);
+        }
+        configuration.applyBulkUpdate(changes, false);
+
+        acps = new ACP[ACPS];
+        for (int i = 0; i < ACPS; i++) {
+            ACLImpl acl = new ACLImpl("local");
+            for (int j = 0; j < aces; j++) {
+                String principal = random.nextInt(10) == 0 ? "user" + random.nextInt(PRINCIPALS) : group(random);
+                acl.add(new ACE(principal, PERMISSION, true));
+            }
+            ACPImpl acp = new ACPImpl();
+            acp.addACL(acl);
+            acps[i] = acp;
+        }
+    }
+
+    private static String group(Random random) {
+        return "group" + random.nextInt(GROUPS);
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int next;
+
+        int next() {
+            return next++;
+        }
+    }
+
+    @Benchmark
+    public Access checkPermission(Cursor cursor) {
+        int i = cursor.next();
+        return policy.checkPermission(null, acps[i & (ACPS - 1)], principals[(i * 31) & (PRINCIPALS - 1)],
+                PERMISSION, RESOLVED_PERMISSIONS, null);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Access checkPermissionConcurrent(Cursor cursor) {
+        return checkPermission(cursor);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,93 @@
+package com.example.nuxeo.grouphiding.api;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Summary of a bulk update of the hiding rules.
+ */
+public final class BulkUpdateResult {
+
+    private final int changes;
+
+    private final int added;
+
+    private final int removed;
+
+    private final int clearedUsers;
+
+    private final int unchanged;
+
+    private final long rulesVersion;
+
+    public BulkUpdateResult(int changes, int added, int removed, int clearedUsers, int unchanged,
+                            long rulesVersion) {
+        this.changes = changes;
+        this.added = added;
+        this.removed = removed;
+        this.clearedUsers = clearedUsers;
+        this.unchanged = unchanged;
+        this.rulesVersion = rulesVersion;
+    }
+
+    /**
+     * @return the number of changes in the batch
+     */
+    public int getChanges() {
+        return changes;
+    }
+
+    public int getAdded() {
+        return added;
+    }
+
+    public int getRemoved() {
+        return removed;
+    }
+
+    public int getClearedUsers() {
+        return clearedUsers;
+    }
+
+    /**
+     * @return the number of changes that had no effect, e.g. adding an existing rule
+     */
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    /**
+     * @return the rules version after the update
+     */
+    public long getRulesVersion() {
+        return rulesVersion;
+    }
+
+    /**
+     * Combine the results of successive batches.
+     *
+     * @return a result summing both, with the latest rules version
+     */
+    public BulkUpdateResult plus(BulkUpdateResult other) {
+        return new BulkUpdateResult(changes + other.changes, added + other.added, removed + other.removed,
+                clearedUsers + other.clearedUsers, unchanged + other.unchanged,
+                Math.max(rulesVersion, other.rulesVersion));
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("changes", changes);
+        map.put("added", added);
+        map.put("removed", removed);
+        map.put("clearedUsers", clearedUsers);
+        map.put("unchanged", unchanged);
+        map.put("rulesVersion", rulesVersion);
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return changes + " changes: " + added + " added, " + removed + " removed, " + clearedUsers
+                + " users cleared, " + unchanged + " unchanged";
+    }
+}
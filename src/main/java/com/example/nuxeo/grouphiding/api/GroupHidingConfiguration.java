@@ -1,5 +1,9 @@
 package com.example.nuxeo.grouphiding.api;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -17,21 +21,85 @@ public interface GroupHidingConfiguration {
      */
     boolean isGroupHiddenForUser(String username, String groupName);
 
+    /**
+     * Check if a user has any per-user hidden group configured.
+     * This is lock-free and does not allocate.
+     *
+     * @param username the username to check
+     * @return true if at least one group is hidden for this user
+     */
+    boolean hasHiddenGroups(String username);
+
+    /**
+     * Check if any hiding rule may apply to a principal: rules of the user, rules of one of
+     * its groups, or rules of its tenant. Lock-free, used as the fast path of the security policy.
+     *
+     * @param username the username
+     * @param groups the groups of the principal, may be null
+     * @param tenantId the tenant of the principal, may be null
+     * @return false if no rule applies to this principal
+     */
+    boolean hasHidingRules(String username, Collection<String> groups, String tenantId);
+
+    /**
+     * Check if any hiding rule is defined, for a user, a group or a tenant. Lock-free and in
+     * constant time, used by the security policy for every query.
+     *
+     * @return false if no rule can apply to any principal
+     */
+    boolean hasRules();
+
+    /**
+     * Get the groups hidden for a principal, combining the user's hidden groups with the
+     * groups and patterns hidden by rules of the user, of its groups and of its tenant.
+     * When sub-groups are hidden, the given groups that are transitive sub-groups of a
+     * hidden group are hidden too.
+     *
+     * @param username the username
+     * @param groups the groups of the principal, patterns are matched against them
+     * @param tenantId the tenant of the principal, may be null
+     * @return unmodifiable set of hidden group names for this principal
+     */
+    Set<String> getHiddenGroups(String username, Collection<String> groups, String tenantId);
+
     /**
      * Get all hidden groups for a specific user.
+     * Only covers per-user literal rules, see {@link #getHiddenGroups(String, Collection, String)}.
      * 
      * @param username the username
-     * @return set of hidden group names for this user
+     * @return unmodifiable set of hidden group names for this user
      */
     Set<String> getHiddenGroupsForUser(String username);
 
     /**
      * Get all users that have hidden groups configured.
      * 
-     * @return set of usernames that have group hiding rules
+     * @return unmodifiable set of usernames that have group hiding rules
      */
     Set<String> getUsersWithHiddenGroups();
 
+    /**
+     * List the per-user rules sorted by username, one page at a time, for admin screens over
+     * large rule sets. Pages are keyset paginated: a page lists the users after the cursor, so
+     * rules changed between two pages never make a listing skip or repeat users.
+     *
+     * @param usernamePrefix only list the users whose name starts with it, null for all
+     * @param groupName only list the users hiding this group, null for all
+     * @param cursor the next cursor of the previous page, null for the first page
+     * @param limit the maximum number of users in the page, at most {@link RulePage#MAX_SIZE}
+     * @return the page of rules
+     */
+    RulePage listRules(String usernamePrefix, String groupName, String cursor, int limit);
+
+    /**
+     * Get the users hiding a group, a lookup in a reverse index rather than a scan of all users.
+     * Only covers per-user literal rules.
+     *
+     * @param groupName the group name
+     * @return unmodifiable sorted list of the usernames hiding the group
+     */
+    List<String> getUsersHidingGroup(String groupName);
+
     /**
      * Add a group hiding rule.
      * 
@@ -40,11 +108,41 @@ public interface GroupHidingConfiguration {
      */
     void addHiddenGroup(String username, String groupName);
 
+    /**
+     * Add a time-bounded group hiding rule, applied at {@code validFrom} and removed at
+     * {@code validUntil}. Replaces the validity of an existing rule for the same group.
+     *
+     * @param username the username
+     * @param groupName the group name to hide
+     * @param validFrom the start of the period, null to apply the rule immediately
+     * @param validUntil the end of the period, null for a rule that never expires
+     * @throws IllegalArgumentException if the period ends before it starts
+     */
+    void addHiddenGroup(String username, String groupName, Instant validFrom, Instant validUntil);
+
+    /**
+     * Get the validity of a runtime rule.
+     *
+     * @param username the username
+     * @param groupName the hidden group name
+     * @return the validity, or null if the rule does not exist or is not time-bounded
+     */
+    RuleValidity getValidity(String username, String groupName);
+
+    /**
+     * Get the validity of all the time-bounded runtime rules, including those not applying yet,
+     * which are not among the hidden groups of their user.
+     *
+     * @return an immutable copy, the validities by hidden group name by username
+     */
+    Map<String, Map<String, RuleValidity>> getTimeBoundedRules();
+
     /**
      * Remove a group hiding rule.
      * 
      * @param username the username
      * @param groupName the group name to unhide
+     * @throws IllegalArgumentException if the rule is defined by an XML contribution
      */
     void removeHiddenGroup(String username, String groupName);
 
@@ -52,6 +150,91 @@ public interface GroupHidingConfiguration {
      * Clear all hidden groups for a user.
      * 
      * @param username the username
+     * @throws IllegalArgumentException if some of the rules are defined by XML contributions
      */
     void clearHiddenGroupsForUser(String username);
+
+    /**
+     * Notify that group memberships changed outside of the hiding rules, e.g. in the user directory.
+     * The registered {@link MembershipListener}s are called, then those of the other nodes of the
+     * cluster with the same users and groups; the rules are not reloaded.
+     *
+     * @param usernames the users whose groups may have changed, null if any user may be affected
+     * @param groupNames the groups whose members or parent groups may have changed
+     */
+    void membershipChanged(Set<String> usernames, Set<String> groupNames);
+
+    void addMembershipListener(MembershipListener listener);
+
+    void removeMembershipListener(MembershipListener listener);
+
+    /**
+     * Register a listener of the candidate rules and of the stop of the service. It is called on the
+     * thread loading or clearing the candidate, or stopping the service.
+     */
+    void addLifecycleListener(LifecycleListener listener);
+
+    void removeLifecycleListener(LifecycleListener listener);
+
+    /**
+     * Get the current version of the hiding rules.
+     * The version increases every time a rule is added or removed, so callers
+     * can use it to invalidate anything they derived from the rules.
+     *
+     * @return the current rules version
+     */
+    long getRulesVersion();
+
+    /**
+     * Get the number of rules, counting each hidden group of a user as one rule.
+     *
+     * @return the number of rules
+     */
+    int getRuleCount();
+
+    /**
+     * Apply a batch of per-user rule changes atomically: readers see either none or all of them.
+     * The batch is persisted and propagated to the cluster once.
+     *
+     * @param changes the changes, applied in order
+     * @param replaceAll if true, all the rules added at runtime are dropped before applying
+     *            the changes; rules contributed through XML are kept
+     * @return a summary of the update
+     * @throws IllegalArgumentException if a change removes rules contributed through XML, in which
+     *             case no change is applied
+     */
+    BulkUpdateResult applyBulkUpdate(List<RuleChange> changes, boolean replaceAll);
+
+    /**
+     * Load a candidate rule set alongside the live rules, for shadow evaluation: the security policy
+     * evaluates a sample of the checks with it too and records the differences, without enforcing
+     * or persisting it. The candidate is the live rules with the changes applied, as they are when
+     * loaded; loading another candidate replaces it and its statistics.
+     *
+     * @param changes the changes, applied in order
+     * @param replaceAll if true, the candidate starts from the rules contributed through XML only
+     * @return a summary of the candidate against the live rules
+     */
+    BulkUpdateResult loadShadowRules(List<RuleChange> changes, boolean replaceAll);
+
+    /**
+     * Drop the candidate rule set and its statistics, ending the shadow evaluation.
+     */
+    void clearShadowRules();
+
+    /**
+     * Get the groups the candidate rule set hides for a principal, as {@link #getHiddenGroups}
+     * does for the live rules.
+     *
+     * @return an unmodifiable set of group names, empty if no candidate is loaded
+     */
+    Set<String> getShadowHiddenGroups(String username, Collection<String> groups, String tenantId);
+
+    /**
+     * Get the statistics of the shadow evaluation of the candidate rule set. This is lock-free
+     * and does not allocate, so the security policy checks it on each permission check.
+     *
+     * @return the statistics, or null if no candidate is loaded
+     */
+    ShadowStatistics getShadowStatistics();
 }
\ No newline at end of file
@@ -0,0 +1,71 @@
+package com.example.nuxeo.grouphiding.api;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+/**
+ * Persistence backend for the hiding rules changed at runtime.
+ * Rules contributed through XML are not persisted, they are reloaded from their contributions.
+ * Implementations must be thread-safe.
+ */
+public interface GroupHidingRuleStore {
+
+    /**
+     * Load all persisted rules.
+     *
+     * @return map of username to hidden group names
+     */
+    Map<String, Set<String>> loadAll();
+
+    /**
+     * Persist the hidden groups of a user.
+     *
+     * @param username the username
+     * @param hiddenGroups the hidden groups, an empty set deletes the rules of the user
+     */
+    void save(String username, Set<String> hiddenGroups);
+
+    /**
+     * Persist the hidden groups of several users.
+     *
+     * @param rules map of username to hidden group names, empty sets delete the rules of a user
+     */
+    default void saveAll(Map<String, Set<String>> rules) {
+        for (Map.Entry<String, Set<String>> entry : rules.entrySet()) {
+            save(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Update the hidden groups of a user from the stored ones, so that the changes made meanwhile by
+     * other nodes are kept. Stores shared by several nodes must make it atomic; the default
+     * implementation is not.
+     *
+     * @param username the username
+     * @param update computes the new hidden groups from the stored ones, empty if none; it may be called
+     *            again if they changed concurrently, so it must not have side effects
+     * @return the hidden groups stored by the update
+     */
+    default Set<String> update(String username, UnaryOperator<Set<String>> update) {
+        Set<String> updated = update.apply(loadAll().getOrDefault(username, Collections.emptySet()));
+        save(username, updated);
+        return updated;
+    }
+
+    /**
+     * Update the hidden groups of several users, as {@link #update}.
+     *
+     * @param updates the update of each user
+     * @return the hidden groups stored by the update of each user
+     */
+    default Map<String, Set<String>> updateAll(Map<String, UnaryOperator<Set<String>>> updates) {
+        Map<String, Set<String>> updated = new HashMap<>();
+        for (Map.Entry<String, UnaryOperator<Set<String>>> entry : updates.entrySet()) {
+            updated.put(entry.getKey(), update(entry.getKey(), entry.getValue()));
+        }
+        return updated;
+    }
+}
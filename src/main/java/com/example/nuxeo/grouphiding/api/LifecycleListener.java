@@ -0,0 +1,27 @@
+package com.example.nuxeo.grouphiding.api;
+
+/**
+ * Listener notified when the candidate rules are loaded or cleared and when the configuration
+ * service stops, so that background work depending on them only runs while it is needed.
+ */
+public interface LifecycleListener {
+
+    /**
+     * Candidate rules were loaded for shadow evaluation, possibly replacing previous ones.
+     */
+    default void shadowRulesLoaded() {
+    }
+
+    /**
+     * The candidate rules were cleared.
+     */
+    default void shadowRulesCleared() {
+    }
+
+    /**
+     * The service is stopping. The listener is unregistered, and must register again once the
+     * service is started again.
+     */
+    default void serviceStopped() {
+    }
+}
\ No newline at end of file
@@ -0,0 +1,17 @@
+package com.example.nuxeo.grouphiding.api;
+
+import java.util.Set;
+
+/**
+ * Listener notified when group memberships change outside of the hiding rules, e.g. in the user
+ * directory, so that state derived from the groups of users can be dropped.
+ */
+public interface MembershipListener {
+
+    /**
+     * @param usernames the users whose groups may have changed, null if any user may be affected
+     * @param groupNames the groups whose members or parent groups may have changed, users that were
+     *            or are now members of these groups may not be listed in {@code usernames}
+     */
+    void membershipChanged(Set<String> usernames, Set<String> groupNames);
+}
\ No newline at end of file
@@ -0,0 +1,105 @@
+package com.example.nuxeo.grouphiding.api;
+
+/**
+ * A single change of a per-user hiding rule, as applied by bulk updates.
+ */
+public final class RuleChange {
+
+    public enum Action {
+        /** Hide a group for a user. */
+        ADD,
+        /** Unhide a group for a user. */
+        REMOVE,
+        /** Unhide all groups for a user. */
+        CLEAR
+    }
+
+    private final Action action;
+
+    private final String username;
+
+    private final String groupName;
+
+    private final RuleValidity validity;
+
+    private RuleChange(Action action, String username, String groupName, RuleValidity validity) {
+        if (action == null) {
+            throw new IllegalArgumentException("Action cannot be null");
+        }
+        if (username == null || username.trim().isEmpty()) {
+            throw new IllegalArgumentException("Username cannot be null or empty");
+        }
+        if (action != Action.CLEAR && (groupName == null || groupName.trim().isEmpty())) {
+            throw new IllegalArgumentException("Group name cannot be null or empty");
+        }
+        if (action != Action.ADD && validity != null) {
+            throw new IllegalArgumentException("Only added rules can have a validity");
+        }
+        this.action = action;
+        this.username = username.trim();
+        this.groupName = groupName == null ? null : groupName.trim();
+        this.validity = validity;
+    }
+
+    public static RuleChange of(Action action, String username, String groupName) {
+        return new RuleChange(action, username, groupName, null);
+    }
+
+    /**
+     * @param validity the validity of an added rule, null for a permanent rule
+     * @throws IllegalArgumentException if the action is not {@link Action#ADD} and a validity is given
+     */
+    public static RuleChange of(Action action, String username, String groupName, RuleValidity validity) {
+        return new RuleChange(action, username, groupName, validity);
+    }
+
+    public static RuleChange add(String username, String groupName) {
+        return new RuleChange(Action.ADD, username, groupName, null);
+    }
+
+    /**
+     * Add a time-bounded rule, see {@link GroupHidingConfiguration#addHiddenGroup(String, String, java.time.Instant,
+     * java.time.Instant)}.
+     *
+     * @param validity the validity of the rule, null for a permanent rule
+     */
+    public static RuleChange add(String username, String groupName, RuleValidity validity) {
+        return new RuleChange(Action.ADD, username, groupName, validity);
+    }
+
+    public static RuleChange remove(String username, String groupName) {
+        return new RuleChange(Action.REMOVE, username, groupName, null);
+    }
+
+    public static RuleChange clear(String username) {
+        return new RuleChange(Action.CLEAR, username, null, null);
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * @return the group name, null for {@link Action#CLEAR}
+     */
+    public String getGroupName() {
+        return groupName;
+    }
+
+    /**
+     * @return the validity of an added time-bounded rule, null for a permanent rule
+     */
+    public RuleValidity getValidity() {
+        return validity;
+    }
+
+    @Override
+    public String toString() {
+        return action + " " + username + (groupName != null ? " " + groupName : "")
+                + (validity != null ? " " + validity : "");
+    }
+}
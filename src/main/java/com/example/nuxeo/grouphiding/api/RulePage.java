@@ -0,0 +1,82 @@
+package com.example.nuxeo.grouphiding.api;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A page of per-user rules, sorted by username, as listed by
+ * {@link GroupHidingConfiguration#listRules}.
+ */
+public final class RulePage {
+
+    /**
+     * Maximum number of users in a page.
+     */
+    public static final int MAX_SIZE = 1000;
+
+    /**
+     * The hidden groups of a user.
+     */
+    public static final class Entry {
+
+        private final String username;
+
+        private final List<String> hiddenGroups;
+
+        public Entry(String username, List<String> hiddenGroups) {
+            this.username = username;
+            this.hiddenGroups = Collections.unmodifiableList(hiddenGroups);
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        /**
+         * @return the sorted hidden groups of the user
+         */
+        public List<String> getHiddenGroups() {
+            return hiddenGroups;
+        }
+    }
+
+    private final List<Entry> entries;
+
+    private final String nextCursor;
+
+    private final int total;
+
+    private final long rulesVersion;
+
+    public RulePage(List<Entry> entries, String nextCursor, int total, long rulesVersion) {
+        this.entries = Collections.unmodifiableList(entries);
+        this.nextCursor = nextCursor;
+        this.total = total;
+        this.rulesVersion = rulesVersion;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return the cursor to pass to get the next page, null if this page is the last one
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * @return the number of users matching the filters, in all pages
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * @return the version of the rules the page was read from
+     */
+    public long getRulesVersion() {
+        return rulesVersion;
+    }
+}
\ No newline at end of file
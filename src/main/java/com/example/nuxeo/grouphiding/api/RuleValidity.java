@@ -0,0 +1,138 @@
+package com.example.nuxeo.grouphiding.api;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Objects;
+
+/**
+ * Validity period of a time-bounded hiding rule: the rule applies from {@code validFrom}
+ * (inclusive) until {@code validUntil} (exclusive), either bound being optional.
+ * Rules without validity, represented by null, always apply.
+ */
+public final class RuleValidity {
+
+    private final Instant validFrom;
+
+    private final Instant validUntil;
+
+    private RuleValidity(Instant validFrom, Instant validUntil) {
+        this.validFrom = validFrom;
+        this.validUntil = validUntil;
+    }
+
+    /**
+     * @param validFrom the start of the period, null if the rule applies immediately
+     * @param validUntil the end of the period, null if the rule never expires
+     * @return the validity, or null if both bounds are null
+     * @throws IllegalArgumentException if the period ends before it starts
+     */
+    public static RuleValidity of(Instant validFrom, Instant validUntil) {
+        if (validFrom == null && validUntil == null) {
+            return null;
+        }
+        if (validFrom != null && validUntil != null && !validUntil.isAfter(validFrom)) {
+            throw new IllegalArgumentException("Rule validity ends before it starts: " + validFrom + "/" + validUntil);
+        }
+        return new RuleValidity(validFrom, validUntil);
+    }
+
+    /**
+     * Parse a validity bound, either an ISO-8601 instant such as {@code 2026-03-01T08:00:00Z} or an
+     * ISO-8601 date such as {@code 2026-03-01}, meaning the start of that day in UTC.
+     *
+     * @return the instant, or null if the value is null or empty
+     * @throws IllegalArgumentException if the value cannot be parsed
+     */
+    public static Instant parseInstant(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        String trimmed = value.trim();
+        try {
+            if (trimmed.indexOf('T') < 0) {
+                return LocalDate.parse(trimmed).atStartOfDay(ZoneOffset.UTC).toInstant();
+            }
+            return Instant.parse(trimmed);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date: " + value, e);
+        }
+    }
+
+    /**
+     * Parse a validity written as {@link #toString()}, an ISO-8601 interval with optional bounds
+     * such as {@code 2026-03-01T00:00:00Z/} or {@code /2026-04-01T00:00:00Z}.
+     *
+     * @return the validity, or null if both bounds are empty
+     * @throws IllegalArgumentException if the value cannot be parsed
+     */
+    public static RuleValidity parse(String value) {
+        int slash = value.indexOf('/');
+        if (slash < 0) {
+            throw new IllegalArgumentException("Invalid rule validity: " + value);
+        }
+        return of(parseInstant(value.substring(0, slash)), parseInstant(value.substring(slash + 1)));
+    }
+
+    /**
+     * @return the start of the period, null if unbounded
+     */
+    public Instant getValidFrom() {
+        return validFrom;
+    }
+
+    /**
+     * @return the end of the period, null if unbounded
+     */
+    public Instant getValidUntil() {
+        return validUntil;
+    }
+
+    public boolean isActive(Instant now) {
+        return (validFrom == null || !now.isBefore(validFrom)) && (validUntil == null || now.isBefore(validUntil));
+    }
+
+    /**
+     * @return true if the rule will never apply again
+     */
+    public boolean isExpired(Instant now) {
+        return validUntil != null && !now.isBefore(validUntil);
+    }
+
+    /**
+     * @return the next instant after {@code now} at which the rule starts or stops applying,
+     *         null if there is none
+     */
+    public Instant nextBoundary(Instant now) {
+        if (validFrom != null && validFrom.isAfter(now)) {
+            return validFrom;
+        }
+        if (validUntil != null && validUntil.isAfter(now)) {
+            return validUntil;
+        }
+        return null;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof RuleValidity)) {
+            return false;
+        }
+        RuleValidity other = (RuleValidity) obj;
+        return Objects.equals(validFrom, other.validFrom) && Objects.equals(validUntil, other.validUntil);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(validFrom, validUntil);
+    }
+
+    @Override
+    public String toString() {
+        return (validFrom != null ? validFrom.toString() : "") + "/" + (validUntil != null ? validUntil.toString() : "");
+    }
+}
\ No newline at end of file
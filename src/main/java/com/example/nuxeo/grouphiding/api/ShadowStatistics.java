@@ -0,0 +1,248 @@
+package com.example.nuxeo.grouphiding.api;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory statistics of the shadow evaluation of a candidate rule set: how many sampled checks
+ * the candidate would decide differently from the live rules, by user and hidden group.
+ * Thread safe; a new instance is created each time a candidate is loaded.
+ */
+public final class ShadowStatistics {
+
+    /**
+     * Maximum number of user and group pairs tracked per direction, the others are only counted.
+     */
+    public static final int MAX_DIFFERENCES = 10000;
+
+    private final long loadedAt;
+
+    private final long candidateRules;
+
+    private final LongAdder sampled = new LongAdder();
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final LongAdder unchanged = new LongAdder();
+
+    private final LongAdder wouldDeny = new LongAdder();
+
+    private final LongAdder wouldAllow = new LongAdder();
+
+    private final LongAdder untracked = new LongAdder();
+
+    private final Map<Difference.Key, LongAdder> wouldDenyByRule = new ConcurrentHashMap<>();
+
+    private final Map<Difference.Key, LongAdder> wouldAllowByRule = new ConcurrentHashMap<>();
+
+    /**
+     * @param loadedAt when the candidate was loaded, in milliseconds since the epoch
+     * @param candidateRules the number of rules of the candidate
+     */
+    public ShadowStatistics(long loadedAt, long candidateRules) {
+        this.loadedAt = loadedAt;
+        this.candidateRules = candidateRules;
+    }
+
+    /**
+     * A user and hidden group pair, with the number of sampled checks it decided differently.
+     */
+    public static final class Difference {
+
+        private final String username;
+
+        private final String hiddenGroup;
+
+        private final long count;
+
+        Difference(String username, String hiddenGroup, long count) {
+            this.username = username;
+            this.hiddenGroup = hiddenGroup;
+            this.count = count;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        /**
+         * @return the hidden group granting the access denied by the candidate, or by the live
+         *         rules for the checks the candidate would allow
+         */
+        public String getHiddenGroup() {
+            return hiddenGroup;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        private static final class Key {
+
+            private final String username;
+
+            private final String hiddenGroup;
+
+            Key(String username, String hiddenGroup) {
+                this.username = username;
+                this.hiddenGroup = hiddenGroup;
+            }
+
+            @Override
+            public boolean equals(Object obj) {
+                if (!(obj instanceof Key)) {
+                    return false;
+                }
+                Key other = (Key) obj;
+                return username.equals(other.username) && hiddenGroup.equals(other.hiddenGroup);
+            }
+
+            @Override
+            public int hashCode() {
+                return 31 * username.hashCode() + hiddenGroup.hashCode();
+            }
+        }
+    }
+
+    /**
+     * Record a check sampled for shadow evaluation.
+     */
+    public void recordSampled() {
+        sampled.increment();
+    }
+
+    /**
+     * Record a sampled check dropped because the evaluation was behind.
+     */
+    public void recordDropped() {
+        dropped.increment();
+    }
+
+    /**
+     * Record a check decided the same way by the live rules and the candidate.
+     */
+    public void recordUnchanged() {
+        unchanged.increment();
+    }
+
+    /**
+     * Record a check allowed by the live rules that the candidate would deny.
+     *
+     * @param hiddenGroup the group granting access, hidden by the candidate
+     */
+    public void recordWouldDeny(String username, String hiddenGroup) {
+        wouldDeny.increment();
+        record(wouldDenyByRule, username, hiddenGroup);
+    }
+
+    /**
+     * Record a check denied by the live rules that the candidate would allow.
+     *
+     * @param hiddenGroup the group granting access, hidden by the live rules
+     */
+    public void recordWouldAllow(String username, String hiddenGroup) {
+        wouldAllow.increment();
+        record(wouldAllowByRule, username, hiddenGroup);
+    }
+
+    private void record(Map<Difference.Key, LongAdder> counts, String username, String hiddenGroup) {
+        Difference.Key key = new Difference.Key(String.valueOf(username), String.valueOf(hiddenGroup));
+        LongAdder count = counts.get(key);
+        if (count == null) {
+            if (counts.size() >= MAX_DIFFERENCES) {
+                untracked.increment();
+                return;
+            }
+            count = counts.computeIfAbsent(key, k -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+
+    public long getCandidateRules() {
+        return candidateRules;
+    }
+
+    public long getSampled() {
+        return sampled.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getUnchanged() {
+        return unchanged.sum();
+    }
+
+    public long getWouldDeny() {
+        return wouldDeny.sum();
+    }
+
+    public long getWouldAllow() {
+        return wouldAllow.sum();
+    }
+
+    /**
+     * @return the number of differences not attributed to a user and group, past
+     *         {@value #MAX_DIFFERENCES} pairs
+     */
+    public long getUntracked() {
+        return untracked.sum();
+    }
+
+    /**
+     * @param limit the maximum number of pairs returned
+     * @return the user and group pairs with the most checks the candidate would deny, most first
+     */
+    public List<Difference> getTopWouldDeny(int limit) {
+        return top(wouldDenyByRule, limit);
+    }
+
+    /**
+     * @param limit the maximum number of pairs returned
+     * @return the user and group pairs with the most checks the candidate would allow, most first
+     */
+    public List<Difference> getTopWouldAllow(int limit) {
+        return top(wouldAllowByRule, limit);
+    }
+
+    private static List<Difference> top(Map<Difference.Key, LongAdder> counts, int limit) {
+        List<Difference> differences = new ArrayList<>(counts.size());
+        for (Map.Entry<Difference.Key, LongAdder> entry : counts.entrySet()) {
+            differences.add(new Difference(entry.getKey().username, entry.getKey().hiddenGroup,
+                    entry.getValue().sum()));
+        }
+        differences.sort(Comparator.comparingLong(Difference::getCount).reversed()
+                                   .thenComparing(Difference::getUsername)
+                                   .thenComparing(Difference::getHiddenGroup));
+        return differences.size() > limit ? new ArrayList<>(differences.subList(0, limit)) : differences;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("loadedAt", loadedAt);
+        map.put("candidateRules", candidateRules);
+        map.put("sampled", getSampled());
+        map.put("dropped", getDropped());
+        map.put("unchanged", getUnchanged());
+        map.put("wouldDeny", getWouldDeny());
+        map.put("wouldAllow", getWouldAllow());
+        map.put("untracked", getUntracked());
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return getSampled() + " sampled checks: " + getWouldDeny() + " would be denied, " + getWouldAllow()
+                + " would be allowed, " + getUnchanged() + " unchanged, " + getDropped() + " dropped";
+    }
+}
\ No newline at end of file
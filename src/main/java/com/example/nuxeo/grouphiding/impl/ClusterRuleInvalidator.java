@@ -0,0 +1,302 @@
+package com.example.nuxeo.grouphiding.impl;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.pubsub.PubSubService;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+/**
+ * Propagates rule changes to the other nodes of a cluster through the Nuxeo pub/sub service.
+ * Both sides are debounced: all the changes made during the delay are announced by a single
+ * message, and all the messages received during the delay trigger a single reload.
+ * <p>
+ * Group membership changes are announced separately, with the affected users and groups, so the
+ * other nodes only drop the state derived from them instead of reloading the rules.
+ */
+public class ClusterRuleInvalidator {
+
+    private static final Logger log = LogManager.getLogger(ClusterRuleInvalidator.class);
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    public static final String TOPIC = "grouphiding-rules";
+
+    public static final long DEFAULT_DELAY_MS = 500;
+
+    /** Above this number of pending users, a membership message affects any user. */
+    public static final int MAX_ANNOUNCED_USERS = 10000;
+
+    protected final String nodeId = UUID.randomUUID().toString();
+
+    protected final Runnable reload;
+
+    protected final BiConsumer<Set<String>, Set<String>> membershipChanged;
+
+    protected final long delayMs;
+
+    protected final AtomicBoolean publishPending = new AtomicBoolean();
+
+    protected final AtomicBoolean reloadPending = new AtomicBoolean();
+
+    protected final BiConsumer<String, byte[]> subscriber = this::onMessage;
+
+    // Guarded by this, null users meaning any user
+    protected Set<String> pendingUsers = new HashSet<>();
+
+    protected Set<String> pendingGroups = new HashSet<>();
+
+    protected boolean membershipPending;
+
+    protected ScheduledExecutorService executor;
+
+    protected PubSubService pubSub;
+
+    /**
+     * @param reload the action reloading the rules from the store, null if the rules are not persisted
+     * @param membershipChanged the action dropping the state derived from the memberships of users and groups
+     * @param delayMs the debounce delay
+     */
+    public ClusterRuleInvalidator(Runnable reload, BiConsumer<Set<String>, Set<String>> membershipChanged,
+                                  long delayMs) {
+        this.reload = reload;
+        this.membershipChanged = membershipChanged;
+        this.delayMs = delayMs;
+    }
+
+    public void start() {
+        pubSub = Framework.getService(PubSubService.class);
+        if (pubSub == null) {
+            log.debug("PubSubService not available, group hiding rule changes stay local");
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "grouphiding-invalidator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        pubSub.registerSubscriber(TOPIC, subscriber);
+    }
+
+    public void stop() {
+        if (pubSub != null) {
+            pubSub.unregisterSubscriber(TOPIC, subscriber);
+            pubSub = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Announce that the rules changed on this node.
+     */
+    public void rulesChanged() {
+        if (pubSub == null || !publishPending.compareAndSet(false, true)) {
+            return;
+        }
+        executor.schedule(() -> {
+            // Reset first, so changes made while publishing schedule another message
+            publishPending.set(false);
+            pubSub.publish(TOPIC, nodeId.getBytes(StandardCharsets.UTF_8));
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Announce that the memberships of users and groups changed on this node.
+     *
+     * @param usernames the affected users, null if any user may be affected
+     * @param groupNames the affected groups
+     */
+    public void membershipChanged(Set<String> usernames, Set<String> groupNames) {
+        if (pubSub == null) {
+            return;
+        }
+        synchronized (this) {
+            if (usernames == null || pendingUsers == null
+                    || pendingUsers.size() + usernames.size() > MAX_ANNOUNCED_USERS) {
+                pendingUsers = null;
+            } else {
+                pendingUsers.addAll(usernames);
+            }
+            if (groupNames != null) {
+                pendingGroups.addAll(groupNames);
+            }
+            if (membershipPending) {
+                return;
+            }
+            membershipPending = true;
+        }
+        executor.schedule(this::publishMembership, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    protected void publishMembership() {
+        Set<String> users;
+        Set<String> groups;
+        synchronized (this) {
+            // Taken first, so changes made while publishing schedule another message
+            users = pendingUsers;
+            groups = pendingGroups;
+            pendingUsers = new HashSet<>();
+            pendingGroups = new HashSet<>();
+            membershipPending = false;
+        }
+        PubSubService current = pubSub;
+        if (current != null) {
+            current.publish(TOPIC, encodeMembership(nodeId, users, groups));
+        }
+    }
+
+    protected void onMessage(String topic, byte[] message) {
+        if (message.length > 0 && message[0] == '{') {
+            onMembershipMessage(message);
+            return;
+        }
+        if (reload == null || nodeId.equals(new String(message, StandardCharsets.UTF_8))) {
+            // Nothing to reload, or our own change
+            return;
+        }
+        if (!reloadPending.compareAndSet(false, true)) {
+            return;
+        }
+        executor.schedule(() -> {
+            reloadPending.set(false);
+            try {
+                reload.run();
+            } catch (RuntimeException e) {
+                log.error("Failed to reload group hiding rules", e);
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    protected void onMembershipMessage(byte[] message) {
+        MembershipMessage decoded;
+        try {
+            decoded = decodeMembership(message);
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Ignoring invalid group hiding membership message", e);
+            return;
+        }
+        if (nodeId.equals(decoded.node)) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                membershipChanged.accept(decoded.users, decoded.groups);
+            } catch (RuntimeException e) {
+                log.error("Failed to apply group membership change from node {}", decoded.node, e);
+            }
+        });
+    }
+
+    static byte[] encodeMembership(String node, Set<String> users, Set<String> groups) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeStringField("node", node);
+            generator.writeFieldName("users");
+            writeNames(generator, users);
+            generator.writeFieldName("groups");
+            writeNames(generator, groups);
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeNames(JsonGenerator generator, Set<String> names) throws IOException {
+        if (names == null) {
+            generator.writeNull();
+            return;
+        }
+        generator.writeStartArray();
+        for (String name : names) {
+            generator.writeString(name);
+        }
+        generator.writeEndArray();
+    }
+
+    static MembershipMessage decodeMembership(byte[] message) throws IOException {
+        String node = null;
+        Set<String> users = Collections.emptySet();
+        Set<String> groups = Collections.emptySet();
+        try (JsonParser parser = JSON_FACTORY.createParser(message)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Expected a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                case "node":
+                    node = parser.getValueAsString();
+                    break;
+                case "users":
+                    users = readNames(parser);
+                    break;
+                case "groups":
+                    groups = readNames(parser);
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+                }
+            }
+        }
+        if (node == null) {
+            throw new IllegalArgumentException("Missing node");
+        }
+        return new MembershipMessage(node, users, groups == null ? Collections.emptySet() : groups);
+    }
+
+    private static Set<String> readNames(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            throw new IllegalArgumentException("Expected an array of names");
+        }
+        Set<String> names = new HashSet<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            names.add(parser.getValueAsString());
+        }
+        return names;
+    }
+
+    /**
+     * A decoded membership message.
+     */
+    static final class MembershipMessage {
+
+        final String node;
+
+        final Set<String> users;
+
+        final Set<String> groups;
+
+        MembershipMessage(String node, Set<String> users, Set<String> groups) {
+            this.node = node;
+            this.users = users;
+            this.groups = groups;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.nuxeo.grouphiding.impl;
+
+import com.example.nuxeo.grouphiding.api.GroupHidingRuleStore;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+/**
+ * Rule store persisting rules to a local properties file, one user per entry.
+ * Meant for single node setups and tests: the file is not shared across a cluster.
+ */
+public class FileRuleStore implements GroupHidingRuleStore {
+
+    public static final String DEFAULT_FILE_NAME = "grouphiding-rules.properties";
+
+    protected final Path file;
+
+    public FileRuleStore(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public synchronized Map<String, Set<String>> loadAll() {
+        Map<String, Set<String>> rules = new HashMap<>();
+        for (Map.Entry<Object, Object> entry : read().entrySet()) {
+            Set<String> groups = decode((String) entry.getValue());
+            if (!groups.isEmpty()) {
+                rules.put((String) entry.getKey(), groups);
+            }
+        }
+        return rules;
+    }
+
+    @Override
+    public void save(String username, Set<String> hiddenGroups) {
+        saveAll(Map.of(username, hiddenGroups));
+    }
+
+    @Override
+    public synchronized void saveAll(Map<String, Set<String>> rules) {
+        Properties properties = read();
+        for (Map.Entry<String, Set<String>> entry : rules.entrySet()) {
+            if (entry.getValue().isEmpty()) {
+                properties.remove(entry.getKey());
+            } else {
+                properties.setProperty(entry.getKey(), String.join("\n", entry.getValue()));
+            }
+        }
+        write(properties);
+    }
+
+    @Override
+    public Set<String> update(String username, UnaryOperator<Set<String>> update) {
+        return updateAll(Map.of(username, update)).get(username);
+    }
+
+    /**
+     * Read the file, update the users and write it once. Atomic for the updates made through this
+     * store, the file is not shared across a cluster.
+     */
+    @Override
+    public synchronized Map<String, Set<String>> updateAll(Map<String, UnaryOperator<Set<String>>> updates) {
+        Properties properties = read();
+        Map<String, Set<String>> updated = new HashMap<>();
+        for (Map.Entry<String, UnaryOperator<Set<String>>> entry : updates.entrySet()) {
+            String value = properties.getProperty(entry.getKey());
+            Set<String> groups = entry.getValue().apply(value == null ? Collections.emptySet() : decode(value));
+            if (groups.isEmpty()) {
+                properties.remove(entry.getKey());
+            } else {
+                properties.setProperty(entry.getKey(), String.join("\n", groups));
+            }
+            updated.put(entry.getKey(), groups);
+        }
+        write(properties);
+        return updated;
+    }
+
+    protected static Set<String> decode(String value) {
+        Set<String> groups = new LinkedHashSet<>(Arrays.asList(value.split("\n")));
+        groups.remove("");
+        return groups;
+    }
+
+    protected Properties read() {
+        Properties properties = new Properties();
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read group hiding rules from " + file, e);
+            }
+        }
+        return properties;
+    }
+
+    protected void write(Properties properties) {
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            // Write to a temporary file then move it, so a crash never leaves a truncated file
+            Path tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                properties.store(writer, "Group hiding rules");
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write group hiding rules to " + file, e);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.nuxeo.grouphiding.impl;
+
+import org.nuxeo.ecm.core.api.NuxeoGroup;
+import org.nuxeo.ecm.platform.usermanager.UserManager;
+import org.nuxeo.runtime.api.Framework;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Transitive closure of the group hierarchy, for the groups it is asked about: each such ancestor
+ * group maps to the bitset of all its descendant groups, interned in a dictionary. A bitset is
+ * computed once by walking the sub-groups, then checking whether a group is a descendant is a
+ * lookup and a bit test. Bitsets are never modified once published; when a group changes, only
+ * the bitsets of the ancestors that contained it are dropped.
+ */
+public class GroupClosureIndex {
+
+    private final GroupDictionary dictionary = new GroupDictionary();
+
+    // Direct sub-groups of a group, null if unknown
+    private final Function<String, Collection<String>> subGroups;
+
+    private final Map<String, BitSet> descendants = new ConcurrentHashMap<>();
+
+    // Incremented by each invalidation, so a closure walked meanwhile is not kept
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Create an index of the group hierarchy of the UserManager.
+     */
+    public GroupClosureIndex() {
+        this(GroupClosureIndex::getMemberGroups);
+    }
+
+    /**
+     * @param subGroups the provider of the direct sub-groups of a group
+     */
+    public GroupClosureIndex(Function<String, Collection<String>> subGroups) {
+        this.subGroups = subGroups;
+    }
+
+    private static Collection<String> getMemberGroups(String groupName) {
+        UserManager userManager = Framework.getService(UserManager.class);
+        NuxeoGroup group = userManager != null ? userManager.getGroup(groupName) : null;
+        return group != null ? group.getMemberGroups() : null;
+    }
+
+    /**
+     * @return true if the group is a direct or transitive sub-group of the ancestor
+     */
+    public boolean isDescendant(String group, String ancestor) {
+        // Walk first, it interns the descendants
+        BitSet closure = descendantsOf(ancestor);
+        int id = dictionary.idOf(group);
+        return id != GroupDictionary.UNKNOWN && closure.get(id);
+    }
+
+    /**
+     * Add to hidden groups the groups that are descendants of one of them.
+     *
+     * @param hiddenGroups the hidden groups
+     * @param groups the candidate groups, typically all the groups of a user
+     * @return the hidden groups and their descendants among the candidates, the same set if none
+     */
+    public Set<String> withDescendants(Set<String> hiddenGroups, Collection<String> groups) {
+        List<String> added = null;
+        for (String group : groups) {
+            if (hiddenGroups.contains(group)) {
+                continue;
+            }
+            for (String hidden : hiddenGroups) {
+                if (isDescendant(group, hidden)) {
+                    if (added == null) {
+                        added = new ArrayList<>();
+                    }
+                    added.add(group);
+                    break;
+                }
+            }
+        }
+        if (added == null) {
+            return hiddenGroups;
+        }
+        if (hiddenGroups instanceof HiddenGroupSet) {
+            return ((HiddenGroupSet) hiddenGroups).withAll(added);
+        }
+        Set<String> result = new HashSet<>(hiddenGroups);
+        result.addAll(added);
+        return Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * Drop the closures that may have changed with the given groups: the closures of these groups,
+     * and of the groups they were descendants of.
+     *
+     * @param groupNames the changed groups, null to drop everything
+     */
+    public void invalidate(Collection<String> groupNames) {
+        if (groupNames == null) {
+            generation.incrementAndGet();
+            descendants.clear();
+            return;
+        }
+        if (groupNames.isEmpty()) {
+            return;
+        }
+        generation.incrementAndGet();
+        BitSet changed = new BitSet();
+        for (String group : groupNames) {
+            descendants.remove(group);
+            int id = dictionary.idOf(group);
+            if (id != GroupDictionary.UNKNOWN) {
+                changed.set(id);
+            }
+        }
+        if (!changed.isEmpty()) {
+            descendants.values().removeIf(closure -> closure.intersects(changed));
+        }
+    }
+
+    /**
+     * @return the number of groups whose closure is computed
+     */
+    public int size() {
+        return descendants.size();
+    }
+
+    private BitSet descendantsOf(String ancestor) {
+        BitSet closure = descendants.get(ancestor);
+        if (closure != null) {
+            return closure;
+        }
+        // Walked outside of the map, which must not call the directory while holding a bin lock;
+        // concurrent walks of the same group may happen, the first one published wins
+        long walkGeneration = generation.get();
+        closure = walk(ancestor);
+        BitSet existing = descendants.putIfAbsent(ancestor, closure);
+        if (existing != null) {
+            return existing;
+        }
+        if (generation.get() != walkGeneration) {
+            // The hierarchy changed during the walk, the closure may be stale
+            descendants.remove(ancestor, closure);
+        }
+        return closure;
+    }
+
+    private BitSet walk(String ancestor) {
+        BitSet closure = new BitSet();
+        Set<String> visited = new HashSet<>();
+        visited.add(ancestor);
+        Deque<String> queue = new ArrayDeque<>();
+        queue.add(ancestor);
+        while (!queue.isEmpty()) {
+            Collection<String> children = subGroups.apply(queue.poll());
+            if (children == null) {
+                continue;
+            }
+            for (String child : children) {
+                // Directories may contain cycles
+                if (visited.add(child)) {
+                    closure.set(dictionary.intern(child));
+                    queue.add(child);
+                }
+            }
+        }
+        return closure;
+    }
+}
\ No newline at end of file
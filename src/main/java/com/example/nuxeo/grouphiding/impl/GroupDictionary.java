@@ -0,0 +1,63 @@
+package com.example.nuxeo.grouphiding.impl;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only dictionary interning group names to dense int ids.
+ * Lookups are lock-free; ids are never reused, so a group removed from all rules
+ * keeps its id, which bounds the dictionary by the number of distinct group names.
+ */
+public final class GroupDictionary {
+
+    public static final int UNKNOWN = -1;
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+    private volatile String[] names = new String[16];
+
+    // Guarded by this
+    private int size;
+
+    /**
+     * @return the id of a group, or {@link #UNKNOWN} if it was never interned
+     */
+    public int idOf(String name) {
+        Integer id = ids.get(name);
+        return id == null ? UNKNOWN : id;
+    }
+
+    /**
+     * @return the id of a group, allocating a new one if needed
+     */
+    public int intern(String name) {
+        // Lock-free when the group is already known, so concurrent builders do not contend
+        Integer id = ids.get(name);
+        return id != null ? id : allocate(name);
+    }
+
+    private synchronized int allocate(String name) {
+        Integer existing = ids.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        String[] current = names;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, size * 2);
+        }
+        current[size] = name;
+        // Publish the array before the id, so a reader seeing the id also sees the name
+        names = current;
+        ids.put(name, size);
+        return size++;
+    }
+
+    public String nameOf(int id) {
+        return names[id];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+}
@@ -1,24 +1,215 @@
 package com.example.nuxeo.grouphiding.impl;
 
+import com.example.nuxeo.grouphiding.api.BulkUpdateResult;
 import com.example.nuxeo.grouphiding.api.GroupHidingConfiguration;
+import com.example.nuxeo.grouphiding.api.GroupHidingRuleStore;
+import com.example.nuxeo.grouphiding.api.LifecycleListener;
+import com.example.nuxeo.grouphiding.api.MembershipListener;
+import com.example.nuxeo.grouphiding.api.RuleChange;
+import com.example.nuxeo.grouphiding.api.RulePage;
+import com.example.nuxeo.grouphiding.api.RuleValidity;
+import com.example.nuxeo.grouphiding.api.ShadowStatistics;
+import io.dropwizard.metrics5.MetricName;
+import io.dropwizard.metrics5.MetricRegistry;
+import io.dropwizard.metrics5.SharedMetricRegistries;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.kv.KeyValueService;
+import org.nuxeo.runtime.metrics.MetricsService;
+import org.nuxeo.runtime.model.ComponentContext;
 import org.nuxeo.runtime.model.ComponentInstance;
 import org.nuxeo.runtime.model.DefaultComponent;
 
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 
 /**
  * Default implementation of GroupHidingConfiguration.
- * Stores configuration in memory with thread-safe access.
+ * Stores configuration in memory as immutable snapshots: writes are serialized and
+ * publish a new snapshot, reads are lock-free and return shared unmodifiable views.
+ * Rules changed at runtime are persisted in a {@link GroupHidingRuleStore} and propagated
+ * to the other cluster nodes, which reload them from the store. Each change is applied to the
+ * stored rules of the user rather than written from the rules of this node, so that changes of
+ * the same user made concurrently by several nodes are all kept.
+ * XML contributions registered before {@link #start} are only collected, and built
+ * with the stored rules in a single step when the component starts.
+ * Time-bounded rules are only part of the snapshot during their validity period, the
+ * {@link RuleScheduler} adding or removing only the rules that start or stop applying.
+ * When {@value #SUBGROUPS_PROPERTY} is true, hiding a group also hides its transitive
+ * sub-groups, found in a {@link GroupClosureIndex}.
  */
 public class GroupHidingConfigurationImpl extends DefaultComponent implements GroupHidingConfiguration {
 
     private static final Logger log = LogManager.getLogger(GroupHidingConfigurationImpl.class);
 
-    // Thread-safe map to store user -> hidden groups mapping
-    private final Map<String, Set<String>> userHiddenGroups = new ConcurrentHashMap<>();
+    public static final String STORE_PROPERTY = "nuxeo.grouphiding.store";
+
+    public static final String STORE_KEYVALUE_NAME_PROPERTY = "nuxeo.grouphiding.store.keyvalue.name";
+
+    public static final String STORE_FILE_PROPERTY = "nuxeo.grouphiding.store.file";
+
+    public static final String SUBGROUPS_PROPERTY = "nuxeo.grouphiding.subgroups";
+
+    public static final String STORE_KEYVALUE = "keyvalue";
+
+    public static final String STORE_FILE = "file";
+
+    public static final String STORE_NONE = "none";
+
+    // Separates a group from its validity in the entries of the store
+    private static final char VALIDITY_SEPARATOR = '\t';
+
+    public static final MetricName STARTUP_METRIC = MetricRegistry.name("nuxeo", "grouphiding", "startup");
+
+    // Current rules, replaced as a whole on every change (copy-on-write)
+    private volatile RulesSnapshot snapshot = RulesSnapshot.empty(new GroupDictionary());
+
+    // Serializes writers, readers never lock
+    private final Object writeLock = new Object();
+
+    // XML contributions, in registration order, guarded by writeLock
+    private final List<GroupHidingDescriptor> contributions = new ArrayList<>();
+
+    // Groups hidden for each user by the contributions, null until needed again after a change, guarded by writeLock
+    private Map<String, Set<String>> contributedUserRules;
+
+    // Rules added at runtime, as persisted in the store, guarded by writeLock
+    private final Map<String, Set<String>> runtimeRules = new HashMap<>();
+
+    // Validity of the time-bounded runtime rules, by user then group, guarded by writeLock
+    private final Map<String, Map<String, RuleValidity>> runtimeValidities = new HashMap<>();
+
+    private Clock clock = Clock.systemUTC();
+
+    // Boundaries of the time-bounded rules, armed once started
+    private final RuleScheduler scheduler = new RuleScheduler(this::applySchedule, clock);
+
+    // True between activation and start, while contributions are only collected, guarded by writeLock
+    private boolean deferred;
+
+    // Null when runtime rules are not persisted
+    private GroupHidingRuleStore store;
+
+    private volatile ClusterRuleInvalidator invalidator;
+
+    // Null unless sub-groups of hidden groups are hidden too
+    private volatile GroupClosureIndex closure;
+
+    private final List<MembershipListener> membershipListeners = new CopyOnWriteArrayList<>();
+
+    private final List<LifecycleListener> lifecycleListeners = new CopyOnWriteArrayList<>();
+
+    // Candidate rules evaluated in shadow mode with their statistics, null when none
+    private volatile Shadow shadow;
+
+    @Override
+    public void activate(ComponentContext context) {
+        synchronized (writeLock) {
+            deferred = true;
+        }
+    }
+
+    @Override
+    public void start(ComponentContext context) {
+        store = createStore();
+        if (Boolean.parseBoolean(Framework.getProperty(SUBGROUPS_PROPERTY, "false"))) {
+            closure = new GroupClosureIndex();
+        }
+        build();
+        scheduler.start();
+        if (store == null) {
+            // Nothing to reload from: a reload would drop the runtime rules of this node
+            log.info("Runtime group hiding rules are not persisted, they are not propagated across the cluster");
+        }
+        ClusterRuleInvalidator clusterInvalidator = new ClusterRuleInvalidator(store != null ? this::reload : null,
+                this::notifyMembershipChanged, ClusterRuleInvalidator.DEFAULT_DELAY_MS);
+        clusterInvalidator.start();
+        invalidator = clusterInvalidator;
+    }
+
+    @Override
+    public void stop(ComponentContext context) {
+        scheduler.stop();
+        ClusterRuleInvalidator clusterInvalidator = invalidator;
+        invalidator = null;
+        if (clusterInvalidator != null) {
+            clusterInvalidator.stop();
+        }
+        for (LifecycleListener listener : lifecycleListeners) {
+            notifyLifecycle(listener, LifecycleListener::serviceStopped);
+        }
+        lifecycleListeners.clear();
+    }
+
+    /**
+     * Create the rule store configured by the {@value #STORE_PROPERTY} framework property:
+     * {@code keyvalue} (default), {@code file}, {@code none}, or the class name of a
+     * {@link GroupHidingRuleStore} implementation.
+     */
+    protected GroupHidingRuleStore createStore() {
+        String type = Framework.getProperty(STORE_PROPERTY, STORE_KEYVALUE);
+        switch (type) {
+        case STORE_NONE:
+            return null;
+        case STORE_KEYVALUE:
+            KeyValueService keyValueService = Framework.getService(KeyValueService.class);
+            if (keyValueService == null) {
+                log.warn("KeyValueService not available, runtime group hiding rules will not be persisted");
+                return null;
+            }
+            String name = Framework.getProperty(STORE_KEYVALUE_NAME_PROPERTY, KeyValueRuleStore.DEFAULT_STORE_NAME);
+            return new KeyValueRuleStore(keyValueService.getKeyValueStore(name));
+        case STORE_FILE:
+            String path = Framework.getProperty(STORE_FILE_PROPERTY);
+            return new FileRuleStore(path != null ? Paths.get(path)
+                    : Framework.getRuntimeDataDir().toPath().resolve(FileRuleStore.DEFAULT_FILE_NAME));
+        default:
+            try {
+                return (GroupHidingRuleStore) Class.forName(type).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                throw new IllegalArgumentException("Invalid group hiding rule store: " + type, e);
+            }
+        }
+    }
+
+    /**
+     * Set the index used to hide the sub-groups of hidden groups, null to only hide the groups themselves.
+     */
+    void setGroupClosure(GroupClosureIndex closure) {
+        this.closure = closure;
+    }
+
+    /**
+     * Set the clock validity periods are compared to.
+     */
+    void setClock(Clock clock) {
+        this.clock = clock;
+        scheduler.setClock(clock);
+    }
+
+    /**
+     * Set the store used to persist runtime rules, null to disable persistence.
+     */
+    void setRuleStore(GroupHidingRuleStore store) {
+        synchronized (writeLock) {
+            this.store = store;
+        }
+    }
+
+    /**
+     * Set the invalidator announcing the rule changes to the other nodes, null to announce nothing.
+     */
+    void setInvalidator(ClusterRuleInvalidator invalidator) {
+        this.invalidator = invalidator;
+    }
 
     @Override
     public boolean isGroupHiddenForUser(String username, String groupName) {
@@ -26,8 +217,7 @@ public class GroupHidingConfigurationImpl extends DefaultComponent implements Gr
             return false;
         }
 
-        Set<String> hiddenGroups = userHiddenGroups.get(username);
-        boolean isHidden = hiddenGroups != null && hiddenGroups.contains(groupName);
+        boolean isHidden = snapshot.getHiddenGroups(username).contains(groupName);
         
         if (isHidden) {
             log.debug("Group '{}' is hidden for user '{}'", groupName, username);
@@ -36,19 +226,63 @@ public class GroupHidingConfigurationImpl extends DefaultComponent implements Gr
         return isHidden;
     }
 
+    @Override
+    public boolean hasHiddenGroups(String username) {
+        return snapshot.hasHiddenGroups(username);
+    }
+
+    @Override
+    public boolean hasHidingRules(String username, Collection<String> groups, String tenantId) {
+        return snapshot.hasHidingRules(username, groups, tenantId);
+    }
+
+    @Override
+    public boolean hasRules() {
+        return !snapshot.isEmpty();
+    }
+
+    @Override
+    public Set<String> getHiddenGroups(String username, Collection<String> groups, String tenantId) {
+        if (username == null) {
+            return Collections.emptySet();
+        }
+
+        Set<String> hiddenGroups = snapshot.getHiddenGroups(username, groups, tenantId);
+        GroupClosureIndex index = closure;
+        if (index == null || hiddenGroups.isEmpty() || groups == null) {
+            return hiddenGroups;
+        }
+        return index.withDescendants(hiddenGroups, groups);
+    }
+
     @Override
     public Set<String> getHiddenGroupsForUser(String username) {
         if (username == null) {
             return Collections.emptySet();
         }
 
-        Set<String> hiddenGroups = userHiddenGroups.get(username);
-        return hiddenGroups != null ? new HashSet<>(hiddenGroups) : Collections.emptySet();
+        return snapshot.getHiddenGroups(username);
     }
 
     @Override
     public Set<String> getUsersWithHiddenGroups() {
-        return new HashSet<>(userHiddenGroups.keySet());
+        return snapshot.getUsers();
+    }
+
+    @Override
+    public RulePage listRules(String usernamePrefix, String groupName, String cursor, int limit) {
+        if (limit <= 0 || limit > RulePage.MAX_SIZE) {
+            throw new IllegalArgumentException("Page limit must be between 1 and " + RulePage.MAX_SIZE + ": " + limit);
+        }
+        return snapshot.listRules(usernamePrefix, groupName, cursor, limit);
+    }
+
+    @Override
+    public List<String> getUsersHidingGroup(String groupName) {
+        if (groupName == null) {
+            return Collections.emptyList();
+        }
+        return snapshot.getUsersHidingGroup(groupName);
     }
 
     @Override
@@ -58,22 +292,94 @@ public class GroupHidingConfigurationImpl extends DefaultComponent implements Gr
             return;
         }
 
-        userHiddenGroups.computeIfAbsent(username, k -> ConcurrentHashMap.newKeySet()).add(groupName);
+        boolean changed;
+        synchronized (writeLock) {
+            RulesSnapshot.Builder builder = snapshot.toBuilder();
+            changed = persist(builder, username, (groups, validities) -> {
+                groups.add(groupName);
+                // Adding a time-bounded rule again makes it permanent
+                validities.remove(groupName);
+            });
+            if (changed) {
+                snapshot = builder.build();
+            }
+        }
+        if (changed) {
+            rulesChanged();
+        }
         log.info("Added hidden group '{}' for user '{}'", groupName, username);
     }
 
+    @Override
+    public void addHiddenGroup(String username, String groupName, Instant validFrom, Instant validUntil) {
+        RuleValidity validity = RuleValidity.of(validFrom, validUntil);
+        if (validity == null) {
+            addHiddenGroup(username, groupName);
+            return;
+        }
+        if (username == null || groupName == null) {
+            log.warn("Cannot add null username or groupName");
+            return;
+        }
+
+        boolean changed;
+        synchronized (writeLock) {
+            // Applied or withheld depending on its period
+            RulesSnapshot.Builder builder = snapshot.toBuilder();
+            changed = persist(builder, username, (groups, validities) -> {
+                groups.add(groupName);
+                validities.put(groupName, validity);
+            });
+            if (changed) {
+                snapshot = builder.build();
+            }
+        }
+        if (changed) {
+            rulesChanged();
+        }
+        log.info("Added hidden group '{}' for user '{}' valid {}", groupName, username, validity);
+    }
+
+    @Override
+    public RuleValidity getValidity(String username, String groupName) {
+        synchronized (writeLock) {
+            Map<String, RuleValidity> validities = runtimeValidities.get(username);
+            return validities != null ? validities.get(groupName) : null;
+        }
+    }
+
+    @Override
+    public Map<String, Map<String, RuleValidity>> getTimeBoundedRules() {
+        synchronized (writeLock) {
+            Map<String, Map<String, RuleValidity>> rules = new HashMap<>();
+            for (Map.Entry<String, Map<String, RuleValidity>> entry : runtimeValidities.entrySet()) {
+                rules.put(entry.getKey(), Collections.unmodifiableMap(new HashMap<>(entry.getValue())));
+            }
+            return Collections.unmodifiableMap(rules);
+        }
+    }
+
     @Override
     public void removeHiddenGroup(String username, String groupName) {
         if (username == null || groupName == null) {
             return;
         }
 
-        Set<String> hiddenGroups = userHiddenGroups.get(username);
-        if (hiddenGroups != null) {
-            hiddenGroups.remove(groupName);
-            if (hiddenGroups.isEmpty()) {
-                userHiddenGroups.remove(username);
+        boolean removed;
+        synchronized (writeLock) {
+            checkNotContributed(username, groupName);
+            RulesSnapshot.Builder builder = snapshot.toBuilder();
+            // A time-bounded rule not applying yet is only in the store
+            removed = persist(builder, username, (groups, validities) -> {
+                groups.remove(groupName);
+                validities.remove(groupName);
+            });
+            if (removed) {
+                snapshot = builder.build();
             }
+        }
+        if (removed) {
+            rulesChanged();
             log.info("Removed hidden group '{}' for user '{}'", groupName, username);
         }
     }
@@ -84,12 +390,849 @@ public class GroupHidingConfigurationImpl extends DefaultComponent implements Gr
             return;
         }
 
-        Set<String> removed = userHiddenGroups.remove(username);
-        if (removed != null && !removed.isEmpty()) {
+        Set<String> removed;
+        boolean changed;
+        synchronized (writeLock) {
+            checkNotContributed(username, null);
+            removed = snapshot.getHiddenGroups(username);
+            RulesSnapshot.Builder builder = snapshot.toBuilder();
+            // Time-bounded rules not applying yet are only in the store
+            changed = persist(builder, username, (groups, validities) -> {
+                groups.clear();
+                validities.clear();
+            });
+            if (changed) {
+                snapshot = builder.build();
+            }
+        }
+        if (changed || !removed.isEmpty()) {
+            rulesChanged();
             log.info("Cleared {} hidden groups for user '{}'", removed.size(), username);
         }
     }
 
+    @Override
+    public BulkUpdateResult applyBulkUpdate(List<RuleChange> changes, boolean replaceAll) {
+        if (changes == null) {
+            throw new IllegalArgumentException("Changes cannot be null");
+        }
+
+        int added = 0;
+        int removed = 0;
+        int cleared = 0;
+        int unchanged = 0;
+        RulesSnapshot updated;
+        synchronized (writeLock) {
+            // Nothing is applied if any change is rejected
+            for (RuleChange change : changes) {
+                if (change.getAction() == RuleChange.Action.REMOVE) {
+                    checkNotContributed(change.getUsername(), change.getGroupName());
+                } else if (change.getAction() == RuleChange.Action.CLEAR) {
+                    checkNotContributed(change.getUsername(), null);
+                }
+            }
+            // New runtime rules of the users changed by the batch, copied on their first change, so
+            // that a batch costs its own size and not the number of users having rules
+            Map<String, Set<String>> newRuntimeRules = new HashMap<>();
+            Map<String, Map<String, RuleValidity>> newValidities = new HashMap<>();
+            Map<Object, Instant> boundaries = replaceAll ? new HashMap<>() : null;
+            if (replaceAll) {
+                for (String username : runtimeRules.keySet()) {
+                    newRuntimeRules.put(username, new HashSet<>());
+                    newValidities.put(username, new HashMap<>());
+                }
+            }
+            RulesSnapshot.Builder builder = replaceAll ? rebuild(Collections.emptyMap(), boundaries)
+                    : snapshot.toBuilder();
+            // Changes of each user, applied again to the stored rules
+            Map<String, List<RuleChange>> userChanges = new HashMap<>();
+            // Time-bounded rules, applied or withheld once recorded
+            List<ScheduledGroup> timeBounded = new ArrayList<>();
+            for (RuleChange change : changes) {
+                String username = change.getUsername();
+                Set<String> groups = newRuntimeRules.computeIfAbsent(username,
+                        u -> new HashSet<>(runtimeRules.getOrDefault(u, Collections.emptySet())));
+                Map<String, RuleValidity> validities = newValidities.computeIfAbsent(username, this::validitiesOf);
+                userChanges.computeIfAbsent(username, u -> new ArrayList<>()).add(change);
+                boolean ruleChanged = !groups.contains(change.getGroupName())
+                        || !Objects.equals(validities.get(change.getGroupName()), change.getValidity());
+                apply(change, groups, validities);
+                switch (change.getAction()) {
+                case ADD:
+                    if (change.getValidity() != null) {
+                        timeBounded.add(new ScheduledGroup(username, change.getGroupName()));
+                        if (ruleChanged) {
+                            added++;
+                        } else {
+                            unchanged++;
+                        }
+                    } else if (builder.addHiddenGroup(username, change.getGroupName())) {
+                        added++;
+                    } else {
+                        unchanged++;
+                    }
+                    break;
+                case REMOVE:
+                    if (builder.removeHiddenGroup(username, change.getGroupName())) {
+                        removed++;
+                    } else {
+                        unchanged++;
+                    }
+                    break;
+                case CLEAR:
+                    int count = builder.clearHiddenGroups(username);
+                    if (count > 0) {
+                        removed += count;
+                        cleared++;
+                    } else {
+                        unchanged++;
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported action: " + change.getAction());
+                }
+            }
+
+            if (replaceAll) {
+                // Replacing is meant to overwrite the stored rules, in a single batch
+                Map<String, Set<String>> toSave = new HashMap<>();
+                for (Map.Entry<String, Set<String>> entry : newRuntimeRules.entrySet()) {
+                    toSave.put(entry.getKey(), encode(entry.getValue(), newValidities.get(entry.getKey())));
+                }
+                if (store != null && !toSave.isEmpty()) {
+                    store.saveAll(toSave);
+                }
+                for (Map.Entry<String, Set<String>> entry : newRuntimeRules.entrySet()) {
+                    record(entry.getKey(), entry.getValue(), newValidities.get(entry.getKey()));
+                }
+            } else {
+                // Changes of the users, applied to their stored rules in a single batch
+                Map<String, BiConsumer<Set<String>, Map<String, RuleValidity>>> updates = new HashMap<>();
+                for (Map.Entry<String, List<RuleChange>> entry : userChanges.entrySet()) {
+                    List<RuleChange> list = entry.getValue();
+                    updates.put(entry.getKey(), (groups, validities) -> list.forEach(
+                            change -> apply(change, groups, validities)));
+                }
+                persistAll(builder, updates, newRuntimeRules, newValidities);
+            }
+            Instant now = clock.instant();
+            for (ScheduledGroup key : timeBounded) {
+                refresh(builder, key, now);
+            }
+            if (boundaries != null) {
+                scheduleAll(boundaries);
+            }
+            updated = builder.build();
+            snapshot = updated;
+        }
+        rulesChanged();
+        BulkUpdateResult result = new BulkUpdateResult(changes.size(), added, removed, cleared, unchanged,
+                updated.getVersion());
+        log.info("Applied {}bulk update of group hiding rules: {}", replaceAll ? "replacing " : "", result);
+        return result;
+    }
+
+    @Override
+    public BulkUpdateResult loadShadowRules(List<RuleChange> changes, boolean replaceAll) {
+        if (changes == null) {
+            throw new IllegalArgumentException("Changes cannot be null");
+        }
+
+        int added = 0;
+        int removed = 0;
+        int cleared = 0;
+        int unchanged = 0;
+        RulesSnapshot candidate;
+        long version;
+        synchronized (writeLock) {
+            // Only the snapshot is built, the runtime rules and the store are left untouched
+            RulesSnapshot.Builder builder = replaceAll ? rebuild(Collections.emptyMap(), null) : snapshot.toBuilder();
+            Instant now = clock.instant();
+            for (RuleChange change : changes) {
+                String username = change.getUsername();
+                switch (change.getAction()) {
+                case ADD:
+                    // The candidate is not scheduled, time-bounded rules are evaluated as they apply now
+                    if (change.getValidity() != null && !change.getValidity().isActive(now)) {
+                        unchanged++;
+                    } else if (builder.addHiddenGroup(username, change.getGroupName())) {
+                        added++;
+                    } else {
+                        unchanged++;
+                    }
+                    break;
+                case REMOVE:
+                    if (builder.removeHiddenGroup(username, change.getGroupName())) {
+                        removed++;
+                    } else {
+                        unchanged++;
+                    }
+                    break;
+                case CLEAR:
+                    int count = builder.clearHiddenGroups(username);
+                    if (count > 0) {
+                        removed += count;
+                        cleared++;
+                    } else {
+                        unchanged++;
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported action: " + change.getAction());
+                }
+            }
+            candidate = builder.build();
+            version = snapshot.getVersion();
+            shadow = new Shadow(candidate, new ShadowStatistics(clock.millis(), candidate.getRuleCount()));
+        }
+        for (LifecycleListener listener : lifecycleListeners) {
+            notifyLifecycle(listener, LifecycleListener::shadowRulesLoaded);
+        }
+        BulkUpdateResult result = new BulkUpdateResult(changes.size(), added, removed, cleared, unchanged, version);
+        log.info("Loaded {}candidate group hiding rules for shadow evaluation: {}, {} rules",
+                replaceAll ? "replacing " : "", result, candidate.getRuleCount());
+        return result;
+    }
+
+    @Override
+    public void clearShadowRules() {
+        Shadow previous = shadow;
+        shadow = null;
+        if (previous != null) {
+            log.info("Cleared candidate group hiding rules, shadow evaluation: {}", previous.statistics);
+            for (LifecycleListener listener : lifecycleListeners) {
+                notifyLifecycle(listener, LifecycleListener::shadowRulesCleared);
+            }
+        }
+    }
+
+    @Override
+    public Set<String> getShadowHiddenGroups(String username, Collection<String> groups, String tenantId) {
+        Shadow current = shadow;
+        if (current == null || username == null) {
+            return Collections.emptySet();
+        }
+
+        Set<String> hiddenGroups = current.rules.getHiddenGroups(username, groups, tenantId);
+        GroupClosureIndex index = closure;
+        if (index == null || hiddenGroups.isEmpty() || groups == null) {
+            return hiddenGroups;
+        }
+        return index.withDescendants(hiddenGroups, groups);
+    }
+
+    @Override
+    public ShadowStatistics getShadowStatistics() {
+        Shadow current = shadow;
+        return current != null ? current.statistics : null;
+    }
+
+    /**
+     * Reject the removal of a rule defined by a contribution: it would be restored by the next
+     * rebuild of the rules. Must be called with the write lock held.
+     *
+     * @param groupName the group to unhide, null for all the groups of the user
+     * @throws IllegalArgumentException if the contributions hide the group, or any group when null
+     */
+    private void checkNotContributed(String username, String groupName) {
+        if (contributedUserRules == null) {
+            Map<String, Set<String>> rules = new HashMap<>();
+            for (GroupHidingDescriptor descriptor : contributions) {
+                if (descriptor.isUserRule()) {
+                    rules.computeIfAbsent(descriptor.getUsername(), u -> new HashSet<>())
+                         .addAll(descriptor.getHiddenGroups());
+                }
+            }
+            contributedUserRules = rules;
+        }
+        Set<String> contributed = contributedUserRules.get(username);
+        if (contributed == null || groupName != null && !contributed.contains(groupName)) {
+            return;
+        }
+        throw new IllegalArgumentException(groupName == null
+                ? "User '" + username + "' has hidden groups defined by XML contributions, they cannot be cleared"
+                : "Hidden group '" + groupName + "' of user '" + username
+                        + "' is defined by an XML contribution, it cannot be removed at runtime");
+    }
+
+    /**
+     * Apply a change to the runtime rules of a user as stored, so that the rules changed meanwhile by
+     * other nodes are kept, then record the resulting rules and update the snapshot for the groups
+     * whose rules changed. Must be called with the write lock held; nothing is changed if the store fails.
+     *
+     * @param builder the builder of the next snapshot
+     * @param change the change of the groups and of the validities of the time-bounded ones
+     * @return true if the runtime rules of the user changed, in the store or on this node
+     */
+    private boolean persist(RulesSnapshot.Builder builder, String username,
+                            BiConsumer<Set<String>, Map<String, RuleValidity>> change) {
+        boolean[] modified = new boolean[1];
+        UnaryOperator<Set<String>> update = stored -> {
+            Set<String> groups = new HashSet<>();
+            Map<String, RuleValidity> validities = new HashMap<>();
+            decode(username, stored, groups, validities);
+            Set<String> before = new HashSet<>(encode(groups, validities));
+            change.accept(groups, validities);
+            validities.keySet().retainAll(groups);
+            Set<String> after = encode(groups, validities);
+            modified[0] = !after.equals(before);
+            return after;
+        };
+        Set<String> stored = store != null ? store.update(username, update) : update.apply(encode(
+                runtimeRules.getOrDefault(username, Collections.emptySet()), runtimeValidities.get(username)));
+        return applyStored(builder, username, stored, runtimeRules.getOrDefault(username, Collections.emptySet()),
+                runtimeValidities.getOrDefault(username, Collections.emptyMap())) | modified[0];
+    }
+
+    /**
+     * Apply changes to the runtime rules of several users as stored, as {@link #persist}, the snapshot
+     * already having the expected rules. Must be called with the write lock held.
+     *
+     * @param expectedGroups the runtime groups of each user after its change, as known on this node
+     * @param expectedValidities the validities of the time-bounded rules among them
+     */
+    private void persistAll(RulesSnapshot.Builder builder,
+                            Map<String, BiConsumer<Set<String>, Map<String, RuleValidity>>> changes,
+                            Map<String, Set<String>> expectedGroups,
+                            Map<String, Map<String, RuleValidity>> expectedValidities) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        Map<String, Set<String>> stored;
+        if (store != null) {
+            Map<String, UnaryOperator<Set<String>>> updates = new HashMap<>();
+            for (Map.Entry<String, BiConsumer<Set<String>, Map<String, RuleValidity>>> entry : changes.entrySet()) {
+                String username = entry.getKey();
+                updates.put(username, current -> {
+                    Set<String> groups = new HashSet<>();
+                    Map<String, RuleValidity> validities = new HashMap<>();
+                    decode(username, current, groups, validities);
+                    entry.getValue().accept(groups, validities);
+                    validities.keySet().retainAll(groups);
+                    return encode(groups, validities);
+                });
+            }
+            stored = store.updateAll(updates);
+        } else {
+            stored = new HashMap<>();
+            for (String username : changes.keySet()) {
+                stored.put(username, encode(expectedGroups.get(username), expectedValidities.get(username)));
+            }
+        }
+        for (Map.Entry<String, Set<String>> entry : stored.entrySet()) {
+            String username = entry.getKey();
+            applyStored(builder, username, entry.getValue(), expectedGroups.get(username),
+                    expectedValidities.get(username));
+        }
+    }
+
+    /**
+     * Record the stored runtime rules of a user, and update the snapshot for the groups whose rules
+     * differ from the expected ones, i.e. those changed by another node. Must be called with the
+     * write lock held.
+     *
+     * @param expectedGroups the runtime groups of the user the snapshot already has
+     * @param expectedValidities the validities of the time-bounded rules among them
+     * @return true if the stored rules differ from the runtime rules of this node
+     */
+    private boolean applyStored(RulesSnapshot.Builder builder, String username, Set<String> stored,
+                                Set<String> expectedGroups, Map<String, RuleValidity> expectedValidities) {
+        Set<String> groups = new HashSet<>();
+        Map<String, RuleValidity> validities = new HashMap<>();
+        decode(username, stored, groups, validities);
+        boolean changed = !groups.equals(runtimeRules.getOrDefault(username, Collections.emptySet()))
+                || !validities.equals(runtimeValidities.getOrDefault(username, Collections.emptyMap()));
+        Set<String> differing = new HashSet<>(expectedGroups);
+        differing.addAll(groups);
+        differing.removeIf(group -> expectedGroups.contains(group) == groups.contains(group)
+                && Objects.equals(expectedValidities.get(group), validities.get(group)));
+        record(username, groups, validities);
+        Instant now = clock.instant();
+        for (String group : differing) {
+            refresh(builder, new ScheduledGroup(username, group), now);
+        }
+        return changed;
+    }
+
+    /**
+     * Apply a change to the runtime rules of a user.
+     */
+    private static void apply(RuleChange change, Set<String> groups, Map<String, RuleValidity> validities) {
+        switch (change.getAction()) {
+        case ADD:
+            groups.add(change.getGroupName());
+            if (change.getValidity() != null) {
+                validities.put(change.getGroupName(), change.getValidity());
+            } else {
+                validities.remove(change.getGroupName());
+            }
+            break;
+        case REMOVE:
+            groups.remove(change.getGroupName());
+            validities.remove(change.getGroupName());
+            break;
+        case CLEAR:
+            groups.clear();
+            validities.clear();
+            break;
+        default:
+            throw new IllegalArgumentException("Unsupported action: " + change.getAction());
+        }
+    }
+
+    /**
+     * Record the runtime rules of a user and schedule the boundaries of those that changed.
+     * Must be called with the write lock held.
+     */
+    private void record(String username, Set<String> groups, Map<String, RuleValidity> validities) {
+        Map<String, RuleValidity> previous = runtimeValidities.getOrDefault(username, Collections.emptyMap());
+        if (groups.isEmpty()) {
+            runtimeRules.remove(username);
+        } else {
+            runtimeRules.put(username, groups);
+        }
+        if (validities.isEmpty()) {
+            runtimeValidities.remove(username);
+        } else {
+            runtimeValidities.put(username, validities);
+        }
+        if (!previous.equals(validities)) {
+            // Move the boundaries of the time-bounded rules that changed, drop those of the removed ones
+            Set<String> changed = new HashSet<>(previous.keySet());
+            changed.addAll(validities.keySet());
+            Instant now = clock.instant();
+            for (String group : changed) {
+                if (!Objects.equals(previous.get(group), validities.get(group))) {
+                    reschedule(new ScheduledGroup(username, group), now);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the validities of the time-bounded runtime rules of a user
+     */
+    private Map<String, RuleValidity> validitiesOf(String username) {
+        return new HashMap<>(runtimeValidities.getOrDefault(username, Collections.emptyMap()));
+    }
+
+    /**
+     * Encode the runtime rules of a user for the store, time-bounded groups being followed by
+     * their validity.
+     */
+    private static Set<String> encode(Set<String> groups, Map<String, RuleValidity> validities) {
+        if (validities == null || validities.isEmpty()) {
+            return groups;
+        }
+        Set<String> entries = new HashSet<>();
+        for (String group : groups) {
+            RuleValidity validity = validities.get(group);
+            entries.add(validity == null ? group : group + VALIDITY_SEPARATOR + validity);
+        }
+        return entries;
+    }
+
+    @Override
+    public void membershipChanged(Set<String> usernames, Set<String> groupNames) {
+        notifyMembershipChanged(usernames, groupNames);
+        // Other nodes only drop the state derived from these users and groups
+        ClusterRuleInvalidator current = invalidator;
+        if (current != null) {
+            current.membershipChanged(usernames, groupNames);
+        }
+        log.debug("Group membership changed for users {} and groups {}", usernames, groupNames);
+    }
+
+    private void notifyMembershipChanged(Set<String> usernames, Set<String> groupNames) {
+        GroupClosureIndex index = closure;
+        if (index != null) {
+            // Before the listeners, which may recompute hidden groups right away
+            index.invalidate(groupNames);
+        }
+        for (MembershipListener listener : membershipListeners) {
+            try {
+                listener.membershipChanged(usernames, groupNames);
+            } catch (RuntimeException e) {
+                log.error("Failed to notify group membership change to {}", listener, e);
+            }
+        }
+    }
+
+    @Override
+    public void addMembershipListener(MembershipListener listener) {
+        membershipListeners.add(listener);
+    }
+
+    @Override
+    public void removeMembershipListener(MembershipListener listener) {
+        membershipListeners.remove(listener);
+    }
+
+    @Override
+    public void addLifecycleListener(LifecycleListener listener) {
+        lifecycleListeners.add(listener);
+    }
+
+    @Override
+    public void removeLifecycleListener(LifecycleListener listener) {
+        lifecycleListeners.remove(listener);
+    }
+
+    private static void notifyLifecycle(LifecycleListener listener, Consumer<LifecycleListener> event) {
+        try {
+            event.accept(listener);
+        } catch (RuntimeException e) {
+            log.error("Failed to notify group hiding lifecycle event to {}", listener, e);
+        }
+    }
+
+    private void rulesChanged() {
+        ClusterRuleInvalidator current = invalidator;
+        if (current != null && store != null) {
+            current.rulesChanged();
+        }
+    }
+
+    /**
+     * Reload the runtime rules from the store and rebuild the rules from them and from
+     * the XML contributions. Called at startup and when another node changed the rules.
+     */
+    public void reload() {
+        int count;
+        synchronized (writeLock) {
+            loadRuntimeRules();
+            count = runtimeRules.size();
+            Map<Object, Instant> boundaries = new HashMap<>();
+            snapshot = rebuild(runtimeRules, boundaries).build();
+            scheduleAll(boundaries);
+        }
+        log.info("Reloaded group hiding rules with runtime rules for {} users", count);
+    }
+
+    /**
+     * Build the rules from the collected contributions and the stored runtime rules in a
+     * single step, then apply further contributions as they are registered. Called at startup.
+     */
+    void build() {
+        long start = System.nanoTime();
+        int contributionCount;
+        int runtimeUsers;
+        RulesSnapshot built;
+        synchronized (writeLock) {
+            loadRuntimeRules();
+            Map<Object, Instant> boundaries = new HashMap<>();
+            built = rebuild(runtimeRules, boundaries).build();
+            scheduleAll(boundaries);
+            snapshot = built;
+            deferred = false;
+            contributionCount = contributions.size();
+            runtimeUsers = runtimeRules.size();
+        }
+        long elapsed = System.nanoTime() - start;
+        SharedMetricRegistries.getOrCreate(MetricsService.class.getName())
+                              .timer(STARTUP_METRIC)
+                              .update(elapsed, TimeUnit.NANOSECONDS);
+        log.info("Built {} group hiding rules for {} users from {} contributions and runtime rules of {} users in {}ms",
+                built.getRuleCount(), built.getUsers().size(), contributionCount, runtimeUsers,
+                TimeUnit.NANOSECONDS.toMillis(elapsed));
+    }
+
+    /**
+     * Replace the runtime rules by the stored ones. Must be called with the write lock held.
+     */
+    private void loadRuntimeRules() {
+        runtimeRules.clear();
+        runtimeValidities.clear();
+        if (store == null) {
+            return;
+        }
+        for (Map.Entry<String, Set<String>> entry : store.loadAll().entrySet()) {
+            Set<String> groups = new HashSet<>();
+            Map<String, RuleValidity> validities = new HashMap<>();
+            decode(entry.getKey(), entry.getValue(), groups, validities);
+            record(entry.getKey(), groups, validities);
+        }
+    }
+
+    /**
+     * Decode the stored runtime rules of a user, see {@link #encode}.
+     *
+     * @param groups receives the hidden groups
+     * @param validities receives the validity of the time-bounded ones
+     */
+    private static void decode(String username, Set<String> stored, Set<String> groups,
+                               Map<String, RuleValidity> validities) {
+        for (String entry : stored) {
+            int separator = entry.indexOf(VALIDITY_SEPARATOR);
+            if (separator < 0) {
+                groups.add(entry);
+                continue;
+            }
+            String group = entry.substring(0, separator);
+            groups.add(group);
+            try {
+                RuleValidity validity = RuleValidity.parse(entry.substring(separator + 1));
+                if (validity != null) {
+                    validities.put(group, validity);
+                }
+            } catch (IllegalArgumentException e) {
+                // Hiding more is the safe side, keep the rule without its period
+                log.warn("Invalid validity of hidden group '{}' for user '{}', hiding it permanently: {}",
+                        group, username, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Update the rules whose validity period starts or ends now, deleting the expired runtime rules
+     * from the store. Called by the {@link RuleScheduler} with the keys whose boundary passed, hidden
+     * groups of users ({@link ScheduledGroup}) and time-bounded group or tenant rule contributions.
+     */
+    void applySchedule(Set<Object> due) {
+        int expired = 0;
+        synchronized (writeLock) {
+            Instant now = clock.instant();
+            Map<String, Set<String>> groupsToRecord = new HashMap<>();
+            Map<String, Map<String, RuleValidity>> validitiesToRecord = new HashMap<>();
+            for (Object key : due) {
+                if (!(key instanceof ScheduledGroup)) {
+                    continue;
+                }
+                ScheduledGroup scheduled = (ScheduledGroup) key;
+                RuleValidity validity = runtimeValidities.getOrDefault(scheduled.username, Collections.emptyMap())
+                                                         .get(scheduled.group);
+                if (validity != null && validity.isExpired(now)) {
+                    groupsToRecord.computeIfAbsent(scheduled.username,
+                            u -> new HashSet<>(runtimeRules.getOrDefault(u, Collections.emptySet())))
+                                  .remove(scheduled.group);
+                    validitiesToRecord.computeIfAbsent(scheduled.username, this::validitiesOf)
+                                      .remove(scheduled.group);
+                    expired++;
+                }
+            }
+            RulesSnapshot.Builder builder = snapshot.toBuilder();
+            // Every node purges the same rules, so this is not propagated; only the groups still expired in
+            // the store are deleted, not those another node made valid again
+            Map<String, BiConsumer<Set<String>, Map<String, RuleValidity>>> updates = new HashMap<>();
+            for (Map.Entry<String, Set<String>> entry : groupsToRecord.entrySet()) {
+                Set<String> expiredGroups = new HashSet<>(runtimeRules.getOrDefault(entry.getKey(),
+                        Collections.emptySet()));
+                expiredGroups.removeAll(entry.getValue());
+                updates.put(entry.getKey(), (groups, validities) -> {
+                    for (String group : expiredGroups) {
+                        RuleValidity validity = validities.get(group);
+                        if (validity != null && validity.isExpired(now)) {
+                            groups.remove(group);
+                            validities.remove(group);
+                        }
+                    }
+                });
+            }
+            persistAll(builder, updates, groupsToRecord, validitiesToRecord);
+
+            for (Object key : due) {
+                if (key instanceof ScheduledGroup) {
+                    refresh(builder, (ScheduledGroup) key, now);
+                } else if (key instanceof GroupHidingDescriptor) {
+                    refreshRule(builder, (GroupHidingDescriptor) key, now);
+                }
+            }
+            snapshot = builder.build();
+        }
+        log.info("Applied {} scheduled group hiding rules, {} expired runtime rules removed", due.size(), expired);
+    }
+
+    /**
+     * Update the rules whose boundary passed, see {@link #applySchedule(Set)}.
+     */
+    void applySchedule() {
+        applySchedule(scheduler.takeDue());
+    }
+
+    /**
+     * Hide a group of a user or not, depending on the contributions and runtime rules hiding it that
+     * apply now, and schedule its next boundary. Must be called with the write lock held.
+     */
+    private void refresh(RulesSnapshot.Builder builder, ScheduledGroup key, Instant now) {
+        Map<Object, Instant> boundaries = new HashMap<>(2);
+        if (isHidden(key, now, boundaries)) {
+            builder.addHiddenGroup(key.username, key.group);
+        } else {
+            builder.removeHiddenGroup(key.username, key.group);
+        }
+        scheduler.schedule(key, boundaries.get(key));
+    }
+
+    /**
+     * Schedule the next boundary of a group of a user, none if no time-bounded rule hides it.
+     * Must be called with the write lock held.
+     */
+    private void reschedule(ScheduledGroup key, Instant now) {
+        Map<Object, Instant> boundaries = new HashMap<>(2);
+        isHidden(key, now, boundaries);
+        scheduler.schedule(key, boundaries.get(key));
+    }
+
+    /**
+     * Check whether the contributions or the runtime rules hide a group of a user now.
+     * Must be called with the write lock held.
+     *
+     * @param boundaries receives the next boundary of the group
+     */
+    private boolean isHidden(ScheduledGroup key, Instant now, Map<Object, Instant> boundaries) {
+        boolean hidden = false;
+        for (GroupHidingDescriptor descriptor : contributions) {
+            if (descriptor.isUserRule() && key.username.equals(descriptor.getUsername())
+                    && descriptor.getHiddenGroups().contains(key.group)) {
+                hidden |= applies(descriptor.getValidity(), key, now, boundaries);
+            }
+        }
+        if (runtimeRules.getOrDefault(key.username, Collections.emptySet()).contains(key.group)) {
+            RuleValidity validity = runtimeValidities.getOrDefault(key.username, Collections.emptyMap())
+                                                     .get(key.group);
+            hidden |= appliesAtRuntime(validity, key, now, boundaries);
+        }
+        return hidden;
+    }
+
+    /**
+     * Add a group or tenant rule as many times as its contributions apply now, and schedule the next
+     * boundary of a time-bounded contribution of it. Must be called with the write lock held.
+     */
+    private void refreshRule(RulesSnapshot.Builder builder, GroupHidingDescriptor descriptor, Instant now) {
+        HidingRule rule = toRule(descriptor);
+        if (rule == null) {
+            return;
+        }
+        Map<Object, Instant> boundaries = new HashMap<>(2);
+        int count = 0;
+        for (GroupHidingDescriptor contribution : contributions) {
+            if (!contribution.isUserRule() && rule.equals(contribution.toRule())
+                    && applies(contribution.getValidity(), contribution, now, boundaries)) {
+                count++;
+            }
+        }
+        builder.setRuleCount(rule, count);
+        scheduler.schedule(descriptor, boundaries.get(descriptor));
+    }
+
+    /**
+     * Apply or withhold a time-bounded contribution depending on its period, and schedule its next
+     * boundaries. Must be called with the write lock held.
+     */
+    private void refreshContribution(RulesSnapshot.Builder builder, GroupHidingDescriptor descriptor, Instant now) {
+        if (!descriptor.isUserRule()) {
+            refreshRule(builder, descriptor, now);
+            return;
+        }
+        for (String group : descriptor.getHiddenGroups()) {
+            refresh(builder, new ScheduledGroup(descriptor.getUsername(), group), now);
+        }
+    }
+
+    /**
+     * Check whether a rule applies now, recording its next boundary.
+     *
+     * @param key the key the rule is scheduled with
+     * @param boundaries the boundaries by key, keeping the earliest one, null if not scheduled
+     */
+    private static boolean applies(RuleValidity validity, Object key, Instant now, Map<Object, Instant> boundaries) {
+        if (validity == null) {
+            return true;
+        }
+        if (boundaries != null) {
+            Instant boundary = validity.nextBoundary(now);
+            if (boundary != null) {
+                boundaries.merge(key, boundary, (a, b) -> a.isBefore(b) ? a : b);
+            }
+        }
+        return validity.isActive(now);
+    }
+
+    /**
+     * Check whether a runtime rule applies now, as {@link #applies}. An expired runtime rule is
+     * scheduled now, so that it is deleted.
+     */
+    private static boolean appliesAtRuntime(RuleValidity validity, ScheduledGroup key, Instant now,
+                                            Map<Object, Instant> boundaries) {
+        if (validity != null && boundaries != null && validity.isExpired(now)) {
+            boundaries.merge(key, now, (a, b) -> a.isBefore(b) ? a : b);
+        }
+        return applies(validity, key, now, boundaries);
+    }
+
+    /**
+     * Replace all the scheduled boundaries, after a rebuild of the live rules.
+     * Must be called with the write lock held.
+     */
+    private void scheduleAll(Map<Object, Instant> boundaries) {
+        scheduler.clear();
+        for (Map.Entry<Object, Instant> entry : boundaries.entrySet()) {
+            scheduler.schedule(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Start a new snapshot from the contributions and the given runtime rules.
+     * Must be called with the write lock held.
+     *
+     * @param boundaries receives the next boundary of each time-bounded rule, null if not needed
+     */
+    private RulesSnapshot.Builder rebuild(Map<String, Set<String>> userRules, Map<Object, Instant> boundaries) {
+        Instant now = clock.instant();
+        RulesSnapshot.Builder builder = snapshot.newBuilder();
+        for (GroupHidingDescriptor descriptor : contributions) {
+            // Validated at registration
+            RuleValidity validity = descriptor.getValidity();
+            if (descriptor.isUserRule()) {
+                String username = descriptor.getUsername();
+                for (String group : descriptor.getHiddenGroups()) {
+                    if (validity == null || applies(validity, new ScheduledGroup(username, group), now, boundaries)) {
+                        builder.addHiddenGroup(username, group);
+                    }
+                }
+            } else if (applies(validity, descriptor, now, boundaries)) {
+                HidingRule rule = toRule(descriptor);
+                if (rule != null) {
+                    builder.addRule(rule);
+                }
+            }
+        }
+        for (Map.Entry<String, Set<String>> entry : userRules.entrySet()) {
+            Map<String, RuleValidity> validities = runtimeValidities.getOrDefault(entry.getKey(),
+                    Collections.emptyMap());
+            for (String group : entry.getValue()) {
+                RuleValidity validity = validities.get(group);
+                if (validity == null
+                        || appliesAtRuntime(validity, new ScheduledGroup(entry.getKey(), group), now, boundaries)) {
+                    builder.addHiddenGroup(entry.getKey(), group);
+                }
+            }
+        }
+        return builder;
+    }
+
+    @Override
+    public int getRuleCount() {
+        return snapshot.getRuleCount();
+    }
+
+    @Override
+    public long getRulesVersion() {
+        return snapshot.getVersion();
+    }
+
+    RuleScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * @return the current immutable rules snapshot
+     */
+    public RulesSnapshot getSnapshot() {
+        return snapshot;
+    }
+
     @Override
     public void registerContribution(Object contribution, String extensionPoint, ComponentInstance contributor) {
         if ("hiddenGroups".equals(extensionPoint) && contribution instanceof GroupHidingDescriptor) {
@@ -107,26 +1250,201 @@ public class GroupHidingConfigurationImpl extends DefaultComponent implements Gr
     }
 
     private void processGroupHidingDescriptor(GroupHidingDescriptor descriptor) {
+        RuleValidity validity;
+        try {
+            validity = descriptor.getValidity();
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring invalid group hiding descriptor: {}", e.getMessage());
+            return;
+        }
+        if (validity != null) {
+            addScheduledDescriptor(descriptor, validity);
+            return;
+        }
+        if (!descriptor.isUserRule()) {
+            addRule(descriptor);
+            return;
+        }
+
         String username = descriptor.getUsername();
         Set<String> groups = descriptor.getHiddenGroups();
         
-        if (username != null && groups != null) {
+        synchronized (writeLock) {
+            contributions.add(descriptor);
+            contributedUserRules = null;
+            if (deferred) {
+                // Built with all the other contributions at startup
+                return;
+            }
+            RulesSnapshot.Builder builder = snapshot.toBuilder();
             for (String group : groups) {
-                addHiddenGroup(username, group);
+                builder.addHiddenGroup(username, group);
             }
-            log.info("Processed group hiding descriptor for user '{}' with {} groups", username, groups.size());
+            snapshot = builder.build();
         }
+        log.info("Processed group hiding descriptor for user '{}' with {} groups", username, groups.size());
     }
 
     private void removeGroupHidingDescriptor(GroupHidingDescriptor descriptor) {
+        RuleValidity validity;
+        try {
+            validity = descriptor.getValidity();
+        } catch (IllegalArgumentException e) {
+            // Never registered
+            return;
+        }
+        if (validity != null) {
+            removeScheduledDescriptor(descriptor);
+            return;
+        }
+        if (!descriptor.isUserRule()) {
+            removeRule(descriptor);
+            return;
+        }
+
         String username = descriptor.getUsername();
         Set<String> groups = descriptor.getHiddenGroups();
         
-        if (username != null && groups != null) {
+        synchronized (writeLock) {
+            contributions.remove(descriptor);
+            contributedUserRules = null;
+            if (deferred) {
+                return;
+            }
+            Set<String> runtimeGroups = runtimeRules.getOrDefault(username, Collections.emptySet());
+            RulesSnapshot.Builder builder = snapshot.toBuilder();
             for (String group : groups) {
-                removeHiddenGroup(username, group);
+                // Keep the groups also hidden at runtime
+                if (!runtimeGroups.contains(group)) {
+                    builder.removeHiddenGroup(username, group);
+                }
             }
-            log.info("Removed group hiding descriptor for user '{}' with {} groups", username, groups.size());
+            snapshot = builder.build();
+        }
+        log.info("Removed group hiding descriptor for user '{}' with {} groups", username, groups.size());
+    }
+
+    /**
+     * Register a time-bounded descriptor, applied or withheld depending on its period.
+     */
+    private void addScheduledDescriptor(GroupHidingDescriptor descriptor, RuleValidity validity) {
+        if (!descriptor.isUserRule() && toRule(descriptor) == null) {
+            return;
+        }
+        synchronized (writeLock) {
+            contributions.add(descriptor);
+            contributedUserRules = null;
+            if (!deferred) {
+                RulesSnapshot.Builder builder = snapshot.toBuilder();
+                refreshContribution(builder, descriptor, clock.instant());
+                snapshot = builder.build();
+            }
+        }
+        log.info("Registered group hiding descriptor valid {}", validity);
+    }
+
+    private void removeScheduledDescriptor(GroupHidingDescriptor descriptor) {
+        synchronized (writeLock) {
+            if (!contributions.remove(descriptor)) {
+                return;
+            }
+            contributedUserRules = null;
+            if (deferred) {
+                return;
+            }
+            // No longer contributed, withheld unless defined otherwise, and unscheduled
+            RulesSnapshot.Builder builder = snapshot.toBuilder();
+            refreshContribution(builder, descriptor, clock.instant());
+            snapshot = builder.build();
+        }
+        log.info("Unregistered time-bounded group hiding descriptor");
+    }
+
+    private void addRule(GroupHidingDescriptor descriptor) {
+        HidingRule rule = toRule(descriptor);
+        if (rule == null) {
+            return;
+        }
+        synchronized (writeLock) {
+            contributions.add(descriptor);
+            contributedUserRules = null;
+            if (deferred) {
+                return;
+            }
+            snapshot = snapshot.withRule(rule);
+        }
+        log.info("Registered group hiding rule for {}", rule);
+    }
+
+    private void removeRule(GroupHidingDescriptor descriptor) {
+        HidingRule rule = toRule(descriptor);
+        if (rule == null) {
+            return;
+        }
+        synchronized (writeLock) {
+            contributions.remove(descriptor);
+            contributedUserRules = null;
+            if (deferred) {
+                return;
+            }
+            snapshot = snapshot.withoutRule(rule);
+        }
+        log.info("Unregistered group hiding rule for {}", rule);
+    }
+
+    private static HidingRule toRule(GroupHidingDescriptor descriptor) {
+        try {
+            return descriptor.toRule();
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring invalid group hiding descriptor: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * A hidden group of a user, the key of its time-bounded rules in the {@link RuleScheduler}.
+     */
+    private static final class ScheduledGroup {
+
+        private final String username;
+
+        private final String group;
+
+        ScheduledGroup(String username, String group) {
+            this.username = username;
+            this.group = group;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ScheduledGroup)) {
+                return false;
+            }
+            ScheduledGroup other = (ScheduledGroup) obj;
+            return username.equals(other.username) && group.equals(other.group);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * username.hashCode() + group.hashCode();
+        }
+    }
+
+    /**
+     * A candidate rule set and the statistics of its shadow evaluation, published together.
+     */
+    private static final class Shadow {
+
+        private final RulesSnapshot rules;
+
+        private final ShadowStatistics statistics;
+
+        Shadow(RulesSnapshot rules, ShadowStatistics statistics) {
+            this.rules = rules;
+            this.statistics = statistics;
         }
     }
 }
\ No newline at end of file
@@ -1,14 +1,21 @@
 package com.example.nuxeo.grouphiding.impl;
 
+import com.example.nuxeo.grouphiding.api.RuleValidity;
 import org.nuxeo.common.xmap.annotation.XNode;
 import org.nuxeo.common.xmap.annotation.XNodeList;
 import org.nuxeo.common.xmap.annotation.XObject;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
  * XMap descriptor for configuring group hiding rules via XML contributions.
+ * A rule targets a user ({@code username}), all members of a group ({@code group})
+ * or all users of a tenant ({@code tenant}, which also scopes user and group rules),
+ * and hides literal {@code <group>}s and glob {@code <pattern>}s such as {@code finance-*}.
+ * Optional {@code validFrom} and {@code validUntil} dates bound the period the rule applies in.
  */
 @XObject("hiddenGroup")
 public class GroupHidingDescriptor {
@@ -16,9 +23,24 @@ public class GroupHidingDescriptor {
     @XNode("@username")
     private String username;
 
+    @XNode("@group")
+    private String subjectGroup;
+
+    @XNode("@tenant")
+    private String tenant;
+
+    @XNode("@validFrom")
+    private String validFrom;
+
+    @XNode("@validUntil")
+    private String validUntil;
+
     @XNodeList(value = "group", type = String[].class, componentType = String.class)
     private String[] groups;
 
+    @XNodeList(value = "pattern", type = String[].class, componentType = String.class)
+    private String[] patterns;
+
     public String getUsername() {
         return username;
     }
@@ -27,6 +49,46 @@ public class GroupHidingDescriptor {
         this.username = username;
     }
 
+    public String getSubjectGroup() {
+        return subjectGroup;
+    }
+
+    public void setSubjectGroup(String subjectGroup) {
+        this.subjectGroup = subjectGroup;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public void setTenant(String tenant) {
+        this.tenant = tenant;
+    }
+
+    public String getValidFrom() {
+        return validFrom;
+    }
+
+    public void setValidFrom(String validFrom) {
+        this.validFrom = validFrom;
+    }
+
+    public String getValidUntil() {
+        return validUntil;
+    }
+
+    public void setValidUntil(String validUntil) {
+        this.validUntil = validUntil;
+    }
+
+    /**
+     * @return the validity period of the rule, null if it always applies
+     * @throws IllegalArgumentException if a date is invalid or the period ends before it starts
+     */
+    public RuleValidity getValidity() {
+        return RuleValidity.of(RuleValidity.parseInstant(validFrom), RuleValidity.parseInstant(validUntil));
+    }
+
     public Set<String> getHiddenGroups() {
         if (groups == null) {
             return new HashSet<>();
@@ -44,4 +106,37 @@ public class GroupHidingDescriptor {
     public void setGroups(String[] groups) {
         this.groups = groups;
     }
-}
\ No newline at end of file
+
+    public List<String> getPatterns() {
+        List<String> result = new ArrayList<>();
+        if (patterns != null) {
+            for (String pattern : patterns) {
+                if (pattern != null && !pattern.trim().isEmpty()) {
+                    result.add(pattern.trim());
+                }
+            }
+        }
+        return result;
+    }
+
+    public void setPatterns(String[] patterns) {
+        this.patterns = patterns;
+    }
+
+    /**
+     * @return true if this is a plain per-user rule with literal groups only,
+     *         stored as the user's hidden groups
+     */
+    public boolean isUserRule() {
+        return username != null && subjectGroup == null && tenant == null && getPatterns().isEmpty();
+    }
+
+    /**
+     * Compile this descriptor into a shared rule.
+     *
+     * @throws IllegalArgumentException if the descriptor has no valid subject
+     */
+    public HidingRule toRule() {
+        return new HidingRule(username, subjectGroup, tenant, getHiddenGroups(), getPatterns());
+    }
+}
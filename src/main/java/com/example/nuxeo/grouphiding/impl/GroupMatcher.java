@@ -0,0 +1,86 @@
+package com.example.nuxeo.grouphiding.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled matcher for the hidden groups of a rule: literal group names, {@code prefix*}
+ * patterns compiled into a {@link PrefixTrie}, and other glob patterns ({@code *} and {@code ?}
+ * anywhere) compiled into regular expressions.
+ */
+public final class GroupMatcher {
+
+    private final Set<String> literals;
+
+    private final PrefixTrie prefixes;
+
+    private final Pattern[] globs;
+
+    private GroupMatcher(Set<String> literals, PrefixTrie prefixes, Pattern[] globs) {
+        this.literals = literals;
+        this.prefixes = prefixes;
+        this.globs = globs;
+    }
+
+    /**
+     * Compile a matcher.
+     *
+     * @param groups literal group names
+     * @param patterns glob patterns
+     */
+    public static GroupMatcher compile(Collection<String> groups, Collection<String> patterns) {
+        Set<String> literals = new HashSet<>(groups);
+        List<String> prefixList = new ArrayList<>();
+        List<Pattern> globList = new ArrayList<>();
+        for (String pattern : patterns) {
+            int star = pattern.indexOf('*');
+            boolean single = pattern.indexOf('?') < 0 && star == pattern.lastIndexOf('*');
+            if (star < 0 && single) {
+                // No wildcard, it is a literal
+                literals.add(pattern);
+            } else if (single && star == pattern.length() - 1) {
+                prefixList.add(pattern.substring(0, star));
+            } else {
+                globList.add(toRegex(pattern));
+            }
+        }
+        return new GroupMatcher(Collections.unmodifiableSet(literals), PrefixTrie.of(prefixList),
+                globList.toArray(new Pattern[0]));
+    }
+
+    public boolean matches(String group) {
+        if (literals.contains(group) || prefixes.matches(group)) {
+            return true;
+        }
+        for (Pattern glob : globs) {
+            if (glob.matcher(group).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Pattern toRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int start = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > start) {
+                    regex.append(Pattern.quote(glob.substring(start, i)));
+                }
+                regex.append(c == '*' ? ".*" : ".");
+                start = i + 1;
+            }
+        }
+        if (start < glob.length()) {
+            regex.append(Pattern.quote(glob.substring(start)));
+        }
+        return Pattern.compile(regex.toString());
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.nuxeo.grouphiding.impl;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable set of hidden groups stored as a sorted array of interned group ids.
+ * Uses a few bytes per group instead of a hash set entry, and supports id based
+ * membership tests; it is exposed to callers as a regular unmodifiable {@code Set<String>}.
+ */
+public final class HiddenGroupSet extends AbstractSet<String> {
+
+    private final GroupDictionary dictionary;
+
+    private final int[] ids;
+
+    private HiddenGroupSet(GroupDictionary dictionary, int[] ids) {
+        this.dictionary = dictionary;
+        this.ids = ids;
+    }
+
+    /**
+     * Build a set from group names, interning them in the dictionary.
+     */
+    public static HiddenGroupSet of(GroupDictionary dictionary, Collection<String> groupNames) {
+        int[] ids = new int[groupNames.size()];
+        int i = 0;
+        for (String groupName : groupNames) {
+            ids[i++] = dictionary.intern(groupName);
+        }
+        Arrays.sort(ids);
+        // Drop duplicates
+        int size = 0;
+        for (int j = 0; j < ids.length; j++) {
+            if (size == 0 || ids[size - 1] != ids[j]) {
+                ids[size++] = ids[j];
+            }
+        }
+        return new HiddenGroupSet(dictionary, size == ids.length ? ids : Arrays.copyOf(ids, size));
+    }
+
+    /**
+     * @return a new set with a group added, or this set if it is already present
+     */
+    public HiddenGroupSet with(String groupName) {
+        int id = dictionary.intern(groupName);
+        int index = Arrays.binarySearch(ids, id);
+        if (index >= 0) {
+            return this;
+        }
+        int insert = -index - 1;
+        int[] updated = new int[ids.length + 1];
+        System.arraycopy(ids, 0, updated, 0, insert);
+        updated[insert] = id;
+        System.arraycopy(ids, insert, updated, insert + 1, ids.length - insert);
+        return new HiddenGroupSet(dictionary, updated);
+    }
+
+    /**
+     * @return a new set with a group removed, or this set if it is not present
+     */
+    public HiddenGroupSet without(String groupName) {
+        int id = dictionary.idOf(groupName);
+        int index = id == GroupDictionary.UNKNOWN ? -1 : Arrays.binarySearch(ids, id);
+        if (index < 0) {
+            return this;
+        }
+        int[] updated = new int[ids.length - 1];
+        System.arraycopy(ids, 0, updated, 0, index);
+        System.arraycopy(ids, index + 1, updated, index, ids.length - index - 1);
+        return new HiddenGroupSet(dictionary, updated);
+    }
+
+    /**
+     * @return a new set with the groups added, or this set if they are all present
+     */
+    public HiddenGroupSet withAll(Collection<String> groupNames) {
+        HiddenGroupSet added = of(dictionary, groupNames);
+        int[] merged = new int[ids.length + added.ids.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < ids.length || j < added.ids.length) {
+            int next;
+            if (j == added.ids.length || i < ids.length && ids[i] < added.ids[j]) {
+                next = ids[i++];
+            } else if (i == ids.length || added.ids[j] < ids[i]) {
+                next = added.ids[j++];
+            } else {
+                next = ids[i++];
+                j++;
+            }
+            merged[size++] = next;
+        }
+        return size == ids.length ? this : new HiddenGroupSet(dictionary, Arrays.copyOf(merged, size));
+    }
+
+    public boolean containsId(int id) {
+        return Arrays.binarySearch(ids, id) >= 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof String)) {
+            return false;
+        }
+        int id = dictionary.idOf((String) o);
+        return id != GroupDictionary.UNKNOWN && containsId(id);
+    }
+
+    @Override
+    public int size() {
+        return ids.length;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < ids.length;
+            }
+
+            @Override
+            public String next() {
+                if (index >= ids.length) {
+                    throw new NoSuchElementException();
+                }
+                return dictionary.nameOf(ids[index++]);
+            }
+        };
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.nuxeo.grouphiding.impl;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Compiled hiding rule for a subject: a user, all members of a group, or all users
+ * of a tenant. Rules may be scoped to a tenant and hide literal groups as well as
+ * group patterns. A single rule object is shared by every user it applies to.
+ */
+public final class HidingRule {
+
+    private final String username;
+
+    private final String subjectGroup;
+
+    private final String tenant;
+
+    private final Set<String> groups;
+
+    private final List<String> patterns;
+
+    private final GroupMatcher matcher;
+
+    public HidingRule(String username, String subjectGroup, String tenant, Set<String> groups,
+                      List<String> patterns) {
+        if (username == null && subjectGroup == null && tenant == null) {
+            throw new IllegalArgumentException("A hiding rule needs a username, a group or a tenant");
+        }
+        if (username != null && subjectGroup != null) {
+            throw new IllegalArgumentException("A hiding rule cannot target both a username and a group");
+        }
+        this.username = username;
+        this.subjectGroup = subjectGroup;
+        this.tenant = tenant;
+        this.groups = Collections.unmodifiableSet(new HashSet<>(groups));
+        this.patterns = List.copyOf(patterns);
+        this.matcher = GroupMatcher.compile(groups, patterns);
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getSubjectGroup() {
+        return subjectGroup;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public Set<String> getGroups() {
+        return groups;
+    }
+
+    public List<String> getPatterns() {
+        return patterns;
+    }
+
+    /**
+     * @return true if the rule applies to principals of the given tenant
+     */
+    public boolean appliesToTenant(String tenantId) {
+        return tenant == null || tenant.equals(tenantId);
+    }
+
+    /**
+     * @return true if the rule hides the given group
+     */
+    public boolean hides(String group) {
+        return matcher.matches(group);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof HidingRule)) {
+            return false;
+        }
+        HidingRule other = (HidingRule) o;
+        return Objects.equals(username, other.username) && Objects.equals(subjectGroup, other.subjectGroup)
+                && Objects.equals(tenant, other.tenant) && groups.equals(other.groups)
+                && patterns.equals(other.patterns);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(username, subjectGroup, tenant, groups, patterns);
+    }
+
+    @Override
+    public String toString() {
+        String subject = username != null ? "user '" + username + "'"
+                : subjectGroup != null ? "group '" + subjectGroup + "'" : "all users";
+        return subject + (tenant != null ? " of tenant '" + tenant + "'" : "") + " hiding " + groups
+                + (patterns.isEmpty() ? "" : " and " + patterns);
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.nuxeo.grouphiding.impl;
+
+import com.example.nuxeo.grouphiding.api.GroupHidingRuleStore;
+import org.nuxeo.runtime.kv.KeyValueStore;
+import org.nuxeo.runtime.kv.KeyValueStoreProvider;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * Rule store backed by a Nuxeo key/value store, shared by all the nodes of a cluster
+ * when the key/value store is (Redis, MongoDB or SQL based stores).
+ * Each user is stored under its own key, with its hidden groups separated by new lines.
+ * Updates compare and set the key of the user, so concurrent changes by other nodes are not lost.
+ */
+public class KeyValueRuleStore implements GroupHidingRuleStore {
+
+    public static final String DEFAULT_STORE_NAME = "grouphiding";
+
+    protected static final String KEY_PREFIX = "user:";
+
+    protected static final String SEPARATOR = "\n";
+
+    // Attempts of an update before giving up on a user changed continuously by other nodes
+    protected static final int MAX_UPDATE_ATTEMPTS = 100;
+
+    protected final KeyValueStoreProvider store;
+
+    public KeyValueRuleStore(KeyValueStore store) {
+        if (!(store instanceof KeyValueStoreProvider)) {
+            throw new IllegalArgumentException("Key/value store does not support listing keys: " + store);
+        }
+        this.store = (KeyValueStoreProvider) store;
+    }
+
+    @Override
+    public Map<String, Set<String>> loadAll() {
+        Map<String, Set<String>> rules = new HashMap<>();
+        try (Stream<String> keys = store.keyStream(KEY_PREFIX)) {
+            keys.forEach(key -> {
+                String value = store.getString(key);
+                if (value != null && !value.isEmpty()) {
+                    rules.put(key.substring(KEY_PREFIX.length()), decode(value));
+                }
+            });
+        }
+        return rules;
+    }
+
+    @Override
+    public void save(String username, Set<String> hiddenGroups) {
+        // A null value removes the key
+        store.put(KEY_PREFIX + username, hiddenGroups.isEmpty() ? null : encode(hiddenGroups));
+    }
+
+    @Override
+    public Set<String> update(String username, UnaryOperator<Set<String>> update) {
+        String key = KEY_PREFIX + username;
+        for (int attempt = 0; attempt < MAX_UPDATE_ATTEMPTS; attempt++) {
+            String value = store.getString(key);
+            Set<String> updated = update.apply(value == null || value.isEmpty() ? Collections.emptySet()
+                    : decode(value));
+            String newValue = updated.isEmpty() ? null : encode(updated);
+            // A null expected value requires the key to be absent, a null value removes it
+            if (Objects.equals(value, newValue) || store.compareAndSet(key, value, newValue)) {
+                return updated;
+            }
+            // Changed by another node since read, update its value instead
+        }
+        throw new IllegalStateException("Too many concurrent changes of the hidden groups of user " + username);
+    }
+
+    protected static String encode(Set<String> hiddenGroups) {
+        return String.join(SEPARATOR, hiddenGroups);
+    }
+
+    protected static Set<String> decode(String value) {
+        Set<String> groups = new LinkedHashSet<>(Arrays.asList(value.split(SEPARATOR)));
+        groups.remove("");
+        return Collections.unmodifiableSet(groups);
+    }
+}
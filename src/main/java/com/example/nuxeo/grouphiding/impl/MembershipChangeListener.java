@@ -0,0 +1,72 @@
+package com.example.nuxeo.grouphiding.impl;
+
+import com.example.nuxeo.grouphiding.api.GroupHidingConfiguration;
+import org.nuxeo.ecm.core.event.Event;
+import org.nuxeo.ecm.core.event.EventContext;
+import org.nuxeo.ecm.core.event.EventListener;
+import org.nuxeo.runtime.api.Framework;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Listens to the user and group changes of the UserManager and notifies the configuration of
+ * the affected users and groups, so that state derived from group memberships is dropped.
+ * A changed user is affected; a changed group is passed on with its ancestors, without looking up
+ * its members in the directory: the former members are found through the groups they were resolved
+ * with, and the new members no longer match their cached groups.
+ */
+public class MembershipChangeListener implements EventListener {
+
+    public static final String USER_MODIFIED = "user_modified";
+
+    public static final String USER_DELETED = "user_deleted";
+
+    public static final String GROUP_CREATED = "group_created";
+
+    public static final String GROUP_MODIFIED = "group_modified";
+
+    public static final String GROUP_DELETED = "group_deleted";
+
+    public static final String ID_PROPERTY = "id";
+
+    public static final String ANCESTOR_GROUPS_PROPERTY = "ancestorGroups";
+
+    @Override
+    public void handleEvent(Event event) {
+        EventContext context = event.getContext();
+        Serializable id = context != null ? context.getProperty(ID_PROPERTY) : null;
+        if (!(id instanceof String)) {
+            return;
+        }
+        GroupHidingConfiguration config = Framework.getService(GroupHidingConfiguration.class);
+        if (config == null) {
+            return;
+        }
+        String name = (String) id;
+        switch (event.getName()) {
+        case USER_MODIFIED:
+        case USER_DELETED:
+            config.membershipChanged(Collections.singleton(name), Collections.emptySet());
+            break;
+        case GROUP_CREATED:
+        case GROUP_MODIFIED:
+        case GROUP_DELETED:
+            Set<String> groups = new HashSet<>();
+            groups.add(name);
+            Serializable ancestors = context.getProperty(ANCESTOR_GROUPS_PROPERTY);
+            if (ancestors instanceof Collection) {
+                for (Object ancestor : (Collection<?>) ancestors) {
+                    groups.add(String.valueOf(ancestor));
+                }
+            }
+            config.membershipChanged(Collections.emptySet(), groups);
+            break;
+        default:
+            break;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,96 @@
+package com.example.nuxeo.grouphiding.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable trie of group name prefixes, used for {@code prefix*} patterns.
+ * Matching a name walks it once whatever the number of prefixes, and does not allocate.
+ */
+public final class PrefixTrie {
+
+    public static final PrefixTrie EMPTY = new PrefixTrie(new Node(new char[0], new Node[0], false));
+
+    private final Node root;
+
+    private PrefixTrie(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Build a trie matching names starting with any of the given prefixes.
+     */
+    public static PrefixTrie of(Collection<String> prefixes) {
+        if (prefixes.isEmpty()) {
+            return EMPTY;
+        }
+        MutableNode root = new MutableNode();
+        for (String prefix : prefixes) {
+            MutableNode node = root;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), c -> new MutableNode());
+            }
+            node.terminal = true;
+        }
+        return new PrefixTrie(root.freeze());
+    }
+
+    /**
+     * @return true if the name starts with one of the prefixes of this trie
+     */
+    public boolean matches(String name) {
+        Node node = root;
+        for (int i = 0; ; i++) {
+            if (node.terminal) {
+                return true;
+            }
+            if (i == name.length()) {
+                return false;
+            }
+            int index = Arrays.binarySearch(node.keys, name.charAt(i));
+            if (index < 0) {
+                return false;
+            }
+            node = node.children[index];
+        }
+    }
+
+    public boolean isEmpty() {
+        return this == EMPTY;
+    }
+
+    private static final class Node {
+
+        private final char[] keys;
+
+        private final Node[] children;
+
+        private final boolean terminal;
+
+        private Node(char[] keys, Node[] children, boolean terminal) {
+            this.keys = keys;
+            this.children = children;
+            this.terminal = terminal;
+        }
+    }
+
+    private static final class MutableNode {
+
+        private final TreeMap<Character, MutableNode> children = new TreeMap<>();
+
+        private boolean terminal;
+
+        private Node freeze() {
+            char[] keys = new char[children.size()];
+            Node[] frozen = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, MutableNode> entry : children.entrySet()) {
+                keys[i] = entry.getKey();
+                frozen[i++] = entry.getValue().freeze();
+            }
+            return new Node(keys, frozen, terminal);
+        }
+    }
+}
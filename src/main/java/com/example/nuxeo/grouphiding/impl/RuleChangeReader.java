@@ -0,0 +1,329 @@
+package com.example.nuxeo.grouphiding.impl;
+
+import com.example.nuxeo.grouphiding.api.RuleChange;
+import com.example.nuxeo.grouphiding.api.RuleValidity;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streaming reader of rule changes, so that large batches are never fully materialized as text.
+ * <p>
+ * JSON input is an array of objects:
+ * <pre>
+ * [{"action": "add", "username": "jdoe", "groupName": "finance"},
+ *  {"action": "add", "username": "jdoe", "groupName": "audit", "validUntil": "2026-04-01"},
+ *  {"action": "remove", "username": "jdoe", "groups": ["hr", "legal"]},
+ *  {"action": "clear", "username": "asmith"}]
+ * </pre>
+ * JSON lines input has one such object per line, without the enclosing array.
+ * CSV input has one {@code action,username,groupName} line per change; the action can be omitted
+ * for additions ({@code username,groupName}). Fields containing commas, quotes or line breaks are
+ * quoted with {@code "}, quotes being doubled. Blank lines, {@code #} comments and a header line
+ * starting with {@code action} or {@code username} are skipped.
+ * XML input uses the format of the contributions, {@code <hiddenGroup username="jdoe">} elements
+ * with {@code <group>} children, at any depth; each group is an addition. Group and tenant rules
+ * are ignored, they can only be contributed.
+ * <p>
+ * Additions can be time-bounded in every format: {@code validFrom} and {@code validUntil} JSON
+ * fields or XML attributes, or two more CSV fields ({@code action,username,groupName,validFrom,validUntil}),
+ * in the formats of {@link RuleValidity#parseInstant}, empty or missing meaning unbounded.
+ */
+public final class RuleChangeReader {
+
+    public static final String FORMAT_JSON = "json";
+
+    public static final String FORMAT_JSONL = "jsonl";
+
+    public static final String FORMAT_CSV = "csv";
+
+    public static final String FORMAT_XML = "xml";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private RuleChangeReader() {
+    }
+
+    /**
+     * Read all the changes from a stream.
+     *
+     * @param format {@value #FORMAT_JSON}, {@value #FORMAT_JSONL}, {@value #FORMAT_CSV} or {@value #FORMAT_XML}
+     */
+    public static List<RuleChange> readAll(InputStream in, String format) throws IOException {
+        List<RuleChange> changes = new ArrayList<>();
+        read(in, format, changes::add);
+        return changes;
+    }
+
+    /**
+     * Read the changes from a stream, passing each one to the consumer as soon as it is parsed.
+     *
+     * @param format {@value #FORMAT_JSON}, {@value #FORMAT_JSONL}, {@value #FORMAT_CSV} or {@value #FORMAT_XML}
+     * @throws IllegalArgumentException if the format is unknown or a change is invalid
+     */
+    public static void read(InputStream in, String format, Consumer<RuleChange> consumer) throws IOException {
+        String normalized = format == null ? FORMAT_JSON : format.trim().toLowerCase(Locale.ROOT);
+        switch (normalized) {
+        case FORMAT_JSON:
+            readJson(in, consumer);
+            break;
+        case FORMAT_JSONL:
+            readJsonLines(in, consumer);
+            break;
+        case FORMAT_CSV:
+            readCsv(in, consumer);
+            break;
+        case FORMAT_XML:
+            readXml(in, consumer);
+            break;
+        default:
+            throw new IllegalArgumentException("Unsupported format: " + format);
+        }
+    }
+
+    private static void readJson(InputStream in, Consumer<RuleChange> consumer) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("Expected a JSON array of rule changes");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                readJsonObject(parser, consumer);
+            }
+            if (parser.currentToken() != JsonToken.END_ARRAY) {
+                throw new IllegalArgumentException("Expected a JSON object for each rule change");
+            }
+        }
+    }
+
+    private static void readJsonLines(InputStream in, Consumer<RuleChange> consumer) throws IOException {
+        // Root level values separated by whitespace, so line breaks need no special handling
+        try (JsonParser parser = JSON_FACTORY.createParser(in)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new IllegalArgumentException("Expected a JSON object for each rule change");
+                }
+                readJsonObject(parser, consumer);
+            }
+        }
+    }
+
+    private static void readJsonObject(JsonParser parser, Consumer<RuleChange> consumer) throws IOException {
+        String action = null;
+        String username = null;
+        String validFrom = null;
+        String validUntil = null;
+        List<String> groups = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+            case "action":
+                action = parser.getValueAsString();
+                break;
+            case "username":
+                username = parser.getValueAsString();
+                break;
+            case "validFrom":
+                validFrom = parser.getValueAsString();
+                break;
+            case "validUntil":
+                validUntil = parser.getValueAsString();
+                break;
+            case "groupName":
+                groups.add(parser.getValueAsString());
+                break;
+            case "groups":
+                if (value != JsonToken.START_ARRAY) {
+                    throw new IllegalArgumentException("Expected an array for 'groups'");
+                }
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    groups.add(parser.getValueAsString());
+                }
+                break;
+            default:
+                parser.skipChildren();
+            }
+        }
+        emit(action, username, groups, validity(validFrom, validUntil), consumer);
+    }
+
+    private static void readXml(InputStream in, Consumer<RuleChange> consumer) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        // External entities are never needed and must not be resolved
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        try {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                String username = null;
+                RuleValidity validity = null;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String name = reader.getLocalName();
+                        if ("hiddenGroup".equals(name)) {
+                            // Scoped rules are not per-user rules
+                            boolean scoped = reader.getAttributeValue(null, "group") != null
+                                    || reader.getAttributeValue(null, "tenant") != null;
+                            username = scoped ? null : reader.getAttributeValue(null, "username");
+                            validity = scoped ? null : validity(reader.getAttributeValue(null, "validFrom"),
+                                    reader.getAttributeValue(null, "validUntil"));
+                        } else if ("group".equals(name) && username != null) {
+                            consumer.accept(RuleChange.add(username, reader.getElementText(), validity));
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT && "hiddenGroup".equals(reader.getLocalName())) {
+                        username = null;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Invalid XML rule file: " + e.getMessage(), e);
+        }
+    }
+
+    private static void readCsv(InputStream in, Consumer<RuleChange> consumer) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            int recordLine = lineNumber;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            List<String> fields = new ArrayList<>(3);
+            StringBuilder field = new StringBuilder();
+            // Quoted fields may span lines
+            while (parseCsvLine(line, fields, field)) {
+                line = reader.readLine();
+                if (line == null) {
+                    throw new IllegalArgumentException("Invalid rule change at line " + recordLine
+                            + ": Unterminated quoted field");
+                }
+                lineNumber++;
+                field.append('\n');
+            }
+            if (recordLine == 1 && isHeader(fields.get(0))) {
+                continue;
+            }
+            try {
+                if (fields.size() == 2) {
+                    consumer.accept(RuleChange.add(fields.get(0), fields.get(1)));
+                } else if (fields.size() >= 3 && fields.size() <= 5) {
+                    RuleChange.Action action = parseAction(fields.get(0));
+                    String group = action == RuleChange.Action.CLEAR && fields.get(2).trim().isEmpty()
+                            ? null : fields.get(2);
+                    RuleValidity validity = validity(fields.size() > 3 ? fields.get(3) : null,
+                            fields.size() > 4 ? fields.get(4) : null);
+                    consumer.accept(RuleChange.of(action, fields.get(1), group, validity));
+                } else {
+                    throw new IllegalArgumentException("Expected 2 to 5 fields");
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid rule change at line " + recordLine + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Split a CSV line into fields, continuing the last field of the previous line if it was in quotes.
+     *
+     * @param fields receives the completed fields
+     * @param field the field being read, continued by the next line if it is still in quotes
+     * @return true if the line ends inside a quoted field
+     */
+    private static boolean parseCsvLine(String line, List<String> fields, StringBuilder field) {
+        // A continued field is always quoted
+        boolean quoted = field.length() > 0;
+        int length = line.length();
+        int i = 0;
+        while (true) {
+            if (quoted) {
+                while (i < length) {
+                    char c = line.charAt(i++);
+                    if (c != '"') {
+                        field.append(c);
+                    } else if (i < length && line.charAt(i) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                        break;
+                    }
+                }
+                if (quoted) {
+                    return true;
+                }
+            } else if (i < length && line.charAt(i) == '"' && field.toString().trim().isEmpty()) {
+                field.setLength(0);
+                quoted = true;
+                i++;
+                continue;
+            }
+            if (i == length) {
+                fields.add(field.toString());
+                field.setLength(0);
+                return false;
+            }
+            char c = line.charAt(i++);
+            if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+    }
+
+    private static boolean isHeader(String field) {
+        String name = field.trim();
+        return "action".equalsIgnoreCase(name) || "username".equalsIgnoreCase(name);
+    }
+
+    private static void emit(String action, String username, List<String> groups, RuleValidity validity,
+                             Consumer<RuleChange> consumer) {
+        RuleChange.Action parsed = action == null ? RuleChange.Action.ADD : parseAction(action);
+        if (parsed == RuleChange.Action.CLEAR || groups.isEmpty()) {
+            consumer.accept(RuleChange.of(parsed, username, null, validity));
+            return;
+        }
+        for (String group : groups) {
+            consumer.accept(RuleChange.of(parsed, username, group, validity));
+        }
+    }
+
+    /**
+     * @return the validity of the bounds, null if both are empty
+     * @throws IllegalArgumentException if a bound is invalid or the period ends before it starts
+     */
+    private static RuleValidity validity(String validFrom, String validUntil) {
+        return RuleValidity.of(RuleValidity.parseInstant(validFrom), RuleValidity.parseInstant(validUntil));
+    }
+
+    private static RuleChange.Action parseAction(String action) {
+        try {
+            return RuleChange.Action.valueOf(action.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown action: " + action);
+        }
+    }
+}
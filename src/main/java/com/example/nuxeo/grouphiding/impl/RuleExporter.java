@@ -0,0 +1,277 @@
+package com.example.nuxeo.grouphiding.impl;
+
+import com.example.nuxeo.grouphiding.api.GroupHidingConfiguration;
+import com.example.nuxeo.grouphiding.api.RuleValidity;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Streaming export of the per-user rules, in the formats read by {@link RuleChangeReader} so that
+ * an export can be imported back. Users and groups are sorted, so that exports can be diffed.
+ * The XML export is a contribution to the {@code hiddenGroups} extension point.
+ * Group and tenant rules are not exported, they are contributed.
+ * <p>
+ * Time-bounded runtime rules are exported with their validity, including those not applying yet,
+ * so that they keep it when imported back. Rules contributed through XML are exported as they
+ * currently apply.
+ */
+public final class RuleExporter {
+
+    public static final String COMPONENT_NAME = "com.example.nuxeo.grouphiding.export";
+
+    public static final String TARGET = "com.example.nuxeo.grouphiding.security.GroupHidingSecurityPolicy";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private RuleExporter() {
+    }
+
+    /**
+     * Write the per-user rules of a configuration to a stream.
+     *
+     * @param out the stream, not closed
+     * @param format {@link RuleChangeReader#FORMAT_JSON}, {@link RuleChangeReader#FORMAT_JSONL},
+     *            {@link RuleChangeReader#FORMAT_CSV} or {@link RuleChangeReader#FORMAT_XML}
+     * @return the number of rules written
+     */
+    public static long export(GroupHidingConfiguration configuration, OutputStream out, String format)
+            throws IOException {
+        String normalized = format == null ? RuleChangeReader.FORMAT_CSV : format.trim().toLowerCase(Locale.ROOT);
+        switch (normalized) {
+        case RuleChangeReader.FORMAT_JSON:
+        case RuleChangeReader.FORMAT_JSONL:
+            return exportJson(configuration, out, RuleChangeReader.FORMAT_JSON.equals(normalized));
+        case RuleChangeReader.FORMAT_CSV:
+            return exportCsv(configuration, out);
+        case RuleChangeReader.FORMAT_XML:
+            return exportXml(configuration, out);
+        default:
+            throw new IllegalArgumentException("Unsupported format: " + format);
+        }
+    }
+
+    private static Set<String> sortedUsers(GroupHidingConfiguration configuration,
+                                           Map<String, Map<String, RuleValidity>> timeBounded) {
+        Set<String> users = new TreeSet<>(configuration.getUsersWithHiddenGroups());
+        users.addAll(timeBounded.keySet());
+        return users;
+    }
+
+    /**
+     * @return the hidden groups of the user and the time-bounded rules not applying yet, sorted,
+     *         with their validity, null for permanent rules
+     */
+    private static Map<String, RuleValidity> sortedGroups(GroupHidingConfiguration configuration,
+                                                          Map<String, Map<String, RuleValidity>> timeBounded,
+                                                          String username) {
+        Map<String, RuleValidity> groups = new TreeMap<>();
+        for (String group : configuration.getHiddenGroupsForUser(username)) {
+            groups.put(group, null);
+        }
+        groups.putAll(timeBounded.getOrDefault(username, Collections.emptyMap()));
+        return groups;
+    }
+
+    private static String format(Instant instant) {
+        return instant == null ? null : instant.toString();
+    }
+
+    private static long exportCsv(GroupHidingConfiguration configuration, OutputStream out) throws IOException {
+        long count = 0;
+        Map<String, Map<String, RuleValidity>> timeBounded = configuration.getTimeBoundedRules();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write("action,username,groupName,validFrom,validUntil\n");
+        for (String username : sortedUsers(configuration, timeBounded)) {
+            for (Map.Entry<String, RuleValidity> entry : sortedGroups(configuration, timeBounded, username)
+                    .entrySet()) {
+                RuleValidity validity = entry.getValue();
+                writer.write("add,");
+                writeCsvField(writer, username);
+                writer.write(',');
+                writeCsvField(writer, entry.getKey());
+                writer.write(',');
+                if (validity != null && validity.getValidFrom() != null) {
+                    writer.write(format(validity.getValidFrom()));
+                }
+                writer.write(',');
+                if (validity != null && validity.getValidUntil() != null) {
+                    writer.write(format(validity.getValidUntil()));
+                }
+                writer.write('\n');
+                count++;
+            }
+        }
+        writer.flush();
+        return count;
+    }
+
+    /**
+     * Write a CSV field, in quotes if it contains a separator, a quote or a line break.
+     */
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private static long exportJson(GroupHidingConfiguration configuration, OutputStream out, boolean array)
+            throws IOException {
+        long count = 0;
+        Map<String, Map<String, RuleValidity>> timeBounded = configuration.getTimeBoundedRules();
+        JsonGenerator generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8);
+        generator.setRootValueSeparator(null);
+        if (array) {
+            generator.writeStartArray();
+        }
+        for (String username : sortedUsers(configuration, timeBounded)) {
+            Map<String, RuleValidity> groups = sortedGroups(configuration, timeBounded, username);
+            // The permanent rules of the user together, then each time-bounded rule
+            Set<String> permanent = new TreeSet<>();
+            groups.forEach((group, validity) -> {
+                if (validity == null) {
+                    permanent.add(group);
+                }
+            });
+            if (!permanent.isEmpty()) {
+                generator.writeStartObject();
+                generator.writeStringField("action", "add");
+                generator.writeStringField("username", username);
+                generator.writeArrayFieldStart("groups");
+                for (String group : permanent) {
+                    generator.writeString(group);
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+                if (!array) {
+                    generator.writeRaw('\n');
+                }
+            }
+            for (Map.Entry<String, RuleValidity> entry : groups.entrySet()) {
+                RuleValidity validity = entry.getValue();
+                if (validity == null) {
+                    continue;
+                }
+                generator.writeStartObject();
+                generator.writeStringField("action", "add");
+                generator.writeStringField("username", username);
+                generator.writeStringField("groupName", entry.getKey());
+                if (validity.getValidFrom() != null) {
+                    generator.writeStringField("validFrom", format(validity.getValidFrom()));
+                }
+                if (validity.getValidUntil() != null) {
+                    generator.writeStringField("validUntil", format(validity.getValidUntil()));
+                }
+                generator.writeEndObject();
+                if (!array) {
+                    generator.writeRaw('\n');
+                }
+            }
+            count += groups.size();
+        }
+        if (array) {
+            generator.writeEndArray();
+        }
+        generator.flush();
+        return count;
+    }
+
+    private static long exportXml(GroupHidingConfiguration configuration, OutputStream out) throws IOException {
+        long count = 0;
+        try {
+            XMLStreamWriter writer = XMLOutputFactory.newFactory().createXMLStreamWriter(out, "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeCharacters("\n");
+            writer.writeStartElement("component");
+            writer.writeAttribute("name", COMPONENT_NAME);
+            writer.writeCharacters("\n  ");
+            writer.writeStartElement("extension");
+            writer.writeAttribute("target", TARGET);
+            writer.writeAttribute("point", "hiddenGroups");
+            Map<String, Map<String, RuleValidity>> timeBounded = configuration.getTimeBoundedRules();
+            for (String username : sortedUsers(configuration, timeBounded)) {
+                // The permanent rules of the user together, then the time-bounded rules by validity
+                Map<RuleValidity, Set<String>> groupsByValidity = new TreeMap<>(RuleExporter::compare);
+                sortedGroups(configuration, timeBounded, username).forEach(
+                        (group, validity) -> groupsByValidity.computeIfAbsent(validity, v -> new TreeSet<>())
+                                                             .add(group));
+                for (Map.Entry<RuleValidity, Set<String>> entry : groupsByValidity.entrySet()) {
+                    RuleValidity validity = entry.getKey();
+                    writer.writeCharacters("\n    ");
+                    writer.writeStartElement("hiddenGroup");
+                    writer.writeAttribute("username", username);
+                    if (validity != null && validity.getValidFrom() != null) {
+                        writer.writeAttribute("validFrom", format(validity.getValidFrom()));
+                    }
+                    if (validity != null && validity.getValidUntil() != null) {
+                        writer.writeAttribute("validUntil", format(validity.getValidUntil()));
+                    }
+                    for (String group : entry.getValue()) {
+                        writer.writeCharacters("\n      ");
+                        writer.writeStartElement("group");
+                        writer.writeCharacters(group);
+                        writer.writeEndElement();
+                        count++;
+                    }
+                    writer.writeCharacters("\n    ");
+                    writer.writeEndElement();
+                }
+            }
+            writer.writeCharacters("\n  ");
+            writer.writeEndElement();
+            writer.writeCharacters("\n");
+            writer.writeEndElement();
+            writer.writeCharacters("\n");
+            writer.writeEndDocument();
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to export rules as XML: " + e.getMessage(), e);
+        }
+        return count;
+    }
+
+    /**
+     * Order validities, permanent rules first, then by start and end, unbounded first.
+     */
+    private static int compare(RuleValidity a, RuleValidity b) {
+        if (a == null || b == null) {
+            return a == b ? 0 : a == null ? -1 : 1;
+        }
+        int result = compare(a.getValidFrom(), b.getValidFrom());
+        return result != 0 ? result : compare(a.getValidUntil(), b.getValidUntil());
+    }
+
+    private static int compare(Instant a, Instant b) {
+        if (a == null || b == null) {
+            return a == b ? 0 : a == null ? -1 : 1;
+        }
+        return a.compareTo(b);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,116 @@
+package com.example.nuxeo.grouphiding.impl;
+
+import com.example.nuxeo.grouphiding.api.BulkUpdateResult;
+import com.example.nuxeo.grouphiding.api.GroupHidingConfiguration;
+import com.example.nuxeo.grouphiding.api.RuleChange;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Streaming import of rule files of any size: changes are read with {@link RuleChangeReader} and
+ * applied in batches of bounded size, so memory does not depend on the file size.
+ * <p>
+ * Each batch is applied atomically, but not the whole import: readers can see the rules of the
+ * batches already applied. Use {@link GroupHidingConfiguration#applyBulkUpdate} directly when the
+ * whole change set must be applied at once.
+ * <p>
+ * An import replacing all the rules is the exception: the whole input is read first and applied as
+ * a single change, so that the rules are never seen wiped and are left unchanged if the input is
+ * invalid. Its memory depends on the file size.
+ */
+public class RuleImporter {
+
+    private static final Logger log = LogManager.getLogger(RuleImporter.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 10000;
+
+    // Progress is logged every this many changes
+    private static final long PROGRESS_INTERVAL = 100000;
+
+    private final GroupHidingConfiguration configuration;
+
+    private final int batchSize;
+
+    private final Consumer<BulkUpdateResult> progressListener;
+
+    public RuleImporter(GroupHidingConfiguration configuration) {
+        this(configuration, DEFAULT_BATCH_SIZE, null);
+    }
+
+    /**
+     * @param configuration the configuration to import into
+     * @param batchSize the number of changes applied at once
+     * @param progressListener called after each batch with the cumulated result, may be null
+     */
+    public RuleImporter(GroupHidingConfiguration configuration, int batchSize,
+                        Consumer<BulkUpdateResult> progressListener) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.configuration = configuration;
+        this.batchSize = batchSize;
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Import the rule changes of a stream.
+     *
+     * @param in the stream, not closed
+     * @param format a {@link RuleChangeReader} format
+     * @param replaceAll if true, the runtime rules are replaced by the whole input at once
+     * @return the cumulated result of all the batches
+     */
+    public BulkUpdateResult importRules(InputStream in, String format, boolean replaceAll) throws IOException {
+        Batches batches = new Batches();
+        if (replaceAll) {
+            // Nothing is applied before the whole input is read
+            List<RuleChange> changes = new ArrayList<>();
+            RuleChangeReader.read(in, format, changes::add);
+            batches.apply(changes, true);
+        } else {
+            RuleChangeReader.read(in, format, batches::add);
+            batches.flush();
+        }
+        BulkUpdateResult result = batches.result;
+        log.info("Imported group hiding rules: {}", result);
+        return result;
+    }
+
+    private class Batches {
+
+        private final List<RuleChange> pending = new ArrayList<>(batchSize);
+
+        private BulkUpdateResult result = new BulkUpdateResult(0, 0, 0, 0, 0, configuration.getRulesVersion());
+
+        void add(RuleChange change) {
+            pending.add(change);
+            if (pending.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (!pending.isEmpty()) {
+                apply(pending, false);
+                pending.clear();
+            }
+        }
+
+        void apply(List<RuleChange> changes, boolean replaceAll) {
+            long before = result.getChanges();
+            result = result.plus(configuration.applyBulkUpdate(changes, replaceAll));
+            if (before / PROGRESS_INTERVAL != result.getChanges() / PROGRESS_INTERVAL) {
+                log.info("Importing group hiding rules, {} changes applied", result.getChanges());
+            }
+            if (progressListener != null) {
+                progressListener.accept(result);
+            }
+        }
+    }
+}
\ No newline at end of file
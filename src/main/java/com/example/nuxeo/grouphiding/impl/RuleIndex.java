@@ -0,0 +1,150 @@
+package com.example.nuxeo.grouphiding.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Immutable index of the {@link HidingRule}s by subject: username, subject group and tenant.
+ * Finding the rules of a principal costs one lookup per group, whatever the number of rules.
+ */
+public final class RuleIndex {
+
+    public static final RuleIndex EMPTY = new RuleIndex(Collections.emptyMap(), Collections.emptyMap(),
+            Collections.emptyMap(), 0);
+
+    private final Map<String, List<HidingRule>> byUser;
+
+    private final Map<String, List<HidingRule>> byGroup;
+
+    private final Map<String, List<HidingRule>> byTenant;
+
+    private final int size;
+
+    private RuleIndex(Map<String, List<HidingRule>> byUser, Map<String, List<HidingRule>> byGroup,
+                      Map<String, List<HidingRule>> byTenant, int size) {
+        this.byUser = byUser;
+        this.byGroup = byGroup;
+        this.byTenant = byTenant;
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check if a rule may apply to a principal. Tenant scoping is not checked,
+     * so this may return true for rules that end up not applying.
+     */
+    public boolean mayApply(String username, Collection<String> groups, String tenantId) {
+        if (size == 0) {
+            return false;
+        }
+        if (byUser.containsKey(username) || tenantId != null && byTenant.containsKey(tenantId)) {
+            return true;
+        }
+        if (!byGroup.isEmpty() && groups != null) {
+            if (groups instanceof List && groups instanceof RandomAccess) {
+                // Indexed loop, so that checking a principal allocates no iterator
+                List<String> list = (List<String>) groups;
+                for (int i = 0, n = list.size(); i < n; i++) {
+                    if (byGroup.containsKey(list.get(i))) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            for (String group : groups) {
+                if (byGroup.containsKey(group)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the rules applying to a principal, taking tenant scoping into account
+     */
+    public List<HidingRule> getApplicableRules(String username, Collection<String> groups, String tenantId) {
+        if (size == 0) {
+            return Collections.emptyList();
+        }
+        List<HidingRule> rules = new ArrayList<>();
+        addApplicable(rules, byUser.get(username), tenantId);
+        if (tenantId != null) {
+            addApplicable(rules, byTenant.get(tenantId), tenantId);
+        }
+        if (!byGroup.isEmpty() && groups != null) {
+            for (String group : groups) {
+                addApplicable(rules, byGroup.get(group), tenantId);
+            }
+        }
+        return rules;
+    }
+
+    private static void addApplicable(List<HidingRule> rules, List<HidingRule> candidates, String tenantId) {
+        if (candidates != null) {
+            for (HidingRule rule : candidates) {
+                if (rule.appliesToTenant(tenantId)) {
+                    rules.add(rule);
+                }
+            }
+        }
+    }
+
+    public RuleIndex with(HidingRule rule) {
+        if (rule.getUsername() != null) {
+            return new RuleIndex(add(byUser, rule.getUsername(), rule), byGroup, byTenant, size + 1);
+        } else if (rule.getSubjectGroup() != null) {
+            return new RuleIndex(byUser, add(byGroup, rule.getSubjectGroup(), rule), byTenant, size + 1);
+        }
+        return new RuleIndex(byUser, byGroup, add(byTenant, rule.getTenant(), rule), size + 1);
+    }
+
+    /**
+     * @return an index without the given rule, or this index if it does not contain it
+     */
+    public RuleIndex without(HidingRule rule) {
+        if (rule.getUsername() != null) {
+            Map<String, List<HidingRule>> map = remove(byUser, rule.getUsername(), rule);
+            return map == byUser ? this : new RuleIndex(map, byGroup, byTenant, size - 1);
+        } else if (rule.getSubjectGroup() != null) {
+            Map<String, List<HidingRule>> map = remove(byGroup, rule.getSubjectGroup(), rule);
+            return map == byGroup ? this : new RuleIndex(byUser, map, byTenant, size - 1);
+        }
+        Map<String, List<HidingRule>> map = remove(byTenant, rule.getTenant(), rule);
+        return map == byTenant ? this : new RuleIndex(byUser, byGroup, map, size - 1);
+    }
+
+    private static Map<String, List<HidingRule>> add(Map<String, List<HidingRule>> map, String key,
+                                                     HidingRule rule) {
+        Map<String, List<HidingRule>> copy = new HashMap<>(map);
+        List<HidingRule> rules = new ArrayList<>(map.getOrDefault(key, Collections.emptyList()));
+        rules.add(rule);
+        copy.put(key, Collections.unmodifiableList(rules));
+        return Collections.unmodifiableMap(copy);
+    }
+
+    private static Map<String, List<HidingRule>> remove(Map<String, List<HidingRule>> map, String key,
+                                                        HidingRule rule) {
+        List<HidingRule> current = map.get(key);
+        if (current == null || !current.contains(rule)) {
+            return map;
+        }
+        Map<String, List<HidingRule>> copy = new HashMap<>(map);
+        List<HidingRule> rules = new ArrayList<>(current);
+        rules.remove(rule);
+        if (rules.isEmpty()) {
+            copy.remove(key);
+        } else {
+            copy.put(key, Collections.unmodifiableList(rules));
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.nuxeo.grouphiding.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sorted view of the per-user rules of a snapshot, for paginated listings: the users sorted by
+ * name, and the reverse index of the sorted users hiding each group. Filtering by username prefix
+ * or by group and seeking to a cursor are binary searches, never scans of all the users.
+ * The index of a snapshot is derived from the one of the previous snapshot, by merging the users
+ * whose rules changed into the sorted arrays they belong to.
+ */
+final class RuleListingIndex {
+
+    private static final String[] NONE = new String[0];
+
+    private final String[] users;
+
+    private final Map<String, String[]> usersByGroup;
+
+    private RuleListingIndex(String[] users, Map<String, String[]> usersByGroup) {
+        this.users = users;
+        this.usersByGroup = usersByGroup;
+    }
+
+    static RuleListingIndex of(Map<String, HiddenGroupSet> userHiddenGroups) {
+        String[] users = userHiddenGroups.keySet().toArray(NONE);
+        Arrays.sort(users);
+        // Users are visited in order, so the users of each group are sorted as they are added
+        Map<String, List<String>> byGroup = new HashMap<>();
+        for (String username : users) {
+            for (String group : userHiddenGroups.get(username)) {
+                byGroup.computeIfAbsent(group, g -> new ArrayList<>()).add(username);
+            }
+        }
+        Map<String, String[]> usersByGroup = new HashMap<>(byGroup.size() * 4 / 3 + 1);
+        for (Map.Entry<String, List<String>> entry : byGroup.entrySet()) {
+            usersByGroup.put(entry.getKey(), entry.getValue().toArray(NONE));
+        }
+        return new RuleListingIndex(users, Collections.unmodifiableMap(usersByGroup));
+    }
+
+    /**
+     * Derive the index of other per-user rules from this one, only sorting the changed users.
+     *
+     * @param before the per-user rules this index was built from
+     * @param after the new per-user rules
+     * @param changedUsers the users whose rules may differ, the others must be unchanged
+     * @return the new index, this index if no user or group of a user changed
+     */
+    RuleListingIndex with(Map<String, HiddenGroupSet> before, Map<String, HiddenGroupSet> after,
+                          Collection<String> changedUsers) {
+        List<String> addedUsers = new ArrayList<>();
+        Set<String> removedUsers = new HashSet<>();
+        Map<String, List<String>> addedByGroup = new HashMap<>();
+        Map<String, Set<String>> removedByGroup = new HashMap<>();
+        for (String username : changedUsers) {
+            Set<String> oldGroups = groupsOf(before, username);
+            Set<String> newGroups = groupsOf(after, username);
+            if (oldGroups.isEmpty() != newGroups.isEmpty()) {
+                if (newGroups.isEmpty()) {
+                    removedUsers.add(username);
+                } else {
+                    addedUsers.add(username);
+                }
+            }
+            for (String group : oldGroups) {
+                if (!newGroups.contains(group)) {
+                    removedByGroup.computeIfAbsent(group, g -> new HashSet<>()).add(username);
+                }
+            }
+            for (String group : newGroups) {
+                if (!oldGroups.contains(group)) {
+                    addedByGroup.computeIfAbsent(group, g -> new ArrayList<>()).add(username);
+                }
+            }
+        }
+        if (addedByGroup.isEmpty() && removedByGroup.isEmpty()) {
+            return this;
+        }
+        String[] newUsers = addedUsers.isEmpty() && removedUsers.isEmpty() ? users
+                : merge(users, removedUsers, addedUsers);
+        Map<String, String[]> newUsersByGroup = new HashMap<>(usersByGroup);
+        Set<String> groups = new HashSet<>(addedByGroup.keySet());
+        groups.addAll(removedByGroup.keySet());
+        for (String group : groups) {
+            String[] hiding = merge(usersByGroup.getOrDefault(group, NONE),
+                    removedByGroup.getOrDefault(group, Collections.emptySet()),
+                    addedByGroup.getOrDefault(group, Collections.emptyList()));
+            if (hiding.length == 0) {
+                newUsersByGroup.remove(group);
+            } else {
+                newUsersByGroup.put(group, hiding);
+            }
+        }
+        return new RuleListingIndex(newUsers, Collections.unmodifiableMap(newUsersByGroup));
+    }
+
+    private static Set<String> groupsOf(Map<String, HiddenGroupSet> rules, String username) {
+        HiddenGroupSet groups = rules.get(username);
+        return groups != null ? groups : Collections.emptySet();
+    }
+
+    /**
+     * @param sorted sorted names, containing the removed ones and none of the added ones
+     * @return the sorted names without the removed ones and with the added ones
+     */
+    private static String[] merge(String[] sorted, Set<String> removed, List<String> added) {
+        String[] inserted = added.toArray(NONE);
+        Arrays.sort(inserted);
+        String[] merged = new String[sorted.length - removed.size() + inserted.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < sorted.length || j < inserted.length) {
+            if (j == inserted.length || i < sorted.length && sorted[i].compareTo(inserted[j]) < 0) {
+                String name = sorted[i++];
+                if (!removed.contains(name)) {
+                    merged[k++] = name;
+                }
+            } else {
+                merged[k++] = inserted[j++];
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * @return the sorted users having rules, or hiding the group if not null
+     */
+    String[] users(String groupName) {
+        if (groupName == null) {
+            return users;
+        }
+        String[] hiding = usersByGroup.get(groupName);
+        return hiding != null ? hiding : NONE;
+    }
+
+    /**
+     * @return the index of the first user starting with the prefix, or where it would be
+     */
+    static int first(String[] sorted, String prefix) {
+        if (prefix == null || prefix.isEmpty()) {
+            return 0;
+        }
+        int index = Arrays.binarySearch(sorted, prefix);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * @return the index after the last user starting with the prefix
+     */
+    static int end(String[] sorted, String prefix) {
+        if (prefix == null || prefix.isEmpty()) {
+            return sorted.length;
+        }
+        // Users starting with the prefix are contiguous, find the first one past them
+        int low = first(sorted, prefix);
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid].startsWith(prefix)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the index of the first user after the cursor, 0 if the cursor is null
+     */
+    static int after(String[] sorted, String cursor) {
+        if (cursor == null) {
+            return 0;
+        }
+        int index = Arrays.binarySearch(sorted, cursor);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+}
\ No newline at end of file
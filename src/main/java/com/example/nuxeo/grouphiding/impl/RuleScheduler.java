@@ -0,0 +1,190 @@
+package com.example.nuxeo.grouphiding.impl;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Applies time-bounded rules at the boundaries of their validity periods.
+ * Each scheduled key, e.g. a hidden group of a user, has its next boundary; keys are kept by
+ * boundary in a sorted map used as a priority queue, and a single timer is armed for the earliest
+ * one, so only the rules starting or stopping to apply are updated and permission checks never
+ * compare timestamps.
+ */
+public class RuleScheduler {
+
+    private static final Logger log = LogManager.getLogger(RuleScheduler.class);
+
+    protected final Consumer<Set<Object>> apply;
+
+    protected Clock clock;
+
+    // Keys by boundary, guarded by this
+    protected final NavigableMap<Instant, Set<Object>> boundaries = new TreeMap<>();
+
+    // Boundary of each key, guarded by this
+    protected final Map<Object, Instant> scheduled = new HashMap<>();
+
+    protected ScheduledExecutorService executor;
+
+    protected ScheduledFuture<?> timer;
+
+    /**
+     * @param apply the action updating the rules of the keys whose boundary passed
+     * @param clock the clock boundaries are compared to
+     */
+    public RuleScheduler(Consumer<Set<Object>> apply, Clock clock) {
+        this.apply = apply;
+        this.clock = clock;
+    }
+
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "grouphiding-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        arm();
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        timer = null;
+    }
+
+    synchronized void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Schedule a key to be applied again at a boundary, replacing its previous boundary.
+     *
+     * @param key the key, compared with equals
+     * @param boundary the instant, null to unschedule the key
+     */
+    public synchronized void schedule(Object key, Instant boundary) {
+        Instant previous = boundary == null ? scheduled.remove(key) : scheduled.put(key, boundary);
+        if (boundary != null && boundary.equals(previous)) {
+            return;
+        }
+        Instant first = boundaries.isEmpty() ? null : boundaries.firstKey();
+        if (previous != null) {
+            Set<Object> keys = boundaries.get(previous);
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                boundaries.remove(previous);
+            }
+        }
+        if (boundary != null) {
+            boundaries.computeIfAbsent(boundary, b -> new HashSet<>()).add(key);
+        }
+        Instant next = boundaries.isEmpty() ? null : boundaries.firstKey();
+        if (!Objects.equals(first, next)) {
+            arm();
+        }
+    }
+
+    /**
+     * Unschedule a key, e.g. when its rule is removed.
+     */
+    public void unschedule(Object key) {
+        schedule(key, null);
+    }
+
+    /**
+     * Unschedule all the keys.
+     */
+    public synchronized void clear() {
+        boundaries.clear();
+        scheduled.clear();
+        arm();
+    }
+
+    /**
+     * @return the earliest scheduled boundary, null if none
+     */
+    public synchronized Instant getNextBoundary() {
+        return boundaries.isEmpty() ? null : boundaries.firstKey();
+    }
+
+    /**
+     * @return the number of scheduled keys
+     */
+    public synchronized int size() {
+        return scheduled.size();
+    }
+
+    /**
+     * Unschedule the keys whose boundary passed.
+     *
+     * @return the keys, empty if none
+     */
+    public synchronized Set<Object> takeDue() {
+        NavigableMap<Instant, Set<Object>> passed = boundaries.headMap(clock.instant(), true);
+        if (passed.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<Object> due = new HashSet<>();
+        for (Set<Object> keys : passed.values()) {
+            due.addAll(keys);
+        }
+        scheduled.keySet().removeAll(due);
+        passed.clear();
+        return due;
+    }
+
+    /**
+     * Arm the timer for the earliest boundary. Must be called with the lock held.
+     */
+    protected void arm() {
+        if (timer != null) {
+            timer.cancel(false);
+            timer = null;
+        }
+        if (executor == null || boundaries.isEmpty()) {
+            return;
+        }
+        // Round up, so the timer never fires before the boundary
+        long delayMs = Math.max(0, Duration.between(clock.instant(), boundaries.firstKey()).toMillis() + 1);
+        timer = executor.schedule(this::fire, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    protected void fire() {
+        Set<Object> due = takeDue();
+        if (!due.isEmpty()) {
+            try {
+                // Not under the lock, applying the rules schedules their next boundaries
+                apply.accept(due);
+            } catch (RuntimeException e) {
+                log.error("Failed to apply scheduled group hiding rules", e);
+            }
+        }
+        synchronized (this) {
+            if (executor != null) {
+                arm();
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,418 @@
+package com.example.nuxeo.grouphiding.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.example.nuxeo.grouphiding.api.RulePage;
+
+/**
+ * Immutable, versioned snapshot of the group hiding rules.
+ * Writers build a new snapshot and publish it atomically, readers use the
+ * current one without locking or copying. Hidden groups of users are stored as
+ * {@link HiddenGroupSet}s of ids interned in a dictionary shared by all snapshots;
+ * group, tenant and pattern rules are kept in a {@link RuleIndex}.
+ */
+public final class RulesSnapshot {
+
+    /**
+     * Number of changed users from which a builder builds their hidden group sets in parallel.
+     */
+    static final int PARALLEL_BUILD_THRESHOLD = 10_000;
+
+    private final GroupDictionary dictionary;
+
+    private final Map<String, HiddenGroupSet> userHiddenGroups;
+
+    private final Set<String> users;
+
+    private final UsernameIndex usersIndex;
+
+    private final RuleIndex rules;
+
+    private final long version;
+
+    // Derived from the previous snapshot if it had one, else built on the first listing of this
+    // snapshot, a race builds it twice at worst
+    private volatile RuleListingIndex listing;
+
+    private RulesSnapshot(GroupDictionary dictionary, Map<String, HiddenGroupSet> userHiddenGroups,
+                          UsernameIndex usersIndex, RuleIndex rules, long version, RuleListingIndex listing) {
+        this.dictionary = dictionary;
+        this.userHiddenGroups = userHiddenGroups;
+        this.users = Collections.unmodifiableSet(userHiddenGroups.keySet());
+        this.usersIndex = usersIndex;
+        this.rules = rules;
+        this.version = version;
+        this.listing = listing;
+    }
+
+    /**
+     * Create an empty snapshot using the given dictionary for group ids.
+     */
+    public static RulesSnapshot empty(GroupDictionary dictionary) {
+        return new RulesSnapshot(dictionary, Collections.emptyMap(), UsernameIndex.EMPTY, RuleIndex.EMPTY, 0, null);
+    }
+
+    /**
+     * @return the unmodifiable hidden groups of a user, empty if none
+     */
+    public Set<String> getHiddenGroups(String username) {
+        HiddenGroupSet hiddenGroups = userHiddenGroups.get(username);
+        return hiddenGroups != null ? hiddenGroups : Collections.emptySet();
+    }
+
+    public boolean hasHiddenGroups(String username) {
+        return usersIndex.contains(username);
+    }
+
+    /**
+     * @return true if the snapshot has no rule at all
+     */
+    public boolean isEmpty() {
+        return userHiddenGroups.isEmpty() && rules.size() == 0;
+    }
+
+    /**
+     * Check if any rule may apply to a principal, see {@link RuleIndex#mayApply}.
+     */
+    public boolean hasHidingRules(String username, Collection<String> groups, String tenantId) {
+        return usersIndex.contains(username) || rules.mayApply(username, groups, tenantId);
+    }
+
+    /**
+     * Get the groups hidden for a principal: the user's hidden groups, plus the given
+     * groups matched by the user, group and tenant rules applying to the principal.
+     *
+     * @return an unmodifiable set of group names, a {@link HiddenGroupSet} unless empty
+     */
+    public Set<String> getHiddenGroups(String username, Collection<String> groups, String tenantId) {
+        HiddenGroupSet hiddenGroups = userHiddenGroups.get(username);
+        List<HidingRule> applicable = rules.getApplicableRules(username, groups, tenantId);
+        if (applicable.isEmpty() || groups == null) {
+            return hiddenGroups != null ? hiddenGroups : Collections.emptySet();
+        }
+        List<String> matched = new ArrayList<>();
+        for (String group : groups) {
+            for (HidingRule rule : applicable) {
+                if (rule.hides(group)) {
+                    matched.add(group);
+                    break;
+                }
+            }
+        }
+        if (matched.isEmpty()) {
+            return hiddenGroups != null ? hiddenGroups : Collections.emptySet();
+        }
+        // Stay an id set, so that resolving principals tests membership by interned id
+        return hiddenGroups != null ? hiddenGroups.withAll(matched) : HiddenGroupSet.of(dictionary, matched);
+    }
+
+    /**
+     * @return the index of the user, group and tenant rules
+     */
+    public RuleIndex getRules() {
+        return rules;
+    }
+
+    /**
+     * @return the unmodifiable set of users having rules
+     */
+    public Set<String> getUsers() {
+        return users;
+    }
+
+    /**
+     * @return the number of rules: hidden groups of users, plus group, tenant and user scoped rules
+     */
+    public int getRuleCount() {
+        int count = rules.size();
+        for (HiddenGroupSet hiddenGroups : userHiddenGroups.values()) {
+            count += hiddenGroups.size();
+        }
+        return count;
+    }
+
+    /**
+     * List the per-user rules sorted by username, one page at a time. The first listing sorts the
+     * users and builds the reverse index of the users hiding each group; later snapshots derive
+     * them from the previous ones, sorting only the users that changed.
+     *
+     * @param usernamePrefix only list the users starting with it, null for all
+     * @param groupName only list the users hiding this group, null for all
+     * @param cursor the next cursor of the previous page, null for the first page
+     * @param limit the maximum number of users in the page, positive
+     */
+    public RulePage listRules(String usernamePrefix, String groupName, String cursor, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Page limit must be positive: " + limit);
+        }
+        String[] sorted = getListing().users(groupName);
+        int first = RuleListingIndex.first(sorted, usernamePrefix);
+        int end = RuleListingIndex.end(sorted, usernamePrefix);
+        int start = Math.max(first, RuleListingIndex.after(sorted, cursor));
+        int stop = (int) Math.min(end, (long) start + limit);
+        List<RulePage.Entry> entries = new ArrayList<>(Math.max(stop - start, 0));
+        for (int i = start; i < stop; i++) {
+            List<String> groups = new ArrayList<>(userHiddenGroups.get(sorted[i]));
+            Collections.sort(groups);
+            entries.add(new RulePage.Entry(sorted[i], groups));
+        }
+        String nextCursor = stop < end ? sorted[stop - 1] : null;
+        return new RulePage(entries, nextCursor, end - first, version);
+    }
+
+    /**
+     * @return the sorted users hiding a group, from the reverse index built on first use
+     *         and then kept up to date by the later snapshots
+     */
+    public List<String> getUsersHidingGroup(String groupName) {
+        return Collections.unmodifiableList(Arrays.asList(getListing().users(groupName)));
+    }
+
+    private RuleListingIndex getListing() {
+        RuleListingIndex index = listing;
+        if (index == null) {
+            index = RuleListingIndex.of(userHiddenGroups);
+            listing = index;
+        }
+        return index;
+    }
+
+    public GroupDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Create the next snapshot, with a group added to the hidden groups of a user.
+     *
+     * @return the new snapshot, or this snapshot if the rule already exists
+     */
+    public RulesSnapshot withHiddenGroup(String username, String groupName) {
+        HiddenGroupSet current = userHiddenGroups.get(username);
+        HiddenGroupSet updated = current == null ? HiddenGroupSet.of(dictionary, Collections.singleton(groupName))
+                : current.with(groupName);
+        return updated == current ? this : withUser(username, updated);
+    }
+
+    /**
+     * Create the next snapshot, with a group removed from the hidden groups of a user.
+     *
+     * @return the new snapshot, or this snapshot if the rule does not exist
+     */
+    public RulesSnapshot withoutHiddenGroup(String username, String groupName) {
+        HiddenGroupSet current = userHiddenGroups.get(username);
+        if (current == null) {
+            return this;
+        }
+        HiddenGroupSet updated = current.without(groupName);
+        return updated == current ? this : withUser(username, updated);
+    }
+
+    /**
+     * Create the next snapshot, with the hidden groups of a user replaced.
+     *
+     * @param username the username
+     * @param hiddenGroups the new hidden groups of the user, an empty set removes the user
+     * @return the new snapshot, with an incremented version
+     */
+    public RulesSnapshot withHiddenGroups(String username, Set<String> hiddenGroups) {
+        return withUser(username, HiddenGroupSet.of(dictionary, hiddenGroups));
+    }
+
+    /**
+     * Create the next snapshot, with a rule added.
+     */
+    public RulesSnapshot withRule(HidingRule rule) {
+        return new RulesSnapshot(dictionary, userHiddenGroups, usersIndex, rules.with(rule), version + 1, listing);
+    }
+
+    /**
+     * Create the next snapshot, with a rule removed.
+     *
+     * @return the new snapshot, or this snapshot if the rule does not exist
+     */
+    public RulesSnapshot withoutRule(HidingRule rule) {
+        RuleIndex updated = rules.without(rule);
+        return updated == rules ? this
+                : new RulesSnapshot(dictionary, userHiddenGroups, usersIndex, updated, version + 1, listing);
+    }
+
+    private RulesSnapshot withUser(String username, HiddenGroupSet hiddenGroups) {
+        Map<String, HiddenGroupSet> map = new HashMap<>(userHiddenGroups);
+        boolean hadUser = userHiddenGroups.containsKey(username);
+        if (hiddenGroups.isEmpty()) {
+            map.remove(username);
+        } else {
+            map.put(username, hiddenGroups);
+        }
+        // The index only depends on the set of users, keep it when that set is unchanged
+        UsernameIndex index = hadUser == !hiddenGroups.isEmpty() ? usersIndex : UsernameIndex.of(map.keySet());
+        RuleListingIndex current = listing;
+        return new RulesSnapshot(dictionary, Collections.unmodifiableMap(map), index, rules, version + 1,
+                current == null ? null : current.with(userHiddenGroups, map, Collections.singleton(username)));
+    }
+
+    /**
+     * @return a builder starting from the content of this snapshot
+     */
+    public Builder toBuilder() {
+        return new Builder(this, userHiddenGroups, usersIndex, listing, rules);
+    }
+
+    /**
+     * @return a builder starting from an empty content, reusing the dictionary of this
+     *         snapshot and producing a later version
+     */
+    public Builder newBuilder() {
+        return new Builder(this, Collections.emptyMap(), UsernameIndex.EMPTY, null, RuleIndex.EMPTY);
+    }
+
+    /**
+     * Mutable builder applying many changes at once and producing a single new snapshot,
+     * instead of one copy of the whole map per change.
+     */
+    public static final class Builder {
+
+        private final RulesSnapshot previous;
+
+        private final Map<String, HiddenGroupSet> users;
+
+        // Index of the users the builder started from
+        private final UsernameIndex usersIndex;
+
+        // Listing index of the users the builder started from, null if not built
+        private final RuleListingIndex listing;
+
+        // Users changed so far, with their new hidden groups
+        private final Map<String, Set<String>> changed = new HashMap<>();
+
+        private RuleIndex rules;
+
+        private Builder(RulesSnapshot previous, Map<String, HiddenGroupSet> users, UsernameIndex usersIndex,
+                        RuleListingIndex listing, RuleIndex rules) {
+            this.previous = previous;
+            this.users = users;
+            this.usersIndex = usersIndex;
+            this.listing = listing;
+            this.rules = rules;
+        }
+
+        private Set<String> groupsOf(String username) {
+            return changed.computeIfAbsent(username, u -> {
+                HiddenGroupSet current = users.get(u);
+                return current == null ? new HashSet<>() : new HashSet<>(current);
+            });
+        }
+
+        /**
+         * @return true if the group was not already hidden for the user
+         */
+        public boolean addHiddenGroup(String username, String groupName) {
+            return groupsOf(username).add(groupName);
+        }
+
+        /**
+         * @return true if the group was hidden for the user
+         */
+        public boolean removeHiddenGroup(String username, String groupName) {
+            return groupsOf(username).remove(groupName);
+        }
+
+        /**
+         * @return the number of groups that were hidden for the user
+         */
+        public int clearHiddenGroups(String username) {
+            Set<String> groups = groupsOf(username);
+            int count = groups.size();
+            groups.clear();
+            return count;
+        }
+
+        public Builder setHiddenGroups(String username, Collection<String> groupNames) {
+            changed.put(username, new HashSet<>(groupNames));
+            return this;
+        }
+
+        public Builder addRule(HidingRule rule) {
+            rules = rules.with(rule);
+            return this;
+        }
+
+        public Builder removeRule(HidingRule rule) {
+            rules = rules.without(rule);
+            return this;
+        }
+
+        /**
+         * Make the rules contain a rule as many times as it is defined, e.g. when one of its
+         * time-bounded definitions starts or stops applying.
+         */
+        public Builder setRuleCount(HidingRule rule, int count) {
+            RuleIndex without;
+            while ((without = rules.without(rule)) != rules) {
+                rules = without;
+            }
+            for (int i = 0; i < count; i++) {
+                rules = rules.with(rule);
+            }
+            return this;
+        }
+
+        public RulesSnapshot build() {
+            Map<String, HiddenGroupSet> map = new HashMap<>(users);
+            if (changed.size() >= PARALLEL_BUILD_THRESHOLD) {
+                // Large builds (startup, imports): sort the sets in the common fork-join pool
+                Map<String, HiddenGroupSet> built = new ConcurrentHashMap<>(changed.size());
+                changed.entrySet().parallelStream().forEach(entry -> {
+                    if (!entry.getValue().isEmpty()) {
+                        built.put(entry.getKey(), HiddenGroupSet.of(previous.dictionary, entry.getValue()));
+                    }
+                });
+                map.keySet().removeAll(changed.keySet());
+                map.putAll(built);
+            } else {
+                for (Map.Entry<String, Set<String>> entry : changed.entrySet()) {
+                    if (entry.getValue().isEmpty()) {
+                        map.remove(entry.getKey());
+                    } else {
+                        map.put(entry.getKey(), HiddenGroupSet.of(previous.dictionary, entry.getValue()));
+                    }
+                }
+            }
+            // Listed snapshots keep their listing index up to date, the others build it on first use
+            return new RulesSnapshot(previous.dictionary, Collections.unmodifiableMap(map), index(map), rules,
+                    previous.version + 1, listing == null ? null : listing.with(users, map, changed.keySet()));
+        }
+
+        /**
+         * Derive the index of the built users from the one the builder started from, so that a batch
+         * adding users only hashes these users.
+         */
+        private UsernameIndex index(Map<String, HiddenGroupSet> built) {
+            List<String> added = new ArrayList<>();
+            for (Map.Entry<String, Set<String>> entry : changed.entrySet()) {
+                boolean had = users.containsKey(entry.getKey());
+                if (had && entry.getValue().isEmpty()) {
+                    // Open addressing tables do not support removals
+                    return UsernameIndex.of(built.keySet());
+                }
+                if (!had && !entry.getValue().isEmpty()) {
+                    added.add(entry.getKey());
+                }
+            }
+            return usersIndex.withAll(added);
+        }
+    }
+}
\ No newline at end of file
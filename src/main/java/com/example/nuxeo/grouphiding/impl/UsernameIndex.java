@@ -0,0 +1,119 @@
+package com.example.nuxeo.grouphiding.impl;
+
+import java.util.Collection;
+
+/**
+ * Immutable open-addressing hash set of usernames.
+ * Built once per change of the set of users having rules and swapped atomically,
+ * so membership tests are lock-free and allocation-free.
+ */
+public final class UsernameIndex {
+
+    public static final UsernameIndex EMPTY = new UsernameIndex(new String[0], new int[0], 0);
+
+    private final String[] keys;
+
+    private final int[] hashes;
+
+    private final int mask;
+
+    private final int size;
+
+    private UsernameIndex(String[] keys, int[] hashes, int size) {
+        this.keys = keys;
+        this.hashes = hashes;
+        this.mask = keys.length - 1;
+        this.size = size;
+    }
+
+    /**
+     * Build an index containing the given usernames.
+     */
+    public static UsernameIndex of(Collection<String> usernames) {
+        if (usernames.isEmpty()) {
+            return EMPTY;
+        }
+        int capacity = capacityFor(usernames.size());
+        return build(new String[capacity], new int[capacity], 0, usernames);
+    }
+
+    /**
+     * Build an index containing the usernames of this index and the given ones. The tables are copied
+     * when the new usernames fit, so a few additions do not hash all the usernames again.
+     */
+    public UsernameIndex withAll(Collection<String> usernames) {
+        if (usernames.isEmpty()) {
+            return this;
+        }
+        int capacity = capacityFor(size + usernames.size());
+        if (capacity <= keys.length) {
+            return build(keys.clone(), hashes.clone(), size, usernames);
+        }
+        String[] newKeys = new String[capacity];
+        int[] newHashes = new int[capacity];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                insert(newKeys, newHashes, keys[i], hashes[i]);
+            }
+        }
+        return build(newKeys, newHashes, size, usernames);
+    }
+
+    /**
+     * @return a power of two capacity with a load factor of at most 0.5
+     */
+    private static int capacityFor(int size) {
+        return Integer.highestOneBit(Math.max(2, size) * 2 - 1) << 1;
+    }
+
+    private static UsernameIndex build(String[] keys, int[] hashes, int size, Collection<String> usernames) {
+        for (String username : usernames) {
+            if (insert(keys, hashes, username, spread(username.hashCode()))) {
+                size++;
+            }
+        }
+        return new UsernameIndex(keys, hashes, size);
+    }
+
+    /**
+     * @return true if the username was not in the tables
+     */
+    private static boolean insert(String[] keys, int[] hashes, String username, int hash) {
+        int mask = keys.length - 1;
+        int i = hash & mask;
+        while (keys[i] != null && !keys[i].equals(username)) {
+            i = (i + 1) & mask;
+        }
+        if (keys[i] != null) {
+            return false;
+        }
+        keys[i] = username;
+        hashes[i] = hash;
+        return true;
+    }
+
+    public boolean contains(String username) {
+        if (size == 0 || username == null) {
+            return false;
+        }
+        int hash = spread(username.hashCode());
+        int i = hash & mask;
+        String key;
+        while ((key = keys[i]) != null) {
+            // Compare the cached hashes first to avoid most String.equals calls
+            if (hashes[i] == hash && key.equals(username)) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.nuxeo.grouphiding.operations;
 
 import com.example.nuxeo.grouphiding.api.GroupHidingConfiguration;
+import com.example.nuxeo.grouphiding.api.RuleValidity;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.nuxeo.ecm.automation.core.annotations.Operation;
@@ -9,7 +10,7 @@ import org.nuxeo.ecm.automation.core.annotations.Param;
 import org.nuxeo.runtime.api.Framework;
 
 /**
- * Automation operation to add a hidden group rule for a user.
+ * Automation operation to add a hidden group rule for a user, optionally only for a period.
  */
 @Operation(id = AddHiddenGroupOperation.ID, category = "GroupHiding", 
            label = "Add Hidden Group", description = "Add a group hiding rule for a specific user")
@@ -25,6 +26,14 @@ public class AddHiddenGroupOperation {
     @Param(name = "groupName", description = "Group name to hide")
     protected String groupName;
 
+    @Param(name = "validFrom", required = false,
+           description = "Date or instant the rule starts to apply, e.g. 2026-03-01 or 2026-03-01T08:00:00Z")
+    protected String validFrom;
+
+    @Param(name = "validUntil", required = false,
+           description = "Date or instant the rule stops applying, e.g. 2026-04-01 or 2026-04-01T08:00:00Z")
+    protected String validUntil;
+
     @OperationMethod
     public void run() {
         if (username == null || username.trim().isEmpty()) {
@@ -41,7 +50,8 @@ public class AddHiddenGroupOperation {
                 throw new RuntimeException("GroupHidingConfiguration service not available");
             }
 
-            config.addHiddenGroup(username.trim(), groupName.trim());
+            config.addHiddenGroup(username.trim(), groupName.trim(), RuleValidity.parseInstant(validFrom),
+                    RuleValidity.parseInstant(validUntil));
             log.info("Added hidden group '{}' for user '{}' via automation", groupName, username);
             
         } catch (Exception e) {
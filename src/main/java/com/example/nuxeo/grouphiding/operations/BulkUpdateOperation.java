@@ -0,0 +1,92 @@
+package com.example.nuxeo.grouphiding.operations;
+
+import com.example.nuxeo.grouphiding.api.BulkUpdateResult;
+import com.example.nuxeo.grouphiding.api.GroupHidingConfiguration;
+import com.example.nuxeo.grouphiding.api.RuleChange;
+import com.example.nuxeo.grouphiding.impl.RuleChangeReader;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.automation.core.annotations.Context;
+import org.nuxeo.ecm.automation.core.annotations.Operation;
+import org.nuxeo.ecm.automation.core.annotations.OperationMethod;
+import org.nuxeo.ecm.automation.core.annotations.Param;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+import org.nuxeo.runtime.api.Framework;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Automation operation to apply a batch of hiding rule changes, read from a JSON or CSV blob,
+ * in a single atomic update.
+ * Restricted to administrators.
+ */
+@Operation(id = BulkUpdateOperation.ID, category = "GroupHiding",
+           label = "Bulk Update Hidden Groups", description = "Add, remove or clear group hiding rules in one batch")
+public class BulkUpdateOperation {
+
+    public static final String ID = "GroupHiding.BulkUpdate";
+
+    private static final Logger log = LogManager.getLogger(BulkUpdateOperation.class);
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    @Context
+    protected CoreSession session;
+
+    @Param(name = "format", required = false, values = { RuleChangeReader.FORMAT_JSON, RuleChangeReader.FORMAT_CSV },
+           description = "Format of the input blob: json (default) or csv")
+    protected String format;
+
+    @OperationMethod
+    public Blob run(Blob input) throws IOException {
+        NuxeoPrincipal caller = session.getPrincipal();
+        if (caller == null || !caller.isAdministrator()) {
+            throw new SecurityException("Only administrators can change the group hiding rules");
+        }
+
+        return apply(input, format, false);
+    }
+
+    /**
+     * Read the changes from the blob, apply them and return the summary as a JSON blob.
+     */
+    static Blob apply(Blob input, String format, boolean replaceAll) throws IOException {
+        if (input == null) {
+            throw new IllegalArgumentException("Input blob cannot be null");
+        }
+
+        GroupHidingConfiguration config = Framework.getService(GroupHidingConfiguration.class);
+        if (config == null) {
+            throw new RuntimeException("GroupHidingConfiguration service not available");
+        }
+
+        List<RuleChange> changes;
+        try (InputStream in = input.getStream()) {
+            changes = RuleChangeReader.readAll(in, format);
+        }
+        BulkUpdateResult result = config.applyBulkUpdate(changes, replaceAll);
+        log.debug("Applied bulk update via automation: {}", result);
+        return Blobs.createJSONBlob(toJson(result));
+    }
+
+    static String toJson(BulkUpdateResult result) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+            generator.writeStartObject();
+            for (Map.Entry<String, Object> entry : result.toMap().entrySet()) {
+                generator.writeNumberField(entry.getKey(), ((Number) entry.getValue()).longValue());
+            }
+            generator.writeEndObject();
+        }
+        return writer.toString();
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.nuxeo.grouphiding.operations;
+
+import com.example.nuxeo.grouphiding.api.GroupHidingConfiguration;
+import com.example.nuxeo.grouphiding.security.AccessExplainer;
+import com.example.nuxeo.grouphiding.security.AccessExplanation;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.automation.core.annotations.Context;
+import org.nuxeo.ecm.automation.core.annotations.Operation;
+import org.nuxeo.ecm.automation.core.annotations.OperationMethod;
+import org.nuxeo.ecm.automation.core.annotations.Param;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+import org.nuxeo.ecm.core.api.security.ACP;
+import org.nuxeo.ecm.core.api.security.SecurityConstants;
+import org.nuxeo.ecm.platform.usermanager.UserManager;
+import org.nuxeo.runtime.api.Framework;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Automation operation explaining why the group hiding policy grants or denies a permission
+ * to a user on the input documents, without enabling debug logging.
+ * Restricted to administrators, as it reveals the hidden groups of the user.
+ */
+@Operation(id = ExplainAccessOperation.ID, category = "GroupHiding",
+           label = "Explain Access", description = "Explain the group hiding decision for a user on documents")
+public class ExplainAccessOperation {
+
+    public static final String ID = "GroupHiding.ExplainAccess";
+
+    private static final Logger log = LogManager.getLogger(ExplainAccessOperation.class);
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    @Context
+    protected CoreSession session;
+
+    @Param(name = "username", description = "User to explain the access of")
+    protected String username;
+
+    @Param(name = "permission", required = false, description = "Checked permission, Read by default")
+    protected String permission = SecurityConstants.READ;
+
+    @OperationMethod
+    public Blob run(DocumentModel doc) throws IOException {
+        List<AccessExplanation> explanations = explain(Collections.singletonList(doc));
+        return Blobs.createJSONBlob(toJson(explanations, false));
+    }
+
+    @OperationMethod
+    public Blob run(DocumentModelList docs) throws IOException {
+        List<AccessExplanation> explanations = explain(docs);
+        return Blobs.createJSONBlob(toJson(explanations, true));
+    }
+
+    private List<AccessExplanation> explain(List<DocumentModel> docs) {
+        if (username == null || username.trim().isEmpty()) {
+            throw new IllegalArgumentException("Username cannot be null or empty");
+        }
+        NuxeoPrincipal caller = session.getPrincipal();
+        if (caller == null || !caller.isAdministrator()) {
+            throw new SecurityException("Only administrators can explain group hiding decisions");
+        }
+
+        GroupHidingConfiguration config = Framework.getService(GroupHidingConfiguration.class);
+        if (config == null) {
+            throw new RuntimeException("GroupHidingConfiguration service not available");
+        }
+        NuxeoPrincipal principal = Framework.getService(UserManager.class).getPrincipal(username.trim());
+        if (principal == null) {
+            throw new IllegalArgumentException("Unknown user: " + username);
+        }
+
+        Map<String, ACP> acps = new LinkedHashMap<>();
+        for (DocumentModel doc : docs) {
+            acps.put(doc.getId(), doc.getACP());
+        }
+        List<AccessExplanation> explanations = new AccessExplainer(config).explain(principal, acps, permission);
+        log.debug("Explained access of user '{}' to permission '{}' on {} documents", username, permission,
+                explanations.size());
+        return explanations;
+    }
+
+    static String toJson(List<AccessExplanation> explanations, boolean array) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+            if (array) {
+                generator.writeStartArray();
+            }
+            for (AccessExplanation explanation : explanations) {
+                write(generator, explanation);
+            }
+            if (array) {
+                generator.writeEndArray();
+            }
+        }
+        return writer.toString();
+    }
+
+    private static void write(JsonGenerator generator, AccessExplanation explanation) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("username", explanation.getUsername());
+        generator.writeStringField("document", explanation.getDocumentId());
+        generator.writeStringField("permission", explanation.getPermission());
+        generator.writeStringField("verdict", explanation.getVerdict().name());
+        if (explanation.getHiddenGroup() != null) {
+            generator.writeStringField("hiddenGroup", explanation.getHiddenGroup());
+        }
+        generator.writeArrayFieldStart("visiblePrincipals");
+        for (String principal : explanation.getVisiblePrincipals()) {
+            generator.writeString(principal);
+        }
+        generator.writeEndArray();
+        generator.writeArrayFieldStart("hiddenGroups");
+        for (String group : explanation.getHiddenGroups()) {
+            generator.writeString(group);
+        }
+        generator.writeEndArray();
+        generator.writeArrayFieldStart("aces");
+        for (AccessExplanation.MatchingAce ace : explanation.getMatchingAces()) {
+            generator.writeStartObject();
+            generator.writeStringField("acl", ace.getAcl());
+            generator.writeStringField("principal", ace.getPrincipal());
+            generator.writeStringField("permission", ace.getPermission());
+            generator.writeBooleanField("granted", ace.isGranted());
+            generator.writeBooleanField("hidden", ace.isHidden());
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,80 @@
+package com.example.nuxeo.grouphiding.operations;
+
+import com.example.nuxeo.grouphiding.api.GroupHidingConfiguration;
+import com.example.nuxeo.grouphiding.impl.RuleChangeReader;
+import com.example.nuxeo.grouphiding.impl.RuleExporter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.automation.core.annotations.Context;
+import org.nuxeo.ecm.automation.core.annotations.Operation;
+import org.nuxeo.ecm.automation.core.annotations.OperationMethod;
+import org.nuxeo.ecm.automation.core.annotations.Param;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+import org.nuxeo.runtime.api.Framework;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Locale;
+
+/**
+ * Automation operation to export the per-user rules to a file, for backups and diffs.
+ * The file is streamed to disk, not built in memory.
+ * Restricted to administrators, as it reveals hidden groups.
+ */
+@Operation(id = ExportRulesOperation.ID, category = "GroupHiding",
+           label = "Export Hidden Groups", description = "Export the per-user group hiding rules")
+public class ExportRulesOperation {
+
+    public static final String ID = "GroupHiding.Export";
+
+    private static final Logger log = LogManager.getLogger(ExportRulesOperation.class);
+
+    @Context
+    protected CoreSession session;
+
+    @Param(name = "format", required = false, values = { RuleChangeReader.FORMAT_CSV, RuleChangeReader.FORMAT_JSONL,
+            RuleChangeReader.FORMAT_JSON, RuleChangeReader.FORMAT_XML },
+           description = "Format of the export: csv (default), jsonl, json or xml")
+    protected String format = RuleChangeReader.FORMAT_CSV;
+
+    @OperationMethod
+    public Blob run() throws IOException {
+        NuxeoPrincipal caller = session.getPrincipal();
+        if (caller == null || !caller.isAdministrator()) {
+            throw new SecurityException("Only administrators can export the group hiding rules");
+        }
+
+        GroupHidingConfiguration config = Framework.getService(GroupHidingConfiguration.class);
+        if (config == null) {
+            throw new RuntimeException("GroupHidingConfiguration service not available");
+        }
+
+        String extension = format.trim().toLowerCase(Locale.ROOT);
+        Blob blob = Blobs.createBlobWithExtension("." + extension);
+        long count;
+        try (OutputStream out = Files.newOutputStream(blob.getFile().toPath())) {
+            count = RuleExporter.export(config, out, extension);
+        }
+        blob.setFilename("hidden-groups." + extension);
+        blob.setMimeType(mimeType(extension));
+        log.info("Exported {} group hiding rules as {}", count, extension);
+        return blob;
+    }
+
+    private static String mimeType(String extension) {
+        switch (extension) {
+        case RuleChangeReader.FORMAT_JSON:
+            return "application/json";
+        case RuleChangeReader.FORMAT_JSONL:
+            return "application/x-ndjson";
+        case RuleChangeReader.FORMAT_XML:
+            return "text/xml";
+        default:
+            return "text/csv";
+        }
+    }
+}
\ No newline at end of file
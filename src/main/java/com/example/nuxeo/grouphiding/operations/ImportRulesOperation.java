@@ -0,0 +1,65 @@
+package com.example.nuxeo.grouphiding.operations;
+
+import com.example.nuxeo.grouphiding.api.BulkUpdateResult;
+import com.example.nuxeo.grouphiding.api.GroupHidingConfiguration;
+import com.example.nuxeo.grouphiding.impl.RuleChangeReader;
+import com.example.nuxeo.grouphiding.impl.RuleImporter;
+import org.nuxeo.ecm.automation.core.annotations.Context;
+import org.nuxeo.ecm.automation.core.annotations.Operation;
+import org.nuxeo.ecm.automation.core.annotations.OperationMethod;
+import org.nuxeo.ecm.automation.core.annotations.Param;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+import org.nuxeo.runtime.api.Framework;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Automation operation to import a rule file of any size, streamed and applied in batches.
+ * Restricted to administrators.
+ */
+@Operation(id = ImportRulesOperation.ID, category = "GroupHiding",
+           label = "Import Hidden Groups", description = "Import group hiding rules from a large file, applied in batches")
+public class ImportRulesOperation {
+
+    public static final String ID = "GroupHiding.Import";
+
+    @Context
+    protected CoreSession session;
+
+    @Param(name = "format", required = false, values = { RuleChangeReader.FORMAT_CSV, RuleChangeReader.FORMAT_JSONL,
+            RuleChangeReader.FORMAT_JSON, RuleChangeReader.FORMAT_XML },
+           description = "Format of the input blob: csv (default), jsonl, json or xml")
+    protected String format = RuleChangeReader.FORMAT_CSV;
+
+    @Param(name = "replaceAll", required = false, description = "Replace the runtime rules by the whole file at once")
+    protected boolean replaceAll;
+
+    @Param(name = "batchSize", required = false, description = "Number of changes applied at once")
+    protected int batchSize = RuleImporter.DEFAULT_BATCH_SIZE;
+
+    @OperationMethod
+    public Blob run(Blob input) throws IOException {
+        if (input == null) {
+            throw new IllegalArgumentException("Input blob cannot be null");
+        }
+        NuxeoPrincipal caller = session.getPrincipal();
+        if (caller == null || !caller.isAdministrator()) {
+            throw new SecurityException("Only administrators can import group hiding rules");
+        }
+
+        GroupHidingConfiguration config = Framework.getService(GroupHidingConfiguration.class);
+        if (config == null) {
+            throw new RuntimeException("GroupHidingConfiguration service not available");
+        }
+
+        BulkUpdateResult result;
+        try (InputStream in = input.getStream()) {
+            result = new RuleImporter(config, batchSize, null).importRules(in, format, replaceAll);
+        }
+        return Blobs.createJSONBlob(BulkUpdateOperation.toJson(result));
+    }
+}
\ No newline at end of file
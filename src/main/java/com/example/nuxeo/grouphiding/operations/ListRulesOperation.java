@@ -0,0 +1,91 @@
+package com.example.nuxeo.grouphiding.operations;
+
+import com.example.nuxeo.grouphiding.api.GroupHidingConfiguration;
+import com.example.nuxeo.grouphiding.api.RulePage;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.nuxeo.ecm.automation.core.annotations.Context;
+import org.nuxeo.ecm.automation.core.annotations.Operation;
+import org.nuxeo.ecm.automation.core.annotations.OperationMethod;
+import org.nuxeo.ecm.automation.core.annotations.Param;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+import org.nuxeo.runtime.api.Framework;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * Automation operation listing the per-user rules one page at a time, optionally filtered by
+ * username prefix or by hidden group. Pass the returned nextCursor to get the following page.
+ * Restricted to administrators, as it reveals hidden groups.
+ */
+@Operation(id = ListRulesOperation.ID, category = "GroupHiding",
+           label = "List Hidden Group Rules", description = "List the per-user hiding rules, paginated")
+public class ListRulesOperation {
+
+    public static final String ID = "GroupHiding.ListRules";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    @Context
+    protected CoreSession session;
+
+    @Param(name = "prefix", required = false, description = "Only list the users whose name starts with it")
+    protected String prefix;
+
+    @Param(name = "group", required = false, description = "Only list the users hiding this group")
+    protected String group;
+
+    @Param(name = "cursor", required = false, description = "The nextCursor of the previous page")
+    protected String cursor;
+
+    @Param(name = "limit", required = false, description = "Maximum number of users in the page, 100 by default")
+    protected int limit = 100;
+
+    @OperationMethod
+    public Blob run() throws IOException {
+        NuxeoPrincipal caller = session.getPrincipal();
+        if (caller == null || !caller.isAdministrator()) {
+            throw new SecurityException("Only administrators can list the group hiding rules");
+        }
+
+        GroupHidingConfiguration config = Framework.getService(GroupHidingConfiguration.class);
+        if (config == null) {
+            throw new RuntimeException("GroupHidingConfiguration service not available");
+        }
+        RulePage page = config.listRules(emptyToNull(prefix), emptyToNull(group), emptyToNull(cursor),
+                Math.min(limit, RulePage.MAX_SIZE));
+        return Blobs.createJSONBlob(toJson(page));
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    static String toJson(RulePage page) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+            generator.writeStartObject();
+            generator.writeNumberField("rulesVersion", page.getRulesVersion());
+            generator.writeNumberField("total", page.getTotal());
+            generator.writeStringField("nextCursor", page.getNextCursor());
+            generator.writeArrayFieldStart("entries");
+            for (RulePage.Entry entry : page.getEntries()) {
+                generator.writeStartObject();
+                generator.writeStringField("username", entry.getUsername());
+                generator.writeArrayFieldStart("hiddenGroups");
+                for (String hiddenGroup : entry.getHiddenGroups()) {
+                    generator.writeString(hiddenGroup);
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        return writer.toString();
+    }
+}
\ No newline at end of file
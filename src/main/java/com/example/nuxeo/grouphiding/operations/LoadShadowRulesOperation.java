@@ -0,0 +1,71 @@
+package com.example.nuxeo.grouphiding.operations;
+
+import com.example.nuxeo.grouphiding.api.BulkUpdateResult;
+import com.example.nuxeo.grouphiding.api.GroupHidingConfiguration;
+import com.example.nuxeo.grouphiding.api.RuleChange;
+import com.example.nuxeo.grouphiding.impl.RuleChangeReader;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.automation.core.annotations.Context;
+import org.nuxeo.ecm.automation.core.annotations.Operation;
+import org.nuxeo.ecm.automation.core.annotations.OperationMethod;
+import org.nuxeo.ecm.automation.core.annotations.Param;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+import org.nuxeo.runtime.api.Framework;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Automation operation to load a candidate rule set for shadow evaluation: the rule changes,
+ * read from a JSON or CSV blob as for bulk updates, are evaluated on a sample of the permission
+ * checks but not enforced. See {@link ShadowReportOperation} for the results.
+ * Restricted to administrators.
+ */
+@Operation(id = LoadShadowRulesOperation.ID, category = "GroupHiding",
+           label = "Load Shadow Hidden Groups", description = "Evaluate candidate hiding rules without enforcing them")
+public class LoadShadowRulesOperation {
+
+    public static final String ID = "GroupHiding.LoadShadowRules";
+
+    private static final Logger log = LogManager.getLogger(LoadShadowRulesOperation.class);
+
+    @Context
+    protected CoreSession session;
+
+    @Param(name = "format", required = false, values = { RuleChangeReader.FORMAT_JSON, RuleChangeReader.FORMAT_CSV },
+           description = "Format of the input blob: json (default) or csv")
+    protected String format;
+
+    @Param(name = "replaceAll", required = false,
+           description = "Start the candidate from the rules contributed through XML only, instead of the live rules")
+    protected boolean replaceAll;
+
+    @OperationMethod
+    public Blob run(Blob input) throws IOException {
+        if (input == null) {
+            throw new IllegalArgumentException("Input blob cannot be null");
+        }
+        NuxeoPrincipal caller = session.getPrincipal();
+        if (caller == null || !caller.isAdministrator()) {
+            throw new SecurityException("Only administrators can load shadow group hiding rules");
+        }
+
+        GroupHidingConfiguration config = Framework.getService(GroupHidingConfiguration.class);
+        if (config == null) {
+            throw new RuntimeException("GroupHidingConfiguration service not available");
+        }
+
+        List<RuleChange> changes;
+        try (InputStream in = input.getStream()) {
+            changes = RuleChangeReader.readAll(in, format);
+        }
+        BulkUpdateResult result = config.loadShadowRules(changes, replaceAll);
+        log.debug("Loaded shadow rules via automation: {}", result);
+        return Blobs.createJSONBlob(BulkUpdateOperation.toJson(result));
+    }
+}
\ No newline at end of file
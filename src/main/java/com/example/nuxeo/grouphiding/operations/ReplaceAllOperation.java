@@ -0,0 +1,41 @@
+package com.example.nuxeo.grouphiding.operations;
+
+import com.example.nuxeo.grouphiding.impl.RuleChangeReader;
+import org.nuxeo.ecm.automation.core.annotations.Context;
+import org.nuxeo.ecm.automation.core.annotations.Operation;
+import org.nuxeo.ecm.automation.core.annotations.OperationMethod;
+import org.nuxeo.ecm.automation.core.annotations.Param;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+
+import java.io.IOException;
+
+/**
+ * Automation operation to replace all the hiding rules added at runtime with the rules read
+ * from a JSON or CSV blob, in a single atomic update. Rules contributed through XML are kept.
+ * Restricted to administrators.
+ */
+@Operation(id = ReplaceAllOperation.ID, category = "GroupHiding",
+           label = "Replace All Hidden Groups", description = "Replace all runtime group hiding rules in one batch")
+public class ReplaceAllOperation {
+
+    public static final String ID = "GroupHiding.ReplaceAll";
+
+    @Context
+    protected CoreSession session;
+
+    @Param(name = "format", required = false, values = { RuleChangeReader.FORMAT_JSON, RuleChangeReader.FORMAT_CSV },
+           description = "Format of the input blob: json (default) or csv")
+    protected String format;
+
+    @OperationMethod
+    public Blob run(Blob input) throws IOException {
+        NuxeoPrincipal caller = session.getPrincipal();
+        if (caller == null || !caller.isAdministrator()) {
+            throw new SecurityException("Only administrators can replace the group hiding rules");
+        }
+
+        return BulkUpdateOperation.apply(input, format, true);
+    }
+}
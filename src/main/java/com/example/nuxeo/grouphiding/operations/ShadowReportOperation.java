@@ -0,0 +1,91 @@
+package com.example.nuxeo.grouphiding.operations;
+
+import com.example.nuxeo.grouphiding.api.GroupHidingConfiguration;
+import com.example.nuxeo.grouphiding.api.ShadowStatistics;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.nuxeo.ecm.automation.core.annotations.Context;
+import org.nuxeo.ecm.automation.core.annotations.Operation;
+import org.nuxeo.ecm.automation.core.annotations.OperationMethod;
+import org.nuxeo.ecm.automation.core.annotations.Param;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+import org.nuxeo.runtime.api.Framework;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Automation operation reporting the shadow evaluation of the candidate rule set: how many sampled
+ * checks it would deny or allow unlike the live rules, with the users and hidden groups involved.
+ * Restricted to administrators, as it reveals hidden groups.
+ */
+@Operation(id = ShadowReportOperation.ID, category = "GroupHiding",
+           label = "Shadow Hidden Groups Report", description = "Report the differences of candidate hiding rules")
+public class ShadowReportOperation {
+
+    public static final String ID = "GroupHiding.ShadowReport";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    @Context
+    protected CoreSession session;
+
+    @Param(name = "limit", required = false, description = "Maximum number of users and groups listed, 20 by default")
+    protected int limit = 20;
+
+    @Param(name = "clear", required = false, description = "Drop the candidate rules after reporting")
+    protected boolean clear;
+
+    @OperationMethod
+    public Blob run() throws IOException {
+        NuxeoPrincipal caller = session.getPrincipal();
+        if (caller == null || !caller.isAdministrator()) {
+            throw new SecurityException("Only administrators can read the shadow group hiding report");
+        }
+
+        GroupHidingConfiguration config = Framework.getService(GroupHidingConfiguration.class);
+        if (config == null) {
+            throw new RuntimeException("GroupHidingConfiguration service not available");
+        }
+        ShadowStatistics statistics = config.getShadowStatistics();
+        if (clear) {
+            config.clearShadowRules();
+        }
+        return Blobs.createJSONBlob(toJson(statistics, limit));
+    }
+
+    static String toJson(ShadowStatistics statistics, int limit) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+            generator.writeStartObject();
+            generator.writeBooleanField("active", statistics != null);
+            if (statistics != null) {
+                for (Map.Entry<String, Object> entry : statistics.toMap().entrySet()) {
+                    generator.writeNumberField(entry.getKey(), (Long) entry.getValue());
+                }
+                write(generator, "topWouldDeny", statistics.getTopWouldDeny(limit));
+                write(generator, "topWouldAllow", statistics.getTopWouldAllow(limit));
+            }
+            generator.writeEndObject();
+        }
+        return writer.toString();
+    }
+
+    private static void write(JsonGenerator generator, String name, List<ShadowStatistics.Difference> differences)
+            throws IOException {
+        generator.writeArrayFieldStart(name);
+        for (ShadowStatistics.Difference difference : differences) {
+            generator.writeStartObject();
+            generator.writeStringField("username", difference.getUsername());
+            generator.writeStringField("hiddenGroup", difference.getHiddenGroup());
+            generator.writeNumberField("count", difference.getCount());
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,147 @@
+package com.example.nuxeo.grouphiding.security;
+
+import com.example.nuxeo.grouphiding.api.GroupHidingConfiguration;
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+import org.nuxeo.ecm.core.api.security.ACE;
+import org.nuxeo.ecm.core.api.security.ACL;
+import org.nuxeo.ecm.core.api.security.ACP;
+import org.nuxeo.ecm.core.api.security.SecurityConstants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Explains the decisions of {@link GroupHidingSecurityPolicy} for diagnostics, using the same
+ * principal resolution, permission expansion and ACP evaluation, but none of its caches.
+ * A batch of documents is explained with the user resolved and the permission expanded once.
+ */
+public class AccessExplainer {
+
+    private final GroupHidingConfiguration configuration;
+
+    private final PermissionTable permissionTable;
+
+    public AccessExplainer(GroupHidingConfiguration configuration) {
+        this(configuration, new PermissionTable());
+    }
+
+    AccessExplainer(GroupHidingConfiguration configuration, PermissionTable permissionTable) {
+        if (configuration == null) {
+            throw new IllegalArgumentException("Configuration cannot be null");
+        }
+        this.configuration = configuration;
+        this.permissionTable = permissionTable;
+    }
+
+    /**
+     * Explain the decision of the policy for a single document.
+     *
+     * @param principal the user
+     * @param documentId the id of the document, only reported
+     * @param acp the merged ACP of the document
+     * @param permission the checked permission
+     * @return the explanation
+     */
+    public AccessExplanation explain(NuxeoPrincipal principal, String documentId, ACP acp, String permission) {
+        return explain(principal, Collections.singletonMap(documentId, acp), permission).get(0);
+    }
+
+    /**
+     * Explain the decisions of the policy for a batch of documents.
+     *
+     * @param principal the user
+     * @param acps the merged ACPs of the documents by document id, in the order to report
+     * @param permission the checked permission
+     * @return the explanations, in the order of the documents
+     */
+    public List<AccessExplanation> explain(NuxeoPrincipal principal, Map<String, ACP> acps, String permission) {
+        if (principal == null || principal.getName() == null) {
+            throw new IllegalArgumentException("Principal cannot be null");
+        }
+        if (permission == null) {
+            throw new IllegalArgumentException("Permission cannot be null");
+        }
+
+        ResolvedPrincipals resolved = resolve(principal);
+        List<String> hiddenGroups = Collections.unmodifiableList(Arrays.asList(resolved.getHiddenGroups()));
+        List<String> visiblePrincipals = Collections.unmodifiableList(visiblePrincipals(principal, resolved));
+        Set<String> visible = new HashSet<>(visiblePrincipals);
+        visible.add(SecurityConstants.EVERYONE);
+        Set<String> hidden = new HashSet<>(hiddenGroups);
+        PermissionTable.PermissionSet permissions = permissionTable.expand(permission, null);
+
+        List<AccessExplanation> explanations = new ArrayList<>(acps.size());
+        for (Map.Entry<String, ACP> entry : acps.entrySet()) {
+            ACP acp = entry.getValue();
+            List<AccessExplanation.MatchingAce> matchingAces = matchingAces(acp, visible, hidden, permissions);
+            AccessExplanation.Verdict verdict;
+            String hiddenGroup = null;
+            if (!resolved.hasHiddenGroups()) {
+                verdict = AccessExplanation.Verdict.NOT_RESTRICTED;
+            } else {
+                AcpEvaluator.Evaluation evaluation = AcpEvaluator.evaluate(acp, resolved, permissions);
+                verdict = AccessExplanation.Verdict.valueOf(evaluation.getDecision().name());
+                hiddenGroup = evaluation.getHiddenGroup();
+            }
+            explanations.add(new AccessExplanation(principal.getName(), entry.getKey(), permission, visiblePrincipals,
+                    hiddenGroups, Collections.unmodifiableList(matchingAces), verdict, hiddenGroup));
+        }
+        return explanations;
+    }
+
+    /**
+     * Resolve the principal as the policy does, users without applicable rules having no hidden groups.
+     */
+    private ResolvedPrincipals resolve(NuxeoPrincipal principal) {
+        long version = configuration.getRulesVersion();
+        List<String> groups = principal.getAllGroups();
+        if (groups == null || groups.isEmpty()) {
+            groups = principal.getGroups();
+        }
+        if (!configuration.hasHidingRules(principal.getName(), groups, principal.getTenantId())) {
+            return ResolvedPrincipals.compute(principal, principal.getGroups(), Collections.emptyList(),
+                    Collections.emptySet(), version);
+        }
+        return ResolvedPrincipals.resolve(principal, principal.getGroups(), configuration, version);
+    }
+
+    private static List<String> visiblePrincipals(NuxeoPrincipal principal, ResolvedPrincipals resolved) {
+        if (resolved.hasHiddenGroups()) {
+            return Arrays.asList(resolved.getVisiblePrincipals());
+        }
+        // Not split by the resolution, every principal of the user is visible
+        Set<String> all = new LinkedHashSet<>();
+        all.add(principal.getName());
+        all.addAll(ResolvedPrincipals.allGroupsOf(principal, principal.getGroups()));
+        return new ArrayList<>(all);
+    }
+
+    private static List<AccessExplanation.MatchingAce> matchingAces(ACP acp, Set<String> visible, Set<String> hidden,
+                                                                    PermissionTable.PermissionSet permissions) {
+        ACL[] acls = acp == null ? null : acp.getACLs();
+        if (acls == null) {
+            return Collections.emptyList();
+        }
+        List<AccessExplanation.MatchingAce> matching = new ArrayList<>();
+        for (ACL acl : acls) {
+            for (ACE ace : acl.getACEs()) {
+                if (!ace.isEffective() || !permissions.contains(ace.getPermission())) {
+                    continue;
+                }
+                // As in the evaluation, a hidden group is hidden even if also listed as visible
+                boolean isHidden = hidden.contains(ace.getUsername());
+                if (isHidden || visible.contains(ace.getUsername())) {
+                    matching.add(new AccessExplanation.MatchingAce(acl.getName(), ace.getUsername(),
+                            ace.getPermission(), ace.isGranted(), isHidden));
+                }
+            }
+        }
+        return matching;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,166 @@
+package com.example.nuxeo.grouphiding.security;
+
+import java.util.List;
+
+/**
+ * Explanation of the decision of the group hiding policy for a user, a document and a permission:
+ * the principals the user is split into, the ACEs of the document matching them, and the verdict.
+ */
+public final class AccessExplanation {
+
+    /**
+     * Verdict of the policy.
+     */
+    public enum Verdict {
+        /** The user is not a member of any hidden group, the policy does not apply. */
+        NOT_RESTRICTED,
+        /** The permission is granted through a visible principal, the policy does not restrict it. */
+        VISIBLE_GRANT,
+        /** The permission would only be granted through a hidden group, the policy denies it. */
+        HIDDEN_DENY,
+        /** No ACE grants the permission, the policy does not change the outcome. */
+        NO_GRANT
+    }
+
+    /**
+     * An ACE of the merged ACP matching one of the user's principals and the checked permission.
+     */
+    public static final class MatchingAce {
+
+        private final String acl;
+
+        private final String principal;
+
+        private final String permission;
+
+        private final boolean granted;
+
+        private final boolean hidden;
+
+        public MatchingAce(String acl, String principal, String permission, boolean granted, boolean hidden) {
+            this.acl = acl;
+            this.principal = principal;
+            this.permission = permission;
+            this.granted = granted;
+            this.hidden = hidden;
+        }
+
+        /**
+         * @return the name of the ACL holding the ACE
+         */
+        public String getAcl() {
+            return acl;
+        }
+
+        public String getPrincipal() {
+            return principal;
+        }
+
+        public String getPermission() {
+            return permission;
+        }
+
+        public boolean isGranted() {
+            return granted;
+        }
+
+        /**
+         * @return true if the principal is a hidden group of the user
+         */
+        public boolean isHidden() {
+            return hidden;
+        }
+
+        @Override
+        public String toString() {
+            return acl + ":" + principal + ":" + permission + ":" + (granted ? "grant" : "deny")
+                    + (hidden ? " (hidden)" : "");
+        }
+    }
+
+    private final String username;
+
+    private final String documentId;
+
+    private final String permission;
+
+    private final List<String> visiblePrincipals;
+
+    private final List<String> hiddenGroups;
+
+    private final List<MatchingAce> matchingAces;
+
+    private final Verdict verdict;
+
+    private final String hiddenGroup;
+
+    public AccessExplanation(String username, String documentId, String permission, List<String> visiblePrincipals,
+                             List<String> hiddenGroups, List<MatchingAce> matchingAces, Verdict verdict,
+                             String hiddenGroup) {
+        this.username = username;
+        this.documentId = documentId;
+        this.permission = permission;
+        this.visiblePrincipals = visiblePrincipals;
+        this.hiddenGroups = hiddenGroups;
+        this.matchingAces = matchingAces;
+        this.verdict = verdict;
+        this.hiddenGroup = hiddenGroup;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getDocumentId() {
+        return documentId;
+    }
+
+    public String getPermission() {
+        return permission;
+    }
+
+    /**
+     * @return the user name and its groups that are not hidden
+     */
+    public List<String> getVisiblePrincipals() {
+        return visiblePrincipals;
+    }
+
+    /**
+     * @return the hidden groups the user is a member of
+     */
+    public List<String> getHiddenGroups() {
+        return hiddenGroups;
+    }
+
+    /**
+     * @return the effective ACEs matching the user and the permission, in evaluation order
+     */
+    public List<MatchingAce> getMatchingAces() {
+        return matchingAces;
+    }
+
+    public Verdict getVerdict() {
+        return verdict;
+    }
+
+    /**
+     * @return the hidden group the permission would be granted through, for a {@link Verdict#HIDDEN_DENY}
+     */
+    public String getHiddenGroup() {
+        return hiddenGroup;
+    }
+
+    /**
+     * @return true if the policy denies the permission
+     */
+    public boolean isDenied() {
+        return verdict == Verdict.HIDDEN_DENY;
+    }
+
+    @Override
+    public String toString() {
+        return username + " " + permission + " on " + documentId + ": " + verdict
+                + (hiddenGroup != null ? " via '" + hiddenGroup + "'" : "");
+    }
+}
\ No newline at end of file
@@ -0,0 +1,123 @@
+package com.example.nuxeo.grouphiding.security;
+
+import org.nuxeo.ecm.core.api.security.ACE;
+import org.nuxeo.ecm.core.api.security.ACL;
+import org.nuxeo.ecm.core.api.security.ACP;
+
+/**
+ * Evaluates a merged ACP for a user with hidden groups in a single pass over its ACEs.
+ * <p>
+ * As in Nuxeo, the first effective ACE matching one of the user's principals and one of the
+ * checked permissions decides. The ACP is granted through visible means if the first ACE matching
+ * a visible principal grants; otherwise access is only through hidden groups if the first ACE
+ * matching any principal of the user, hidden groups included, grants.
+ * <p>
+ * Decisions are not cached: merged ACPs are rebuilt for each check, and any key of their content
+ * takes a pass over the ACEs, which is what an evaluation costs.
+ */
+final class AcpEvaluator {
+
+    private AcpEvaluator() {
+    }
+
+    /**
+     * @param acp the merged ACP
+     * @param resolved the resolved principals of the user
+     * @param permissions the checked permission and the permissions granting it
+     * @return the evaluation
+     */
+    static Evaluation evaluate(ACP acp, ResolvedPrincipals resolved,
+                                           PermissionTable.PermissionSet permissions) {
+        ACL[] acls = acp == null ? null : acp.getACLs();
+        if (acls == null) {
+            return Evaluation.NO_GRANT;
+        }
+        // First ACE matching any principal of the user, hidden groups included
+        ACE first = null;
+        for (ACL acl : acls) {
+            // Indexed, getACEs() copies the ACEs to a new array
+            for (int i = 0, size = acl.size(); i < size; i++) {
+                ACE ace = acl.get(i);
+                if (!isEffective(ace) || !permissions.contains(ace.getPermission())) {
+                    continue;
+                }
+                int kind = resolved.getPrincipalKind(ace.getUsername());
+                if (kind == ResolvedPrincipals.NOT_MEMBER) {
+                    continue;
+                }
+                if (first == null) {
+                    first = ace;
+                }
+                if (kind == ResolvedPrincipals.VISIBLE) {
+                    // First visible ACE decides what the user gets without hidden groups
+                    if (ace.isGranted()) {
+                        return Evaluation.VISIBLE_GRANT;
+                    }
+                    return hiddenGrant(first);
+                }
+            }
+        }
+        return hiddenGrant(first);
+    }
+
+    /**
+     * ACE.isEffective() creates a calendar, only needed for the ACEs with a begin or end date.
+     */
+    private static boolean isEffective(ACE ace) {
+        return ace.getBegin() == null && ace.getEnd() == null || ace.isEffective();
+    }
+
+    /**
+     * @param first the first matching ACE, if granted it is for a hidden group
+     */
+    private static Evaluation hiddenGrant(ACE first) {
+        return first != null && first.isGranted() ? Evaluation.hiddenDeny(first.getUsername())
+                : Evaluation.NO_GRANT;
+    }
+
+    /**
+     * Outcome of the evaluation of an ACP for a user with hidden groups.
+     */
+    public enum Decision {
+        /** Granted through a visible principal, access is left to the other policies and ACLs. */
+        VISIBLE_GRANT,
+        /** Granted only through hidden groups, access is denied. */
+        HIDDEN_DENY,
+        /** Not granted at all, access is left to the ACLs. */
+        NO_GRANT
+    }
+
+    /**
+     * A decision, with the hidden group granting access when denied.
+     */
+    public static final class Evaluation {
+
+        public static final Evaluation VISIBLE_GRANT = new Evaluation(Decision.VISIBLE_GRANT, null);
+
+        public static final Evaluation NO_GRANT = new Evaluation(Decision.NO_GRANT, null);
+
+        private final Decision decision;
+
+        private final String hiddenGroup;
+
+        private Evaluation(Decision decision, String hiddenGroup) {
+            this.decision = decision;
+            this.hiddenGroup = hiddenGroup;
+        }
+
+        public static Evaluation hiddenDeny(String hiddenGroup) {
+            return new Evaluation(Decision.HIDDEN_DENY, hiddenGroup);
+        }
+
+        public Decision getDecision() {
+            return decision;
+        }
+
+        /**
+         * @return the hidden group of the first ACE granting access, for {@link Decision#HIDDEN_DENY}
+         */
+        public String getHiddenGroup() {
+            return hiddenGroup;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,46 @@
+package com.example.nuxeo.grouphiding.security;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.platform.audit.api.AuditLogger;
+import org.nuxeo.ecm.platform.audit.api.LogEntry;
+import org.nuxeo.runtime.api.Framework;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Writes denial events to the Nuxeo audit, one batch per drain.
+ */
+public class AuditDenialSink implements DenialSink {
+
+    private static final Logger log = LogManager.getLogger(AuditDenialSink.class);
+
+    public static final String EVENT_ID = "groupHidingAccessDenied";
+
+    public static final String CATEGORY = "groupHiding";
+
+    @Override
+    public void write(List<DenialEvent> events) {
+        AuditLogger audit = Framework.getService(AuditLogger.class);
+        if (audit == null) {
+            log.debug("AuditLogger not available, dropping {} denial events", events.size());
+            return;
+        }
+        List<LogEntry> entries = new ArrayList<>(events.size());
+        for (DenialEvent event : events) {
+            LogEntry entry = audit.newLogEntry();
+            entry.setEventId(EVENT_ID);
+            entry.setCategory(CATEGORY);
+            entry.setEventDate(new Date(event.getTimestamp()));
+            entry.setPrincipalName(event.getUsername());
+            entry.setRepositoryId(event.getRepositoryName());
+            entry.setDocUUID(event.getDocId());
+            entry.setComment(event.getPermission() + " via " + event.getHiddenGroup()
+                    + (event.getSuppressed() > 0 ? " (" + event.getSuppressed() + " similar suppressed)" : ""));
+            entries.add(entry);
+        }
+        audit.addLogEntries(entries);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,117 @@
+package com.example.nuxeo.grouphiding.security;
+
+import com.example.nuxeo.grouphiding.api.GroupHidingConfiguration;
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+import org.nuxeo.ecm.core.api.security.ACP;
+import org.nuxeo.runtime.api.Framework;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Checks a permission for one user on many documents at once, for listings and exports.
+ * The user is resolved and the permission expanded once per batch, then each merged ACP is
+ * evaluated with the same single pass as {@link GroupHidingSecurityPolicy#checkPermission};
+ * large batches are evaluated in parallel. Resolved users are cached across batches and dropped
+ * when their groups change; {@link #close()} stops listening to these changes.
+ */
+public class BulkPermissionChecker implements AutoCloseable {
+
+    /**
+     * Number of documents from which a batch is evaluated in parallel.
+     */
+    public static final int PARALLEL_THRESHOLD = 4096;
+
+    private final GroupHidingConfiguration configuration;
+
+    private final PermissionTable permissionTable;
+
+    private final ResolvedPrincipalsCache principalsCache = new ResolvedPrincipalsCache();
+
+    public BulkPermissionChecker() {
+        this(Framework.getService(GroupHidingConfiguration.class));
+    }
+
+    public BulkPermissionChecker(GroupHidingConfiguration configuration) {
+        this(configuration, new PermissionTable());
+    }
+
+    BulkPermissionChecker(GroupHidingConfiguration configuration, PermissionTable permissionTable) {
+        if (configuration == null) {
+            throw new IllegalArgumentException("GroupHidingConfiguration service not available");
+        }
+        this.configuration = configuration;
+        this.permissionTable = permissionTable;
+        configuration.addMembershipListener(principalsCache);
+    }
+
+    /**
+     * Check a permission for a user on a batch of documents.
+     *
+     * @param principal the user
+     * @param acps the merged ACPs of the documents
+     * @param permission the checked permission
+     * @return the documents denied by the policy, as a bitmap indexed by position in {@code acps};
+     *         other documents are left to the ACLs
+     */
+    public BitSet check(NuxeoPrincipal principal, List<ACP> acps, String permission) {
+        BitSet denied = new BitSet(acps.size());
+        if (principal == null || principal.getName() == null || acps.isEmpty()) {
+            return denied;
+        }
+        List<String> groups = principal.getAllGroups();
+        if (groups == null || groups.isEmpty()) {
+            groups = principal.getGroups();
+        }
+        if (!configuration.hasHidingRules(principal.getName(), groups, principal.getTenantId())) {
+            return denied;
+        }
+        ResolvedPrincipals resolved = principalsCache.resolve(principal, configuration);
+        if (!resolved.hasHiddenGroups()) {
+            return denied;
+        }
+
+        PermissionTable.PermissionSet permissions = permissionTable.expand(permission, null);
+        if (acps.size() < PARALLEL_THRESHOLD) {
+            for (int i = 0; i < acps.size(); i++) {
+                if (isDenied(acps.get(i), resolved, permissions)) {
+                    denied.set(i);
+                }
+            }
+        } else {
+            // BitSet is not thread-safe, collect the positions then set them
+            int[] positions = IntStream.range(0, acps.size())
+                                       .parallel()
+                                       .filter(i -> isDenied(acps.get(i), resolved, permissions))
+                                       .toArray();
+            for (int i : positions) {
+                denied.set(i);
+            }
+        }
+        return denied;
+    }
+
+    private static boolean isDenied(ACP acp, ResolvedPrincipals resolved, PermissionTable.PermissionSet permissions) {
+        return AcpEvaluator.evaluate(acp, resolved, permissions).getDecision() == AcpEvaluator.Decision.HIDDEN_DENY;
+    }
+
+    /**
+     * Drop the cached resolution of all users, e.g. after group membership changes.
+     */
+    public void invalidateAll() {
+        principalsCache.invalidateAll();
+    }
+
+    ResolvedPrincipalsCache getPrincipalsCache() {
+        return principalsCache;
+    }
+
+    /**
+     * Stop dropping the cached users on group membership changes, the checker must not be used after.
+     */
+    @Override
+    public void close() {
+        configuration.removeMembershipListener(principalsCache);
+    }
+}
\ No newline at end of file
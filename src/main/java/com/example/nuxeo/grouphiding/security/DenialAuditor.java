@@ -0,0 +1,243 @@
+package com.example.nuxeo.grouphiding.security;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous audit of the denials of the policy. Request threads only sample, rate limit and
+ * push events to a lock-free ring buffer; a background thread drains it to a {@link DenialSink}.
+ * At most one event per user and hidden group is reported per interval, with the number of
+ * suppressed ones; events are dropped and counted when the buffer is full.
+ */
+public class DenialAuditor {
+
+    private static final Logger log = LogManager.getLogger(DenialAuditor.class);
+
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    public static final long DEFAULT_INTERVAL_MS = 60000;
+
+    public static final double DEFAULT_SAMPLING_RATE = 1.0;
+
+    static final int MAX_RATE_LIMITS = 10000;
+
+    private static final int BATCH_SIZE = 512;
+
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final RingBuffer<DenialEvent> buffer;
+
+    private final DenialSink sink;
+
+    private final double samplingRate;
+
+    private final long intervalNanos;
+
+    private final Map<String, RateLimit> rateLimits = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final LongAdder suppressed = new LongAdder();
+
+    private volatile Thread drainer;
+
+    /**
+     * @param sink the destination of the events
+     * @param capacity the capacity of the buffer
+     * @param samplingRate the fraction of the denials considered for audit, in (0, 1]
+     * @param intervalMs the minimum interval between two events of the same user and group
+     */
+    public DenialAuditor(DenialSink sink, int capacity, double samplingRate, long intervalMs) {
+        this.sink = sink;
+        this.buffer = new RingBuffer<>(capacity);
+        this.samplingRate = samplingRate;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+    }
+
+    /**
+     * Record a denial. Never blocks.
+     */
+    public void denied(String username, String hiddenGroup, String permission, String repositoryName,
+                       String docId) {
+        if (samplingRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= samplingRate) {
+            return;
+        }
+        long now = System.nanoTime();
+        String key = username + '\u0000' + hiddenGroup;
+        RateLimit rateLimit = rateLimits.get(key);
+        if (rateLimit == null) {
+            if (rateLimits.size() >= MAX_RATE_LIMITS) {
+                evict(now);
+            }
+            rateLimit = rateLimits.computeIfAbsent(key, k -> new RateLimit(now - intervalNanos));
+        }
+        long skipped = rateLimit.tryAcquire(now, intervalNanos);
+        if (skipped < 0) {
+            suppressed.increment();
+            return;
+        }
+        DenialEvent event = new DenialEvent(System.currentTimeMillis(), username, hiddenGroup, permission,
+                repositoryName, docId, skipped);
+        if (!buffer.offer(event)) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Make room for new rate limits: drop the windows that ended, whose next event is reported anyway,
+     * then if still needed the oldest ones, down to three quarters of the bound so that this runs
+     * rarely. Concurrent callers skip it, the map exceeding its bound by a few entries meanwhile.
+     */
+    private void evict(long now) {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            rateLimits.values().removeIf(rateLimit -> rateLimit.isExpired(now, intervalNanos));
+            int excess = rateLimits.size() - MAX_RATE_LIMITS * 3 / 4;
+            if (excess > 0) {
+                long[] lasts = rateLimits.values().stream().mapToLong(RateLimit::getLast).sorted().toArray();
+                long threshold = lasts[Math.min(excess, lasts.length) - 1];
+                rateLimits.values().removeIf(rateLimit -> rateLimit.getLast() - threshold <= 0);
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * Start the background thread draining the buffer.
+     */
+    public synchronized void start() {
+        if (drainer != null) {
+            return;
+        }
+        Thread thread = new Thread(this::run, "GroupHiding-DenialAudit");
+        thread.setDaemon(true);
+        drainer = thread;
+        thread.start();
+    }
+
+    /**
+     * Stop the background thread, after draining the pending events.
+     */
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            thread = drainer;
+            drainer = null;
+        }
+        if (thread == null) {
+            return;
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        Thread self = Thread.currentThread();
+        while (drainer == self) {
+            if (drain() == 0) {
+                LockSupport.parkNanos(this, IDLE_NANOS);
+            }
+        }
+        drain();
+    }
+
+    /**
+     * Write the pending events to the sink. Must only be called by one thread at a time.
+     *
+     * @return the number of events written
+     */
+    int drain() {
+        int total = 0;
+        List<DenialEvent> batch = new ArrayList<>();
+        DenialEvent event;
+        while ((event = buffer.poll()) != null) {
+            batch.add(event);
+            if (batch.size() == BATCH_SIZE) {
+                total += write(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            total += write(batch);
+        }
+        return total;
+    }
+
+    private int write(List<DenialEvent> batch) {
+        try {
+            sink.write(batch);
+        } catch (RuntimeException e) {
+            log.warn("Failed to write {} group hiding denial events", batch.size(), e);
+        }
+        return batch.size();
+    }
+
+    /**
+     * @return the number of events dropped because the buffer was full
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return the number of events suppressed by rate limiting
+     */
+    public long getSuppressed() {
+        return suppressed.sum();
+    }
+
+    private static final class RateLimit {
+
+        private final AtomicLong last;
+
+        private final AtomicLong skipped = new AtomicLong();
+
+        RateLimit(long last) {
+            this.last = new AtomicLong(last);
+        }
+
+        long getLast() {
+            return last.get();
+        }
+
+        /**
+         * @return true if the window of the last reported event ended
+         */
+        boolean isExpired(long now, long intervalNanos) {
+            return now - last.get() >= intervalNanos;
+        }
+
+        /**
+         * @return the number of events skipped since the previous acquisition, -1 if this one
+         *         must be skipped
+         */
+        long tryAcquire(long now, long intervalNanos) {
+            long previous = last.get();
+            if (now - previous < intervalNanos || !last.compareAndSet(previous, now)) {
+                skipped.incrementAndGet();
+                return -1;
+            }
+            return skipped.getAndSet(0);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,74 @@
+package com.example.nuxeo.grouphiding.security;
+
+/**
+ * An access denied by the policy because it would only be granted through a hidden group.
+ */
+public final class DenialEvent {
+
+    private final long timestamp;
+
+    private final String username;
+
+    private final String hiddenGroup;
+
+    private final String permission;
+
+    private final String repositoryName;
+
+    private final String docId;
+
+    // Events of the same user and group dropped by rate limiting since the previous one
+    private final long suppressed;
+
+    public DenialEvent(long timestamp, String username, String hiddenGroup, String permission,
+                       String repositoryName, String docId, long suppressed) {
+        this.timestamp = timestamp;
+        this.username = username;
+        this.hiddenGroup = hiddenGroup;
+        this.permission = permission;
+        this.repositoryName = repositoryName;
+        this.docId = docId;
+        this.suppressed = suppressed;
+    }
+
+    /**
+     * @return the time of the denial, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getHiddenGroup() {
+        return hiddenGroup;
+    }
+
+    public String getPermission() {
+        return permission;
+    }
+
+    public String getRepositoryName() {
+        return repositoryName;
+    }
+
+    public String getDocId() {
+        return docId;
+    }
+
+    /**
+     * @return the number of similar denials not reported since the previous event for the same
+     *         user and group
+     */
+    public long getSuppressed() {
+        return suppressed;
+    }
+
+    @Override
+    public String toString() {
+        return "user=" + username + " group=" + hiddenGroup + " permission=" + permission + " repository="
+                + repositoryName + " doc=" + docId + " suppressed=" + suppressed;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,14 @@
+package com.example.nuxeo.grouphiding.security;
+
+import java.util.List;
+
+/**
+ * Destination of the denial events, called by the audit thread only.
+ */
+public interface DenialSink {
+
+    /**
+     * Write a batch of denial events.
+     */
+    void write(List<DenialEvent> events);
+}
\ No newline at end of file
@@ -0,0 +1,89 @@
+package com.example.nuxeo.grouphiding.security;
+
+import com.example.nuxeo.grouphiding.api.GroupHidingConfiguration;
+import io.dropwizard.metrics5.Counter;
+import io.dropwizard.metrics5.Gauge;
+import io.dropwizard.metrics5.MetricName;
+import io.dropwizard.metrics5.MetricRegistry;
+import io.dropwizard.metrics5.SharedMetricRegistries;
+import io.dropwizard.metrics5.Timer;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Metrics of the group hiding security policy, registered in the Nuxeo metrics registry.
+ * Counters are striped ({@link java.util.concurrent.atomic.LongAdder} based), so updating them
+ * from many request threads does not contend.
+ */
+final class GroupHidingMetrics {
+
+    static final MetricName CHECKS = MetricRegistry.name("nuxeo", "grouphiding", "checks");
+
+    static final MetricName FAST_EXITS = MetricRegistry.name("nuxeo", "grouphiding", "checks", "norule");
+
+    static final MetricName VISIBLE_GRANTS = MetricRegistry.name("nuxeo", "grouphiding", "checks", "visible");
+
+    static final MetricName HIDDEN_DENIES = MetricRegistry.name("nuxeo", "grouphiding", "checks", "denied");
+
+    static final MetricName ERRORS = MetricRegistry.name("nuxeo", "grouphiding", "checks", "errors");
+
+    // Latency of the checks evaluating an ACP, fast exits are only counted
+    static final MetricName LATENCY = MetricRegistry.name("nuxeo", "grouphiding", "checks", "timer");
+
+    static final MetricName DENIALS_DROPPED = MetricRegistry.name("nuxeo", "grouphiding", "denials", "dropped");
+
+    static final MetricName DENIALS_SUPPRESSED = MetricRegistry.name("nuxeo", "grouphiding", "denials", "suppressed");
+
+    static final MetricName RULES = MetricRegistry.name("nuxeo", "grouphiding", "rules");
+
+    static final MetricName USERS_WITH_RULES = MetricRegistry.name("nuxeo", "grouphiding", "rules", "users");
+
+    final Counter checks;
+
+    final Counter fastExits;
+
+    final Counter visibleGrants;
+
+    final Counter hiddenDenies;
+
+    final Counter errors;
+
+    final Timer latency;
+
+    GroupHidingMetrics(MetricRegistry registry, Supplier<GroupHidingConfiguration> configuration,
+                       DenialAuditor auditor) {
+        checks = registry.counter(CHECKS);
+        fastExits = registry.counter(FAST_EXITS);
+        visibleGrants = registry.counter(VISIBLE_GRANTS);
+        hiddenDenies = registry.counter(HIDDEN_DENIES);
+        errors = registry.counter(ERRORS);
+        latency = registry.timer(LATENCY);
+        // Gauges are evaluated on report only, never on the check path
+        registry.gauge(RULES, () -> (Gauge<Integer>) () -> {
+            GroupHidingConfiguration config = configuration.get();
+            return config != null ? config.getRuleCount() : 0;
+        });
+        if (auditor != null) {
+            registry.gauge(DENIALS_DROPPED, () -> (Gauge<Long>) auditor::getDropped);
+            registry.gauge(DENIALS_SUPPRESSED, () -> (Gauge<Long>) auditor::getSuppressed);
+        }
+        registry.gauge(USERS_WITH_RULES, () -> (Gauge<Integer>) () -> {
+            GroupHidingConfiguration config = configuration.get();
+            return config != null ? config.getUsersWithHiddenGroups().size() : 0;
+        });
+    }
+
+    /**
+     * Create the metrics in the shared Nuxeo registry.
+     */
+    static GroupHidingMetrics shared(Supplier<GroupHidingConfiguration> configuration, DenialAuditor auditor) {
+        return new GroupHidingMetrics(SharedMetricRegistries.getOrCreate(MetricsService.class.getName()),
+                configuration, auditor);
+    }
+
+    void recordLatency(long startNanos) {
+        latency.update(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+}
\ No newline at end of file
@@ -1,6 +1,9 @@
 package com.example.nuxeo.grouphiding.security;
 
 import com.example.nuxeo.grouphiding.api.GroupHidingConfiguration;
+import com.example.nuxeo.grouphiding.api.LifecycleListener;
+import com.example.nuxeo.grouphiding.api.MembershipListener;
+import io.dropwizard.metrics5.MetricRegistry;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.nuxeo.ecm.core.api.NuxeoPrincipal;
@@ -11,6 +14,7 @@ import org.nuxeo.ecm.core.model.Document;
 import org.nuxeo.runtime.api.Framework;
 
 import java.security.Principal;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -22,6 +26,177 @@ public class GroupHidingSecurityPolicy implements SecurityPolicy {
 
     private static final Logger log = LogManager.getLogger(GroupHidingSecurityPolicy.class);
 
+    public static final String AUDIT_SINK_PROPERTY = "nuxeo.grouphiding.audit.sink";
+
+    public static final String AUDIT_SAMPLING_PROPERTY = "nuxeo.grouphiding.audit.sampling";
+
+    public static final String AUDIT_INTERVAL_PROPERTY = "nuxeo.grouphiding.audit.interval";
+
+    public static final String AUDIT_BUFFER_PROPERTY = "nuxeo.grouphiding.audit.buffer";
+
+    /**
+     * What to do when a check fails unexpectedly: {@code open} (default) leaves the decision to the
+     * other policies and ACLs, {@code closed} denies access.
+     */
+    public static final String FAILURE_MODE_PROPERTY = "nuxeo.grouphiding.failure.mode";
+
+    public static final String SHADOW_SAMPLING_PROPERTY = "nuxeo.grouphiding.shadow.sampling";
+
+    public static final String SHADOW_BUFFER_PROPERTY = "nuxeo.grouphiding.shadow.buffer";
+
+    private final ResolvedPrincipalsCache principalsCache = new ResolvedPrincipalsCache();
+
+    private final PermissionTable permissionTable;
+
+    // Null when denials are not audited
+    private final DenialAuditor auditor;
+
+    // Null when shadow evaluation is disabled
+    private final ShadowEvaluator shadowEvaluator;
+
+    // Looked up once, so the no-rule fast path never goes through the service registry
+    private volatile GroupHidingConfiguration configuration;
+
+    private final GroupHidingMetrics metrics;
+
+    private final MembershipListener membershipListener = this::membershipChanged;
+
+    // Runs the background threads while the configuration service is started
+    private final LifecycleListener lifecycleListener = new LifecycleListener() {
+
+        @Override
+        public void shadowRulesLoaded() {
+            if (shadowEvaluator != null) {
+                shadowEvaluator.start();
+            }
+        }
+
+        @Override
+        public void shadowRulesCleared() {
+            if (shadowEvaluator != null) {
+                shadowEvaluator.stop();
+            }
+        }
+
+        @Override
+        public void serviceStopped() {
+            stopped();
+        }
+    };
+
+    // Deny access instead of abstaining when a check fails
+    private final boolean failClosed;
+
+    public GroupHidingSecurityPolicy() {
+        failClosed = isFailClosed();
+        permissionTable = new PermissionTable();
+        auditor = createAuditor();
+        shadowEvaluator = createShadowEvaluator();
+        metrics = GroupHidingMetrics.shared(this::getConfiguration, auditor);
+    }
+
+    GroupHidingSecurityPolicy(GroupHidingConfiguration configuration) {
+        this(configuration, false);
+    }
+
+    GroupHidingSecurityPolicy(GroupHidingConfiguration configuration, boolean failClosed) {
+        this.configuration = configuration;
+        this.failClosed = failClosed;
+        configuration.addMembershipListener(membershipListener);
+        // Only the resolved permissions are used, the permission provider is a runtime service
+        permissionTable = new PermissionTable(permission -> null);
+        auditor = null;
+        // Not started, tests drain it explicitly
+        shadowEvaluator = new ShadowEvaluator(this::getConfiguration, permissionTable,
+                ShadowEvaluator.DEFAULT_CAPACITY, 1.0);
+        metrics = new GroupHidingMetrics(new MetricRegistry(), this::getConfiguration, null);
+    }
+
+    /**
+     * Create the denial auditor configured by the {@value #AUDIT_SINK_PROPERTY} framework property:
+     * {@code log} (default), {@code audit} or {@code none}.
+     */
+    private static DenialAuditor createAuditor() {
+        String type = Framework.getProperty(AUDIT_SINK_PROPERTY, "log");
+        DenialSink sink;
+        switch (type) {
+        case "none":
+            return null;
+        case "audit":
+            sink = new AuditDenialSink();
+            break;
+        case "log":
+            sink = new LogDenialSink();
+            break;
+        default:
+            log.warn("Unknown group hiding audit sink '{}', using log", type);
+            sink = new LogDenialSink();
+        }
+        double sampling = getDoubleProperty(AUDIT_SAMPLING_PROPERTY, DenialAuditor.DEFAULT_SAMPLING_RATE);
+        return new DenialAuditor(sink, getIntProperty(AUDIT_BUFFER_PROPERTY, DenialAuditor.DEFAULT_CAPACITY),
+                sampling, getIntProperty(AUDIT_INTERVAL_PROPERTY, (int) DenialAuditor.DEFAULT_INTERVAL_MS));
+    }
+
+    /**
+     * Create the shadow evaluator of candidate rules, sampling the fraction of the checks set by
+     * the {@value #SHADOW_SAMPLING_PROPERTY} framework property, {@code 0} disabling it.
+     */
+    private ShadowEvaluator createShadowEvaluator() {
+        double sampling = getDoubleProperty(SHADOW_SAMPLING_PROPERTY, ShadowEvaluator.DEFAULT_SAMPLING_RATE);
+        if (sampling <= 0) {
+            return null;
+        }
+        return new ShadowEvaluator(this::getConfiguration, permissionTable,
+                getIntProperty(SHADOW_BUFFER_PROPERTY, ShadowEvaluator.DEFAULT_CAPACITY), Math.min(sampling, 1.0));
+    }
+
+    /**
+     * @return true if the {@value #FAILURE_MODE_PROPERTY} framework property is {@code closed}
+     */
+    private static boolean isFailClosed() {
+        String mode = Framework.getProperty(FAILURE_MODE_PROPERTY, "open").trim();
+        switch (mode) {
+        case "closed":
+            return true;
+        case "open":
+            return false;
+        default:
+            log.warn("Unknown group hiding failure mode '{}', using open", mode);
+            return false;
+        }
+    }
+
+    private static double getDoubleProperty(String name, double defaultValue) {
+        String value = Framework.getProperty(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value '{}' for property {}, using {}", value, name, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private static int getIntProperty(String name, int defaultValue) {
+        String value = Framework.getProperty(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value '{}' for property {}, using {}", value, name, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Check a permission. The common cases allocate nothing: principals without rules exit after
+     * a lookup in the rules snapshot, and only checks evaluating an ACP are timed. Evaluating an ACP
+     * with cached principals only allocates the ACL array copied by the ACP, besides the timer.
+     */
     @Override
     public Access checkPermission(Document doc, ACP mergedAcp, Principal principal, 
                                 String permission, String[] resolvedPermissions, String[] additionalPrincipals) {
@@ -31,106 +206,159 @@ public class GroupHidingSecurityPolicy implements SecurityPolicy {
         }
 
         NuxeoPrincipal nuxeoPrincipal = (NuxeoPrincipal) principal;
-        if (nuxeoPrincipal.getName() == null) {
+        String username = nuxeoPrincipal.getName();
+        if (username == null) {
             return Access.UNKNOWN;
         }
 
+        metrics.checks.inc();
+        if (shadowEvaluator != null) {
+            // Evaluated later, off the request thread
+            shadowEvaluator.sample(nuxeoPrincipal, mergedAcp, permission, resolvedPermissions);
+        }
         try {
-            GroupHidingConfiguration config = Framework.getService(GroupHidingConfiguration.class);
-            if (config == null) {
-                log.debug("GroupHidingConfiguration service not available");
-                return Access.UNKNOWN;
-            }
-
-            String username = nuxeoPrincipal.getName();
-            Set<String> hiddenGroups = config.getHiddenGroupsForUser(username);
+            ResolvedPrincipals resolved = resolve(nuxeoPrincipal);
             
-            if (hiddenGroups.isEmpty()) {
+            if (resolved == null || !resolved.hasHiddenGroups()) {
                 // No hidden groups for this user, allow normal processing
+                metrics.fastExits.inc();
                 return Access.UNKNOWN;
             }
+            long start = System.nanoTime();
+            try {
+                return evaluate(doc, mergedAcp, username, permission, resolvedPermissions, resolved);
+            } finally {
+                metrics.recordLatency(start);
+            }
+        } catch (RuntimeException e) {
+            metrics.errors.inc();
+            log.error("Error in GroupHidingSecurityPolicy, {} access", failClosed ? "denying" : "allowing", e);
+            return failClosed ? Access.DENY : Access.UNKNOWN;
+        }
+    }
 
-            // Check if user has the permission through visible means
-            boolean hasAccessThroughVisibleMeans = hasPermissionThroughVisibleMeans(
-                mergedAcp, nuxeoPrincipal, permission, hiddenGroups);
-            
-            if (hasAccessThroughVisibleMeans) {
-                // User has access through visible means, allow it
+    private Access evaluate(Document doc, ACP mergedAcp, String username, String permission,
+                            String[] resolvedPermissions, ResolvedPrincipals resolved) {
+        PermissionTable.PermissionSet permissions = permissionTable.expand(permission, resolvedPermissions);
+        AcpEvaluator.Evaluation evaluation = AcpEvaluator.evaluate(mergedAcp, resolved, permissions);
+        switch (evaluation.getDecision()) {
+        case VISIBLE_GRANT:
+            // User has access through visible means, allow it
+            metrics.visibleGrants.inc();
+            if (log.isDebugEnabled()) {
                 log.debug("User '{}' has access to permission '{}' through visible means", username, permission);
-                return Access.UNKNOWN;
             }
-
-            // Check if user would have access only through hidden groups
-            boolean hasAccessThroughHiddenGroups = hasPermissionThroughHiddenGroups(
-                mergedAcp, nuxeoPrincipal, permission, hiddenGroups);
-            
-            if (hasAccessThroughHiddenGroups) {
-                // User would have access only through hidden groups, deny it
-                log.info("Denying access for user '{}' to permission '{}' - access would be via hidden groups", 
-                        username, permission);
-                return Access.DENY;
+            return Access.UNKNOWN;
+        case HIDDEN_DENY:
+            // User would have access only through hidden groups, deny it
+            metrics.hiddenDenies.inc();
+            if (log.isDebugEnabled()) {
+                log.debug("Denying access for user '{}' to permission '{}' - access would be via hidden group '{}'",
+                        username, permission, evaluation.getHiddenGroup());
+            }
+            if (auditor != null) {
+                auditor.denied(username, evaluation.getHiddenGroup(), permission,
+                        doc != null ? doc.getRepositoryName() : null, doc != null ? doc.getUUID() : null);
             }
+            return Access.DENY;
+        default:
+            return Access.UNKNOWN;
+        }
+    }
 
-        } catch (Exception e) {
-            log.error("Error in GroupHidingSecurityPolicy", e);
+    /**
+     * Resolve the visible principals and hidden groups of a principal.
+     *
+     * @return the resolved principals, or null if the user has no rules or the configuration
+     *         service is not available
+     */
+    ResolvedPrincipals resolve(NuxeoPrincipal principal) {
+        GroupHidingConfiguration config = getConfiguration();
+        if (config == null) {
+            if (log.isDebugEnabled()) {
+                log.debug("GroupHidingConfiguration service not available");
+            }
+            return null;
+        }
+        List<String> groups = principal.getAllGroups();
+        if (groups == null || groups.isEmpty()) {
+            groups = principal.getGroups();
+        }
+        if (!config.hasHidingRules(principal.getName(), groups, principal.getTenantId())) {
+            // Fast path for the vast majority of users, which have no rules
+            return null;
         }
+        return principalsCache.resolve(principal, config);
+    }
 
-        return Access.UNKNOWN;
+    ShadowEvaluator getShadowEvaluator() {
+        return shadowEvaluator;
     }
 
-    private boolean hasPermissionThroughVisibleMeans(ACP mergedAcp, NuxeoPrincipal principal, 
-                                                   String permission, Set<String> hiddenGroups) {
-        if (mergedAcp == null) {
-            return false;
-        }
+    GroupHidingMetrics getMetrics() {
+        return metrics;
+    }
 
-        // Create a set of visible principals (user + visible groups)
-        Set<String> visiblePrincipals = getVisiblePrincipals(principal, hiddenGroups);
-        
-        // Check if any of the visible principals have the required permission
-        for (String visiblePrincipal : visiblePrincipals) {
-            Access access = mergedAcp.getAccess(visiblePrincipal, permission);
-            if (Access.GRANT.equals(access)) {
-                return true;
+    private GroupHidingConfiguration getConfiguration() {
+        GroupHidingConfiguration config = configuration;
+        if (config == null) {
+            synchronized (this) {
+                config = configuration;
+                if (config == null) {
+                    config = Framework.getService(GroupHidingConfiguration.class);
+                    if (config != null) {
+                        // Registered once, when the service is first available
+                        config.addMembershipListener(membershipListener);
+                        config.addLifecycleListener(lifecycleListener);
+                        if (auditor != null) {
+                            auditor.start();
+                        }
+                        if (shadowEvaluator != null && config.getShadowStatistics() != null) {
+                            shadowEvaluator.start();
+                        }
+                    }
+                    configuration = config;
+                }
             }
         }
-        
-        return false;
+        return config;
     }
 
-    private boolean hasPermissionThroughHiddenGroups(ACP mergedAcp, NuxeoPrincipal principal,
-                                                   String permission, Set<String> hiddenGroups) {
-        if (mergedAcp == null || hiddenGroups.isEmpty()) {
-            return false;
+    /**
+     * Stop the background threads and forget the stopped service, so that they are started again
+     * with the next service.
+     */
+    private synchronized void stopped() {
+        GroupHidingConfiguration config = configuration;
+        if (config != null) {
+            config.removeMembershipListener(membershipListener);
         }
-
-        // Check if any hidden group has the required permission
-        for (String hiddenGroup : hiddenGroups) {
-            if (principal.isMemberOf(hiddenGroup)) {
-                Access access = mergedAcp.getAccess(hiddenGroup, permission);
-                if (Access.GRANT.equals(access)) {
-                    return true;
-                }
-            }
+        configuration = null;
+        if (auditor != null) {
+            auditor.stop();
+        }
+        if (shadowEvaluator != null) {
+            shadowEvaluator.stop();
         }
+        principalsCache.invalidateAll();
+    }
 
-        return false;
+    /**
+     * Drop the resolved principals of the users whose groups changed.
+     */
+    void membershipChanged(Set<String> usernames, Set<String> groupNames) {
+        principalsCache.membershipChanged(usernames, groupNames);
     }
 
-    private Set<String> getVisiblePrincipals(NuxeoPrincipal principal, Set<String> hiddenGroups) {
-        Set<String> visiblePrincipals = new java.util.HashSet<>();
-        
-        // Add the user principal
-        visiblePrincipals.add(principal.getName());
-        
-        // Add all groups except hidden ones
-        for (String group : principal.getGroups()) {
-            if (!hiddenGroups.contains(group)) {
-                visiblePrincipals.add(group);
-            }
-        }
-        
-        return visiblePrincipals;
+    /**
+     * Drop all the state derived from the groups of users and the rules.
+     */
+    public void invalidateCaches() {
+        principalsCache.invalidateAll();
+    }
+
+    ResolvedPrincipalsCache getPrincipalsCache() {
+        return principalsCache;
     }
 
     @Override
@@ -140,8 +368,21 @@ public class GroupHidingSecurityPolicy implements SecurityPolicy {
     }
 
     @Override
-    public boolean isExpressibleInQuery() {
-        // This policy affects query results
-        return true;
+    public boolean isExpressibleInQuery(String repositoryName) {
+        // Without rules checkPermission never restricts, so the query needs no filtering, unless a
+        // candidate rule set samples the checks
+        GroupHidingConfiguration config = getConfiguration();
+        if (config != null && !config.hasRules() && config.getShadowStatistics() == null) {
+            return true;
+        }
+        // The first matching ACE decides, and DENY ACEs of visible principals may come after grants
+        // to hidden groups: no NXQL predicate agrees with checkPermission, so query results are
+        // post-filtered with it instead
+        return false;
+    }
+
+    @Override
+    public QueryTransformer getQueryTransformer(String repositoryName) {
+        return QueryTransformer.IDENTITY;
     }
 }
\ No newline at end of file
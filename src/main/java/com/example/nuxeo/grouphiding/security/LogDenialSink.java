@@ -0,0 +1,24 @@
+package com.example.nuxeo.grouphiding.security;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.List;
+
+/**
+ * Writes denial events to a dedicated logger, which can be routed to a rolling file appender
+ * in the log4j configuration.
+ */
+public class LogDenialSink implements DenialSink {
+
+    public static final String LOGGER_NAME = "com.example.nuxeo.grouphiding.audit";
+
+    private static final Logger log = LogManager.getLogger(LOGGER_NAME);
+
+    @Override
+    public void write(List<DenialEvent> events) {
+        for (DenialEvent event : events) {
+            log.info("Denied access via hidden group: {}", event);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,174 @@
+package com.example.nuxeo.grouphiding.security;
+
+import org.nuxeo.ecm.core.api.security.PermissionProvider;
+import org.nuxeo.runtime.api.Framework;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Expansion of checked permissions into the permissions granting them, e.g. {@code Read} into
+ * {@code Read}, {@code ReadWrite} and {@code Everything}, computed once per permission from the
+ * {@link PermissionProvider}. Permissions are numbered so that an expansion is a bitmask and
+ * matching an ACE permission is a lookup and a bit test.
+ */
+final class PermissionTable {
+
+    static final int MAX_BITS = Long.SIZE;
+
+    // Permission groups containing a permission, null if unknown
+    private final Function<String, String[]> groupsProvider;
+
+    private final Map<String, Integer> bits = new ConcurrentHashMap<>();
+
+    private final Map<String, PermissionSet> expansions = new ConcurrentHashMap<>();
+
+    PermissionTable() {
+        this(PermissionTable::getPermissionGroups);
+    }
+
+    PermissionTable(Function<String, String[]> groupsProvider) {
+        this.groupsProvider = groupsProvider;
+    }
+
+    private static String[] getPermissionGroups(String permission) {
+        PermissionProvider provider = Framework.getService(PermissionProvider.class);
+        return provider != null ? provider.getPermissionGroups(permission) : null;
+    }
+
+    /**
+     * Get the permissions granting a checked permission.
+     *
+     * @param permission the checked permission
+     * @param resolvedPermissions the permissions resolved by Nuxeo for the check, may be null
+     * @return the expansion of the permission, including the resolved permissions
+     */
+    PermissionSet expand(String permission, String[] resolvedPermissions) {
+        PermissionSet expansion = expansions.get(permission);
+        if (expansion == null) {
+            // Only on the first check of a permission, the bound method reference allocates
+            expansion = expansions.computeIfAbsent(permission, this::computeExpansion);
+        }
+        if (resolvedPermissions == null || expansion.containsAll(resolvedPermissions)) {
+            return expansion;
+        }
+        // Nuxeo resolved more than the provider knows of, not cached as it depends on the caller
+        List<String> permissions = new ArrayList<>(Arrays.asList(expansion.permissions));
+        for (String resolved : resolvedPermissions) {
+            if (!expansion.contains(resolved)) {
+                permissions.add(resolved);
+            }
+        }
+        return newSet(permissions);
+    }
+
+    private PermissionSet computeExpansion(String permission) {
+        List<String> permissions = new ArrayList<>();
+        permissions.add(permission);
+        String[] groups = groupsProvider.apply(permission);
+        if (groups != null) {
+            for (String group : groups) {
+                if (!permissions.contains(group)) {
+                    permissions.add(group);
+                }
+            }
+        }
+        return newSet(permissions);
+    }
+
+    private PermissionSet newSet(List<String> permissions) {
+        long mask = 0;
+        List<String> overflow = new ArrayList<>();
+        for (String permission : permissions) {
+            int bit = bitOf(permission, true);
+            if (bit >= 0) {
+                mask |= 1L << bit;
+            } else {
+                overflow.add(permission);
+            }
+        }
+        return new PermissionSet(this, permissions.toArray(new String[0]), mask, overflow.toArray(new String[0]));
+    }
+
+    /**
+     * @return the bit of a permission, -1 if it has none
+     */
+    int bitOf(String permission, boolean assign) {
+        Integer bit = bits.get(permission);
+        if (bit != null) {
+            return bit;
+        }
+        if (!assign) {
+            return -1;
+        }
+        synchronized (bits) {
+            bit = bits.get(permission);
+            if (bit == null) {
+                if (bits.size() >= MAX_BITS) {
+                    // Unusually many permissions, the others are matched by name
+                    return -1;
+                }
+                bit = bits.size();
+                bits.put(permission, bit);
+            }
+            return bit;
+        }
+    }
+
+    /**
+     * Immutable set of permissions, as a bitmask plus the permissions without a bit.
+     */
+    static final class PermissionSet {
+
+        private final PermissionTable table;
+
+        private final String[] permissions;
+
+        private final long mask;
+
+        private final String[] overflow;
+
+        private PermissionSet(PermissionTable table, String[] permissions, long mask, String[] overflow) {
+            this.table = table;
+            this.permissions = permissions;
+            this.mask = mask;
+            this.overflow = overflow;
+        }
+
+        /**
+         * Check if a permission, typically of an ACE, is in the set. Does not allocate.
+         */
+        boolean contains(String permission) {
+            if (permission == null) {
+                return false;
+            }
+            int bit = table.bitOf(permission, false);
+            if (bit >= 0) {
+                return (mask & (1L << bit)) != 0;
+            }
+            for (String candidate : overflow) {
+                if (candidate.equals(permission)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean containsAll(String[] candidates) {
+            for (String candidate : candidates) {
+                if (!contains(candidate)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        String[] getPermissions() {
+            return permissions.clone();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,298 @@
+package com.example.nuxeo.grouphiding.security;
+
+import com.example.nuxeo.grouphiding.api.GroupHidingConfiguration;
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+import org.nuxeo.ecm.core.api.security.SecurityConstants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Immutable split of a user's principals into visible principals and hidden groups.
+ * Instances are computed once per user, group membership and rules version, then
+ * shared by all permission checks so the hot path does not rebuild any set.
+ */
+public final class ResolvedPrincipals {
+
+    /** The principal is neither the user nor one of its groups. */
+    public static final int NOT_MEMBER = 0;
+
+    /** The principal is the user, one of its visible groups, or everyone. */
+    public static final int VISIBLE = 1;
+
+    /** The principal is a hidden group of the user. */
+    public static final int HIDDEN = 2;
+
+    private static final String[] NONE = new String[0];
+
+    private static final byte[] NO_KINDS = new byte[0];
+
+    private final String username;
+
+    private final List<String> groups;
+
+    private final int groupsHash;
+
+    // The inherited groups as listed by the principal, they change when a parent group gains a member
+    private final List<String> inheritedGroups;
+
+    private final String tenantId;
+
+    private final long rulesVersion;
+
+    private final String[] visiblePrincipals;
+
+    private final String[] hiddenGroups;
+
+    // Open addressing table of the kind of each principal of the user, so that scanning ACEs
+    // looks up kinds without hashing into a map or unboxing
+    private final String[] kindKeys;
+
+    private final byte[] kinds;
+
+    private ResolvedPrincipals(String username, List<String> groups, List<String> inheritedGroups, String tenantId,
+                               long rulesVersion, String[] visiblePrincipals, String[] hiddenGroups) {
+        this.username = username;
+        this.groups = groups;
+        this.groupsHash = groups.hashCode();
+        this.inheritedGroups = inheritedGroups;
+        this.tenantId = tenantId;
+        this.rulesVersion = rulesVersion;
+        this.visiblePrincipals = visiblePrincipals;
+        this.hiddenGroups = hiddenGroups;
+        if (hiddenGroups.length == 0) {
+            // Never evaluated by the policy
+            this.kindKeys = NONE;
+            this.kinds = NO_KINDS;
+        } else {
+            int capacity = Integer.highestOneBit(2 * (visiblePrincipals.length + hiddenGroups.length + 1) - 1) << 1;
+            this.kindKeys = new String[capacity];
+            this.kinds = new byte[capacity];
+            putKind(SecurityConstants.EVERYONE, VISIBLE);
+            for (String visible : visiblePrincipals) {
+                putKind(visible, VISIBLE);
+            }
+            for (String hidden : hiddenGroups) {
+                putKind(hidden, HIDDEN);
+            }
+        }
+    }
+
+    private void putKind(String principal, int kind) {
+        int mask = kindKeys.length - 1;
+        int i = spread(principal.hashCode()) & mask;
+        while (kindKeys[i] != null && !kindKeys[i].equals(principal)) {
+            i = (i + 1) & mask;
+        }
+        kindKeys[i] = principal;
+        kinds[i] = (byte) kind;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Get all the groups of a principal, including inherited ones.
+     *
+     * @param principal the principal
+     * @param groups the direct groups of the principal
+     * @return the direct and inherited groups, without duplicates
+     */
+    public static List<String> allGroupsOf(NuxeoPrincipal principal, List<String> groups) {
+        Set<String> all = new LinkedHashSet<>();
+        if (groups != null) {
+            all.addAll(groups);
+        }
+        List<String> inherited = principal.getAllGroups();
+        if (inherited != null) {
+            all.addAll(inherited);
+        }
+        return new ArrayList<>(all);
+    }
+
+    /**
+     * Resolve a principal against the rules of a configuration.
+     *
+     * @param principal the principal to resolve
+     * @param groups the direct groups of the principal
+     * @param config the configuration providing the hiding rules
+     * @param rulesVersion the rules version, read before the hidden groups
+     * @return the resolved principals
+     */
+    public static ResolvedPrincipals resolve(NuxeoPrincipal principal, List<String> groups,
+                                             GroupHidingConfiguration config, long rulesVersion) {
+        List<String> allGroups = allGroupsOf(principal, groups);
+        return compute(principal, groups, allGroups,
+                config.getHiddenGroups(principal.getName(), allGroups, principal.getTenantId()), rulesVersion);
+    }
+
+    /**
+     * Compute the visible principals and hidden groups of a principal, in a single pass over its
+     * groups. The hidden groups from the configuration are a set of interned ids, so each group
+     * is tested with a dictionary lookup and a binary search.
+     *
+     * @param principal the principal to resolve
+     * @param groups the direct groups of the principal, as used for the cache fingerprint
+     * @param allGroups the direct and inherited groups of the principal, without duplicates
+     * @param hiddenGroupNames the groups hidden for this principal by the configuration
+     * @param rulesVersion the rules version the hidden groups were read at
+     * @return the resolved principals
+     */
+    public static ResolvedPrincipals compute(NuxeoPrincipal principal, List<String> groups, List<String> allGroups,
+                                             Set<String> hiddenGroupNames, long rulesVersion) {
+        List<String> groupsCopy = copyOf(groups);
+        List<String> inheritedCopy = copyOf(principal.getAllGroups());
+        String tenantId = principal.getTenantId();
+        if (hiddenGroupNames.isEmpty()) {
+            return new ResolvedPrincipals(principal.getName(), groupsCopy, inheritedCopy, tenantId, rulesVersion, NONE,
+                    NONE);
+        }
+
+        // The user principal, then all groups except hidden ones
+        String[] visible = new String[allGroups.size() + 1];
+        int visibleCount = 0;
+        visible[visibleCount++] = principal.getName();
+        // Only keep the hidden groups the user actually belongs to
+        String[] hidden = new String[hiddenGroupNames.size()];
+        int hiddenCount = 0;
+        for (String group : allGroups) {
+            if (!hiddenGroupNames.contains(group)) {
+                visible[visibleCount++] = group;
+            } else if (hiddenCount < hidden.length) {
+                hidden[hiddenCount++] = group;
+            }
+        }
+        if (hiddenCount < hidden.length) {
+            // Memberships the principal knows of without listing them in its groups
+            for (String hiddenGroup : hiddenGroupNames) {
+                if (!contains(hidden, hiddenCount, hiddenGroup) && principal.isMemberOf(hiddenGroup)) {
+                    hidden[hiddenCount++] = hiddenGroup;
+                }
+            }
+        }
+
+        return new ResolvedPrincipals(principal.getName(), groupsCopy, inheritedCopy, tenantId, rulesVersion,
+                Arrays.copyOf(visible, visibleCount), Arrays.copyOf(hidden, hiddenCount));
+    }
+
+    private static List<String> copyOf(List<String> groups) {
+        return groups == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(groups));
+    }
+
+    private static boolean contains(String[] array, int length, String value) {
+        for (int i = 0; i < length; i++) {
+            if (array[i].equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether this entry is still valid for the given direct and inherited groups, tenant and
+     * rules version. Does not allocate.
+     */
+    public boolean matches(List<String> currentGroups, List<String> currentInheritedGroups, String currentTenantId,
+                           long currentRulesVersion) {
+        if (rulesVersion != currentRulesVersion || !Objects.equals(tenantId, currentTenantId)) {
+            return false;
+        }
+        if (currentGroups == null ? !groups.isEmpty()
+                : groupsHash != currentGroups.hashCode() || !sameGroups(groups, currentGroups)) {
+            return false;
+        }
+        return currentInheritedGroups == null ? inheritedGroups.isEmpty()
+                : sameGroups(inheritedGroups, currentInheritedGroups);
+    }
+
+    /**
+     * Compare with an indexed loop, as List.equals() iterates over the groups of the principal.
+     */
+    private static boolean sameGroups(List<String> cached, List<String> current) {
+        if (!(current instanceof RandomAccess)) {
+            return cached.equals(current);
+        }
+        int size = cached.size();
+        if (current.size() != size) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (!cached.get(i).equals(current.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the kind of a principal for this user. Does not allocate.
+     *
+     * @return {@link #VISIBLE}, {@link #HIDDEN} or {@link #NOT_MEMBER}
+     */
+    public int getPrincipalKind(String principal) {
+        if (principal == null || kindKeys.length == 0) {
+            return NOT_MEMBER;
+        }
+        int mask = kindKeys.length - 1;
+        int i = spread(principal.hashCode()) & mask;
+        String key;
+        while ((key = kindKeys[i]) != null) {
+            if (key.equals(principal)) {
+                return kinds[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return NOT_MEMBER;
+    }
+
+    /**
+     * @return true if one of the groups is a visible or hidden group of the user, only known
+     *         for users with hidden groups
+     */
+    public boolean hasAnyGroup(Collection<String> groupNames) {
+        for (String group : groupNames) {
+            if (!SecurityConstants.EVERYONE.equals(group) && getPrincipalKind(group) != NOT_MEMBER) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public long getRulesVersion() {
+        return rulesVersion;
+    }
+
+    /**
+     * @return true if the user is a member of at least one hidden group, in which case
+     *         the policy must evaluate the ACP
+     */
+    public boolean hasHiddenGroups() {
+        return hiddenGroups.length > 0;
+    }
+
+    /**
+     * @return the user name and the non hidden groups; shared array, must not be modified
+     */
+    public String[] getVisiblePrincipals() {
+        return visiblePrincipals;
+    }
+
+    /**
+     * @return the hidden groups the user is a member of; shared array, must not be modified
+     */
+    public String[] getHiddenGroups() {
+        return hiddenGroups;
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.nuxeo.grouphiding.security;
+
+import com.example.nuxeo.grouphiding.api.GroupHidingConfiguration;
+import com.example.nuxeo.grouphiding.api.MembershipListener;
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bounded LRU cache of {@link ResolvedPrincipals} keyed by username.
+ * An entry is reused as long as the user's direct and inherited groups, tenant and the rules version are unchanged,
+ * so any add, remove or clear of a hiding rule invalidates it. Registered as a
+ * {@link MembershipListener}, it drops the users whose groups changed in the directory.
+ * <p>
+ * Users are spread over segments, each an access ordered map under its own lock, so a full cache
+ * evicts its least recently used users one at a time and concurrent checks rarely contend.
+ */
+public class ResolvedPrincipalsCache implements MembershipListener {
+
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    // Power of two
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments;
+
+    public ResolvedPrincipalsCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public ResolvedPrincipalsCache(int maxSize) {
+        // Small caches keep an exact LRU order in a single segment
+        int count = maxSize >= SEGMENTS * SEGMENTS ? SEGMENTS : 1;
+        int capacity = Math.max(1, (maxSize + count - 1) / count);
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(capacity);
+        }
+    }
+
+    private Segment segmentOf(String username) {
+        int h = username.hashCode();
+        return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+    }
+
+    /**
+     * Get the resolved principals for a user, computing them if needed.
+     *
+     * @param principal the principal
+     * @param config the configuration providing the hiding rules
+     * @return the resolved principals, never null
+     */
+    public ResolvedPrincipals resolve(NuxeoPrincipal principal, GroupHidingConfiguration config) {
+        String username = principal.getName();
+        List<String> groups = principal.getGroups();
+        // Read the version first so a concurrent change makes the new entry stale, never wrong
+        long version = config.getRulesVersion();
+
+        String tenantId = principal.getTenantId();
+
+        Segment segment = segmentOf(username);
+        ResolvedPrincipals cached;
+        synchronized (segment) {
+            cached = segment.get(username);
+        }
+        if (cached != null && cached.matches(groups, principal.getAllGroups(), tenantId, version)) {
+            return cached;
+        }
+
+        // Computed outside of the lock, it may look up the directory
+        ResolvedPrincipals resolved = ResolvedPrincipals.resolve(principal, groups, config, version);
+        synchronized (segment) {
+            segment.put(username, resolved);
+        }
+        return resolved;
+    }
+
+    /**
+     * Drop the cached entry of a user.
+     */
+    public void invalidate(String username) {
+        if (username != null) {
+            Segment segment = segmentOf(username);
+            synchronized (segment) {
+                segment.remove(username);
+            }
+        }
+    }
+
+    /**
+     * Drop the cached entries of the users with hidden groups that are members of one of the groups.
+     * Users without hidden groups cannot lose one by leaving a group.
+     */
+    public void invalidateGroups(Collection<String> groupNames) {
+        if (groupNames != null && !groupNames.isEmpty()) {
+            for (Segment segment : segments) {
+                synchronized (segment) {
+                    segment.values().removeIf(entry -> entry.hasAnyGroup(groupNames));
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop the entries of the users whose groups changed.
+     */
+    @Override
+    public void membershipChanged(Set<String> usernames, Set<String> groupNames) {
+        if (usernames == null) {
+            invalidateAll();
+        } else {
+            usernames.forEach(this::invalidate);
+        }
+        invalidateGroups(groupNames);
+    }
+
+    /**
+     * Drop all cached entries.
+     */
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Access ordered map dropping its least recently used entry when full. Guarded by itself.
+     */
+    private static final class Segment extends LinkedHashMap<String, ResolvedPrincipals> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ResolvedPrincipals> eldest) {
+            return size() > capacity;
+        }
+    }
+}
\ No newline at end of file
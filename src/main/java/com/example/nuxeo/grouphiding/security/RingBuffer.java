@@ -0,0 +1,67 @@
+package com.example.nuxeo.grouphiding.security;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free bounded ring buffer with many producers and a single consumer.
+ * Producers claim a slot with a CAS and never block: when the buffer is full, the element is
+ * refused so that request threads are never slowed down by the background work.
+ */
+final class RingBuffer<E> {
+
+    private final AtomicReferenceArray<E> slots;
+
+    private final int mask;
+
+    // Next sequence to claim by producers
+    private final AtomicLong tail = new AtomicLong();
+
+    // Next sequence to read, written by the consumer only
+    private volatile long head;
+
+    /**
+     * @param capacity the capacity, rounded up to a power of two
+     */
+    RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        slots = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    /**
+     * @return false if the buffer is full
+     */
+    boolean offer(E element) {
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head >= slots.length()) {
+                return false;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+        slots.lazySet((int) (sequence & mask), element);
+        return true;
+    }
+
+    /**
+     * Take the next element. Must only be called by the consumer thread.
+     *
+     * @return the next element, or null if none is published yet
+     */
+    E poll() {
+        long sequence = head;
+        int index = (int) (sequence & mask);
+        E element = slots.get(index);
+        if (element == null) {
+            return null;
+        }
+        slots.lazySet(index, null);
+        head = sequence + 1;
+        return element;
+    }
+
+    int capacity() {
+        return slots.length();
+    }
+}
\ No newline at end of file
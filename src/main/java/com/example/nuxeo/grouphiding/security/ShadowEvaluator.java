@@ -0,0 +1,201 @@
+package com.example.nuxeo.grouphiding.security;
+
+import com.example.nuxeo.grouphiding.api.GroupHidingConfiguration;
+import com.example.nuxeo.grouphiding.api.ShadowStatistics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+import org.nuxeo.ecm.core.api.security.ACP;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Shadow evaluation of the candidate rule set of the configuration. Request threads only sample
+ * checks and push them to a lock-free ring buffer; a background thread evaluates each sampled
+ * check with both the live and the candidate rules and records the differences in the
+ * {@link ShadowStatistics} of the candidate. The cost on request threads is bounded by the
+ * sampling rate, and checks are dropped and counted when the buffer is full.
+ */
+class ShadowEvaluator {
+
+    private static final Logger log = LogManager.getLogger(ShadowEvaluator.class);
+
+    static final int DEFAULT_CAPACITY = 1024;
+
+    static final double DEFAULT_SAMPLING_RATE = 0.01;
+
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Supplier<GroupHidingConfiguration> configuration;
+
+    private final PermissionTable permissionTable;
+
+    private final RingBuffer<SampledCheck> buffer;
+
+    private final double samplingRate;
+
+    private volatile Thread evaluator;
+
+    /**
+     * A check sampled for shadow evaluation.
+     */
+    private static final class SampledCheck {
+
+        private final ShadowStatistics statistics;
+
+        private final NuxeoPrincipal principal;
+
+        private final ACP acp;
+
+        private final String permission;
+
+        private final String[] resolvedPermissions;
+
+        SampledCheck(ShadowStatistics statistics, NuxeoPrincipal principal, ACP acp, String permission,
+                     String[] resolvedPermissions) {
+            this.statistics = statistics;
+            this.principal = principal;
+            this.acp = acp;
+            this.permission = permission;
+            this.resolvedPermissions = resolvedPermissions;
+        }
+    }
+
+    /**
+     * @param configuration supplies the configuration with the live and candidate rules
+     * @param permissionTable expands the checked permissions, shared with the policy
+     * @param capacity the capacity of the buffer
+     * @param samplingRate the fraction of the checks evaluated with the candidate, in (0, 1]
+     */
+    ShadowEvaluator(Supplier<GroupHidingConfiguration> configuration, PermissionTable permissionTable,
+                    int capacity, double samplingRate) {
+        this.configuration = configuration;
+        this.permissionTable = permissionTable;
+        this.buffer = new RingBuffer<>(capacity);
+        this.samplingRate = samplingRate;
+    }
+
+    /**
+     * Sample a check for shadow evaluation. Never blocks, and does not allocate when no candidate
+     * is loaded or the check is not sampled.
+     */
+    void sample(NuxeoPrincipal principal, ACP acp, String permission, String[] resolvedPermissions) {
+        GroupHidingConfiguration config = configuration.get();
+        ShadowStatistics statistics = config != null ? config.getShadowStatistics() : null;
+        if (statistics == null) {
+            return;
+        }
+        if (samplingRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= samplingRate) {
+            return;
+        }
+        statistics.recordSampled();
+        if (!buffer.offer(new SampledCheck(statistics, principal, acp, permission, resolvedPermissions))) {
+            statistics.recordDropped();
+        }
+    }
+
+    /**
+     * Start the background thread evaluating the sampled checks.
+     */
+    synchronized void start() {
+        if (evaluator != null) {
+            return;
+        }
+        Thread thread = new Thread(this::run, "GroupHiding-ShadowEvaluation");
+        thread.setDaemon(true);
+        evaluator = thread;
+        thread.start();
+    }
+
+    /**
+     * Stop the background thread, after evaluating the pending checks.
+     */
+    void stop() {
+        Thread thread;
+        synchronized (this) {
+            thread = evaluator;
+            evaluator = null;
+        }
+        if (thread == null) {
+            return;
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        Thread self = Thread.currentThread();
+        while (evaluator == self) {
+            if (drain() == 0) {
+                LockSupport.parkNanos(this, IDLE_NANOS);
+            }
+        }
+        drain();
+    }
+
+    /**
+     * Evaluate the pending checks. Must only be called by one thread at a time.
+     *
+     * @return the number of checks evaluated
+     */
+    int drain() {
+        int total = 0;
+        SampledCheck check;
+        while ((check = buffer.poll()) != null) {
+            try {
+                evaluate(check);
+            } catch (RuntimeException e) {
+                log.warn("Failed to evaluate a check with the candidate group hiding rules", e);
+            }
+            total++;
+        }
+        return total;
+    }
+
+    private void evaluate(SampledCheck check) {
+        GroupHidingConfiguration config = configuration.get();
+        if (config == null || config.getShadowStatistics() != check.statistics) {
+            // The candidate was cleared or replaced since the check was sampled
+            return;
+        }
+        NuxeoPrincipal principal = check.principal;
+        List<String> groups = principal.getGroups();
+        List<String> allGroups = ResolvedPrincipals.allGroupsOf(principal, groups);
+        String username = principal.getName();
+        PermissionTable.PermissionSet permissions = permissionTable.expand(check.permission,
+                check.resolvedPermissions);
+
+        String liveHiddenGroup = hiddenGroupDenying(check.acp, ResolvedPrincipals.compute(principal, groups,
+                allGroups, config.getHiddenGroups(username, allGroups, principal.getTenantId()), 0), permissions);
+        String shadowHiddenGroup = hiddenGroupDenying(check.acp, ResolvedPrincipals.compute(principal, groups,
+                allGroups, config.getShadowHiddenGroups(username, allGroups, principal.getTenantId()), 0),
+                permissions);
+        if (liveHiddenGroup == null && shadowHiddenGroup != null) {
+            check.statistics.recordWouldDeny(username, shadowHiddenGroup);
+        } else if (liveHiddenGroup != null && shadowHiddenGroup == null) {
+            check.statistics.recordWouldAllow(username, liveHiddenGroup);
+        } else {
+            check.statistics.recordUnchanged();
+        }
+    }
+
+    /**
+     * @return the hidden group granting access if the policy denies it, null if it does not
+     */
+    private static String hiddenGroupDenying(ACP acp, ResolvedPrincipals resolved,
+                                             PermissionTable.PermissionSet permissions) {
+        if (!resolved.hasHiddenGroups()) {
+            return null;
+        }
+        AcpEvaluator.Evaluation evaluation = AcpEvaluator.evaluate(acp, resolved, permissions);
+        return evaluation.getDecision() == AcpEvaluator.Decision.HIDDEN_DENY ? evaluation.getHiddenGroup() : null;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,69 @@
+package com.example.nuxeo.grouphiding.impl;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ClusterRuleInvalidatorTest {
+
+    @Test
+    public void testMembershipMessageRoundTrip() throws IOException {
+        Set<String> users = new HashSet<>(Arrays.asList("alice", "bob \"the\" builder"));
+        Set<String> groups = Collections.singleton("group,1");
+
+        ClusterRuleInvalidator.MembershipMessage message = ClusterRuleInvalidator.decodeMembership(
+                ClusterRuleInvalidator.encodeMembership("node1", users, groups));
+
+        assertEquals("node1", message.node);
+        assertEquals(users, message.users);
+        assertEquals(groups, message.groups);
+    }
+
+    @Test
+    public void testAnyUserIsEncodedAsNull() throws IOException {
+        ClusterRuleInvalidator.MembershipMessage message = ClusterRuleInvalidator.decodeMembership(
+                ClusterRuleInvalidator.encodeMembership("node1", null, Collections.singleton("group1")));
+
+        assertNull(message.users);
+        assertEquals(Collections.singleton("group1"), message.groups);
+    }
+
+    @Test
+    public void testRemoteMembershipChangeDoesNotReload() throws Exception {
+        Set<String> received = Collections.synchronizedSet(new HashSet<>());
+        AtomicInteger reloads = new AtomicInteger();
+        ClusterRuleInvalidator invalidator = new ClusterRuleInvalidator(reloads::incrementAndGet,
+                (users, groups) -> received.addAll(groups), 0);
+        invalidator.executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            invalidator.onMessage(ClusterRuleInvalidator.TOPIC,
+                    ClusterRuleInvalidator.encodeMembership("othernode", Collections.emptySet(),
+                            Collections.singleton("group1")));
+            // Our own announces are ignored
+            invalidator.onMessage(ClusterRuleInvalidator.TOPIC, ClusterRuleInvalidator.encodeMembership(
+                    invalidator.nodeId, Collections.emptySet(), Collections.singleton("group2")));
+            invalidator.executor.submit(() -> { }).get();
+        } finally {
+            invalidator.executor.shutdownNow();
+        }
+
+        assertEquals(Collections.singleton("group1"), received);
+        assertEquals(0, reloads.get());
+    }
+
+    @Test
+    public void testRulesMessageWithoutStoreIsIgnored() {
+        ClusterRuleInvalidator invalidator = new ClusterRuleInvalidator(null, (users, groups) -> { }, 0);
+        // No executor: a reload would fail to be scheduled
+        invalidator.onMessage(ClusterRuleInvalidator.TOPIC, "othernode".getBytes(StandardCharsets.UTF_8));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,135 @@
+package com.example.nuxeo.grouphiding.impl;
+
+import com.example.nuxeo.grouphiding.api.RuleChange;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class FileRuleStoreTest {
+
+    private Path dir;
+
+    private FileRuleStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("grouphiding");
+        store = new FileRuleStore(dir.resolve(FileRuleStore.DEFAULT_FILE_NAME));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testSaveAndLoad() {
+        store.save("testuser", new HashSet<>(Arrays.asList("group1", "group2")));
+        store.save("otheruser", new HashSet<>(Arrays.asList("group3")));
+
+        Map<String, Set<String>> rules = store.loadAll();
+        assertEquals(2, rules.size());
+        assertEquals(new HashSet<>(Arrays.asList("group1", "group2")), rules.get("testuser"));
+
+        // An empty set deletes the user
+        store.save("testuser", new HashSet<>());
+        assertFalse(store.loadAll().containsKey("testuser"));
+    }
+
+    @Test
+    public void testRuntimeRulesSurviveRestart() {
+        GroupHidingConfigurationImpl configuration = new GroupHidingConfigurationImpl();
+        configuration.setRuleStore(store);
+        configuration.addHiddenGroup("testuser", "group1");
+        configuration.addHiddenGroup("testuser", "group2");
+        configuration.removeHiddenGroup("testuser", "group1");
+
+        GroupHidingConfigurationImpl restarted = new GroupHidingConfigurationImpl();
+        restarted.setRuleStore(store);
+        restarted.reload();
+        assertEquals(new HashSet<>(Arrays.asList("group2")), restarted.getHiddenGroupsForUser("testuser"));
+    }
+
+    @Test
+    public void testContributedRulesAreNotPersisted() {
+        GroupHidingConfigurationImpl configuration = new GroupHidingConfigurationImpl();
+        configuration.setRuleStore(store);
+
+        GroupHidingDescriptor descriptor = new GroupHidingDescriptor();
+        descriptor.setUsername("testuser");
+        descriptor.setGroups(new String[] { "contributed" });
+        configuration.registerContribution(descriptor, "hiddenGroups", null);
+        configuration.addHiddenGroup("testuser", "runtime");
+
+        assertEquals(new HashSet<>(Arrays.asList("runtime")), store.loadAll().get("testuser"));
+
+        // A reload keeps both the contributed and the persisted rules
+        configuration.reload();
+        assertEquals(new HashSet<>(Arrays.asList("contributed", "runtime")),
+                configuration.getHiddenGroupsForUser("testuser"));
+    }
+
+    @Test
+    public void testContributedRulesCannotBeRemoved() {
+        GroupHidingConfigurationImpl configuration = new GroupHidingConfigurationImpl();
+        configuration.setRuleStore(store);
+
+        GroupHidingDescriptor descriptor = new GroupHidingDescriptor();
+        descriptor.setUsername("testuser");
+        descriptor.setGroups(new String[] { "contributed" });
+        configuration.registerContribution(descriptor, "hiddenGroups", null);
+        configuration.addHiddenGroup("testuser", "runtime");
+
+        try {
+            configuration.removeHiddenGroup("testuser", "contributed");
+            fail("Removing a contributed rule should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            configuration.applyBulkUpdate(Arrays.asList(RuleChange.remove("testuser", "runtime"),
+                    RuleChange.clear("testuser")), false);
+            fail("Clearing contributed rules should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(new HashSet<>(Arrays.asList("runtime")), store.loadAll().get("testuser"));
+        configuration.removeHiddenGroup("testuser", "runtime");
+
+        // A removal is never undone by a reload
+        configuration.reload();
+        assertEquals(new HashSet<>(Arrays.asList("contributed")), configuration.getHiddenGroupsForUser("testuser"));
+        assertNull(store.loadAll().get("testuser"));
+    }
+
+    @Test
+    public void testUpdateAppliesToStoredRules() {
+        store.save("testuser", new HashSet<>(Arrays.asList("group1")));
+
+        Set<String> updated = store.update("testuser", groups -> {
+            Set<String> result = new HashSet<>(groups);
+            result.add("group2");
+            return result;
+        });
+
+        assertEquals(new HashSet<>(Arrays.asList("group1", "group2")), updated);
+        assertEquals(updated, store.loadAll().get("testuser"));
+
+        // An empty result deletes the user
+        store.update("testuser", groups -> new HashSet<>());
+        assertFalse(store.loadAll().containsKey("testuser"));
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.nuxeo.grouphiding.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class GroupClosureIndexTest {
+
+    private Map<String, List<String>> hierarchy;
+
+    private int walks;
+
+    private GroupClosureIndex index;
+
+    @Before
+    public void setUp() {
+        hierarchy = new HashMap<>();
+        hierarchy.put("administrators", Arrays.asList("admins-eu", "admins-us"));
+        hierarchy.put("admins-eu", Arrays.asList("admins-fr"));
+        // Cycle in the directory
+        hierarchy.put("admins-fr", Arrays.asList("admins-eu"));
+        index = new GroupClosureIndex(this::subGroups);
+    }
+
+    private Collection<String> subGroups(String group) {
+        walks++;
+        return hierarchy.get(group);
+    }
+
+    @Test
+    public void testIsDescendant() {
+        assertTrue(index.isDescendant("admins-eu", "administrators"));
+        assertTrue(index.isDescendant("admins-fr", "administrators"));
+        assertFalse(index.isDescendant("administrators", "admins-us"));
+        assertFalse(index.isDescendant("members", "administrators"));
+        assertFalse(index.isDescendant("administrators", "administrators"));
+    }
+
+    @Test
+    public void testClosureIsComputedOnce() {
+        index.isDescendant("admins-fr", "administrators");
+        int count = walks;
+        index.isDescendant("admins-us", "administrators");
+        assertEquals(count, walks);
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testWithDescendants() {
+        Set<String> hidden = Collections.singleton("admins-eu");
+        assertEquals(new HashSet<>(Arrays.asList("admins-eu", "admins-fr")),
+                index.withDescendants(hidden, Arrays.asList("members", "admins-eu", "admins-fr")));
+        assertSame(hidden, index.withDescendants(hidden, Arrays.asList("members", "admins-us")));
+    }
+
+    @Test
+    public void testInvalidate() {
+        assertFalse(index.isDescendant("admins-de", "administrators"));
+        index.isDescendant("x", "members");
+        assertEquals(2, index.size());
+
+        hierarchy.put("admins-eu", Arrays.asList("admins-fr", "admins-de"));
+        index.invalidate(Collections.singleton("admins-eu"));
+        // Only the closure containing the changed group is dropped
+        assertEquals(1, index.size());
+        assertTrue(index.isDescendant("admins-de", "administrators"));
+
+        index.invalidate(null);
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testClosureWalkedDuringInvalidationIsNotKept() {
+        index = new GroupClosureIndex(group -> {
+            if ("administrators".equals(group) && walks++ == 0) {
+                // The directory changes while the closure is walked
+                hierarchy.put("admins-us", Arrays.asList("admins-ca"));
+                index.invalidate(Collections.singleton("admins-us"));
+            }
+            return hierarchy.get(group);
+        });
+
+        index.isDescendant("admins-ca", "administrators");
+        assertEquals(0, index.size());
+
+        assertTrue(index.isDescendant("admins-ca", "administrators"));
+        assertEquals(1, index.size());
+        assertEquals(2, walks);
+    }
+}
\ No newline at end of file
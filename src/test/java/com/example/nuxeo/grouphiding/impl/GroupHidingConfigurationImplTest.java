@@ -1,9 +1,30 @@
 package com.example.nuxeo.grouphiding.impl;
 
+import com.example.nuxeo.grouphiding.api.BulkUpdateResult;
+import com.example.nuxeo.grouphiding.api.LifecycleListener;
+import com.example.nuxeo.grouphiding.api.MembershipListener;
+import com.example.nuxeo.grouphiding.api.RuleChange;
+import com.example.nuxeo.grouphiding.api.RulePage;
+import com.example.nuxeo.grouphiding.api.RuleValidity;
+import com.example.nuxeo.grouphiding.api.ShadowStatistics;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
 
@@ -100,4 +121,581 @@ public class GroupHidingConfigurationImplTest {
         configuration.removeHiddenGroup("user", null);
         configuration.clearHiddenGroupsForUser(null);
     }
+
+    @Test
+    public void testRulesVersionChangesOnlyOnEffectiveChanges() {
+        long initial = configuration.getRulesVersion();
+
+        configuration.addHiddenGroup("testuser", "group1");
+        long afterAdd = configuration.getRulesVersion();
+        assertTrue(afterAdd > initial);
+
+        // Adding the same rule again or removing an unknown one is not a change
+        configuration.addHiddenGroup("testuser", "group1");
+        configuration.removeHiddenGroup("testuser", "unknown");
+        assertEquals(afterAdd, configuration.getRulesVersion());
+
+        configuration.clearHiddenGroupsForUser("testuser");
+        assertTrue(configuration.getRulesVersion() > afterAdd);
+    }
+
+    @Test
+    public void testHasHiddenGroups() {
+        assertFalse(configuration.hasHiddenGroups("testuser"));
+        assertFalse(configuration.hasHiddenGroups(null));
+
+        configuration.addHiddenGroup("testuser", "group1");
+        configuration.addHiddenGroup("testuser", "group2");
+        assertTrue(configuration.hasHiddenGroups("testuser"));
+        assertFalse(configuration.hasHiddenGroups("otheruser"));
+
+        configuration.removeHiddenGroup("testuser", "group1");
+        assertTrue(configuration.hasHiddenGroups("testuser"));
+        configuration.removeHiddenGroup("testuser", "group2");
+        assertFalse(configuration.hasHiddenGroups("testuser"));
+    }
+
+    @Test
+    public void testReadsShareImmutableSnapshot() {
+        configuration.addHiddenGroup("testuser", "group1");
+
+        Set<String> hiddenGroups = configuration.getHiddenGroupsForUser("testuser");
+        assertSame(hiddenGroups, configuration.getHiddenGroupsForUser("testuser"));
+
+        // Later writes publish a new snapshot and leave previous reads untouched
+        configuration.addHiddenGroup("testuser", "group2");
+        assertEquals(1, hiddenGroups.size());
+        assertEquals(2, configuration.getHiddenGroupsForUser("testuser").size());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testReadsAreUnmodifiable() {
+        configuration.addHiddenGroup("testuser", "group1");
+        configuration.getHiddenGroupsForUser("testuser").add("group2");
+    }
+
+    @Test
+    public void testGroupRuleWithPatterns() {
+        GroupHidingDescriptor descriptor = new GroupHidingDescriptor();
+        descriptor.setSubjectGroup("contractors");
+        descriptor.setGroups(new String[] { "administrators" });
+        descriptor.setPatterns(new String[] { "finance-*", "*-secret" });
+        configuration.registerContribution(descriptor, "hiddenGroups", null);
+
+        List<String> groups = Arrays.asList("contractors", "administrators", "finance-eu", "hr-secret", "members");
+        assertTrue(configuration.hasHidingRules("anyuser", groups, null));
+        assertEquals(new HashSet<>(Arrays.asList("administrators", "finance-eu", "hr-secret")),
+                configuration.getHiddenGroups("anyuser", groups, null));
+
+        // Not a member of the subject group
+        List<String> otherGroups = Arrays.asList("administrators", "finance-eu");
+        assertFalse(configuration.hasHidingRules("anyuser", otherGroups, null));
+        assertTrue(configuration.getHiddenGroups("anyuser", otherGroups, null).isEmpty());
+
+        configuration.unregisterContribution(descriptor, "hiddenGroups", null);
+        assertFalse(configuration.hasHidingRules("anyuser", groups, null));
+    }
+
+    @Test
+    public void testTenantScopedRules() {
+        GroupHidingDescriptor tenantRule = new GroupHidingDescriptor();
+        tenantRule.setTenant("acme");
+        tenantRule.setPatterns(new String[] { "global-*" });
+        configuration.registerContribution(tenantRule, "hiddenGroups", null);
+
+        GroupHidingDescriptor scopedUserRule = new GroupHidingDescriptor();
+        scopedUserRule.setUsername("testuser");
+        scopedUserRule.setTenant("acme");
+        scopedUserRule.setGroups(new String[] { "managers" });
+        configuration.registerContribution(scopedUserRule, "hiddenGroups", null);
+
+        List<String> groups = Arrays.asList("global-admins", "managers");
+        assertEquals(new HashSet<>(groups), configuration.getHiddenGroups("testuser", groups, "acme"));
+        assertTrue(configuration.getHiddenGroups("testuser", groups, "other").isEmpty());
+        assertTrue(configuration.getHiddenGroups("testuser", groups, null).isEmpty());
+
+        // Scoped rules are not per-user literal rules
+        assertTrue(configuration.getHiddenGroupsForUser("testuser").isEmpty());
+    }
+
+    @Test
+    public void testUserRulesAreCombinedWithGroupRules() {
+        configuration.addHiddenGroup("testuser", "managers");
+
+        GroupHidingDescriptor descriptor = new GroupHidingDescriptor();
+        descriptor.setSubjectGroup("contractors");
+        descriptor.setGroups(new String[] { "administrators" });
+        configuration.registerContribution(descriptor, "hiddenGroups", null);
+
+        List<String> groups = Arrays.asList("contractors", "administrators", "managers");
+        assertEquals(new HashSet<>(Arrays.asList("administrators", "managers")),
+                configuration.getHiddenGroups("testuser", groups, null));
+    }
+
+    @Test
+    public void testBulkUpdateIsAppliedAsOneSnapshot() {
+        configuration.addHiddenGroup("testuser", "group1");
+        long version = configuration.getRulesVersion();
+
+        BulkUpdateResult result = configuration.applyBulkUpdate(Arrays.asList(
+                RuleChange.add("testuser", "group2"),
+                RuleChange.add("testuser", "group1"),
+                RuleChange.add("otheruser", "group3"),
+                RuleChange.remove("testuser", "group1"),
+                RuleChange.remove("testuser", "unknown")), false);
+
+        assertEquals(version + 1, configuration.getRulesVersion());
+        assertEquals(version + 1, result.getRulesVersion());
+        assertEquals(5, result.getChanges());
+        assertEquals(2, result.getAdded());
+        assertEquals(1, result.getRemoved());
+        assertEquals(2, result.getUnchanged());
+        assertEquals(new HashSet<>(Arrays.asList("group2")), configuration.getHiddenGroupsForUser("testuser"));
+        assertEquals(new HashSet<>(Arrays.asList("group3")), configuration.getHiddenGroupsForUser("otheruser"));
+
+        result = configuration.applyBulkUpdate(Arrays.asList(RuleChange.clear("testuser")), false);
+        assertEquals(1, result.getClearedUsers());
+        assertFalse(configuration.hasHiddenGroups("testuser"));
+        assertTrue(configuration.hasHiddenGroups("otheruser"));
+    }
+
+    @Test
+    public void testReplaceAllKeepsContributedRules() {
+        GroupHidingDescriptor descriptor = new GroupHidingDescriptor();
+        descriptor.setUsername("xmluser");
+        descriptor.setGroups(new String[] { "xmlgroup" });
+        configuration.registerContribution(descriptor, "hiddenGroups", null);
+        configuration.addHiddenGroup("testuser", "group1");
+
+        configuration.applyBulkUpdate(Arrays.asList(RuleChange.add("newuser", "group2")), true);
+
+        assertTrue(configuration.isGroupHiddenForUser("xmluser", "xmlgroup"));
+        assertFalse(configuration.hasHiddenGroups("testuser"));
+        assertTrue(configuration.isGroupHiddenForUser("newuser", "group2"));
+    }
+
+    @Test
+    public void testRuleCount() {
+        assertEquals(0, configuration.getRuleCount());
+        configuration.addHiddenGroup("testuser", "group1");
+        configuration.addHiddenGroup("testuser", "group2");
+
+        GroupHidingDescriptor descriptor = new GroupHidingDescriptor();
+        descriptor.setSubjectGroup("contractors");
+        descriptor.setGroups(new String[] { "administrators" });
+        configuration.registerContribution(descriptor, "hiddenGroups", null);
+
+        assertEquals(3, configuration.getRuleCount());
+    }
+
+    @Test
+    public void testContributionsBuiltAtStartup() {
+        configuration.activate(null);
+        GroupHidingDescriptor descriptor = new GroupHidingDescriptor();
+        descriptor.setUsername("xmluser");
+        descriptor.setGroups(new String[] { "xmlgroup" });
+        configuration.registerContribution(descriptor, "hiddenGroups", null);
+        GroupHidingDescriptor rule = new GroupHidingDescriptor();
+        rule.setSubjectGroup("contractors");
+        rule.setGroups(new String[] { "administrators" });
+        configuration.registerContribution(rule, "hiddenGroups", null);
+
+        // Only collected until the component starts
+        assertEquals(0, configuration.getRuleCount());
+
+        configuration.build();
+        assertEquals(2, configuration.getRuleCount());
+        assertTrue(configuration.isGroupHiddenForUser("xmluser", "xmlgroup"));
+
+        // Applied incrementally once started
+        configuration.unregisterContribution(descriptor, "hiddenGroups", null);
+        assertFalse(configuration.hasHiddenGroups("xmluser"));
+    }
+
+    @Test
+    public void testParallelBuild() {
+        int users = RulesSnapshot.PARALLEL_BUILD_THRESHOLD + 1;
+        configuration.activate(null);
+        for (int i = 0; i < users; i++) {
+            GroupHidingDescriptor descriptor = new GroupHidingDescriptor();
+            descriptor.setUsername("user" + i);
+            descriptor.setGroups(new String[] { "group" + (i % 10), "common" });
+            configuration.registerContribution(descriptor, "hiddenGroups", null);
+        }
+        configuration.build();
+
+        assertEquals(users, configuration.getUsersWithHiddenGroups().size());
+        assertEquals(2 * users, configuration.getRuleCount());
+        assertEquals(new HashSet<>(Arrays.asList("group7", "common")), configuration.getHiddenGroupsForUser("user17"));
+    }
+
+    private static final Instant NOW = Instant.parse("2026-03-01T00:00:00Z");
+
+    private void setTime(Instant instant) {
+        configuration.setClock(Clock.fixed(instant, ZoneOffset.UTC));
+    }
+
+    @Test
+    public void testTimeBoundedRule() {
+        setTime(NOW);
+        Instant from = NOW.plusSeconds(3600);
+        Instant until = NOW.plusSeconds(7200);
+        configuration.addHiddenGroup("testuser", "auditors", from, until);
+
+        assertFalse(configuration.isGroupHiddenForUser("testuser", "auditors"));
+        assertEquals(RuleValidity.of(from, until), configuration.getValidity("testuser", "auditors"));
+
+        setTime(from);
+        configuration.applySchedule();
+        assertTrue(configuration.isGroupHiddenForUser("testuser", "auditors"));
+
+        setTime(until);
+        configuration.applySchedule();
+        assertFalse(configuration.isGroupHiddenForUser("testuser", "auditors"));
+        // Expired runtime rules are deleted
+        assertNull(configuration.getValidity("testuser", "auditors"));
+        configuration.applyBulkUpdate(Arrays.asList(RuleChange.add("otheruser", "group1")), false);
+        assertFalse(configuration.hasHiddenGroups("testuser"));
+    }
+
+    @Test
+    public void testAddingRuleAgainMakesItPermanent() {
+        setTime(NOW);
+        configuration.addHiddenGroup("testuser", "auditors", null, NOW.plusSeconds(60));
+        assertTrue(configuration.isGroupHiddenForUser("testuser", "auditors"));
+
+        configuration.addHiddenGroup("testuser", "auditors");
+        assertNull(configuration.getValidity("testuser", "auditors"));
+
+        setTime(NOW.plusSeconds(60));
+        configuration.applySchedule();
+        assertTrue(configuration.isGroupHiddenForUser("testuser", "auditors"));
+    }
+
+    @Test
+    public void testTimeBoundedDescriptor() {
+        setTime(NOW);
+        GroupHidingDescriptor descriptor = new GroupHidingDescriptor();
+        descriptor.setUsername("xmluser");
+        descriptor.setGroups(new String[] { "xmlgroup" });
+        descriptor.setValidFrom("2026-02-01");
+        descriptor.setValidUntil("2026-04-01");
+        configuration.registerContribution(descriptor, "hiddenGroups", null);
+        GroupHidingDescriptor invalid = new GroupHidingDescriptor();
+        invalid.setUsername("xmluser");
+        invalid.setGroups(new String[] { "othergroup" });
+        invalid.setValidUntil("yesterday");
+        configuration.registerContribution(invalid, "hiddenGroups", null);
+
+        assertTrue(configuration.isGroupHiddenForUser("xmluser", "xmlgroup"));
+        assertFalse(configuration.isGroupHiddenForUser("xmluser", "othergroup"));
+
+        setTime(Instant.parse("2026-04-01T00:00:00Z"));
+        configuration.applySchedule();
+        assertFalse(configuration.hasHiddenGroups("xmluser"));
+    }
+
+    @Test
+    public void testTimeBoundedRulePersisted() throws IOException {
+        Path dir = Files.createTempDirectory("grouphiding");
+        try {
+            FileRuleStore store = new FileRuleStore(dir.resolve(FileRuleStore.DEFAULT_FILE_NAME));
+            setTime(NOW);
+            configuration.setRuleStore(store);
+            configuration.addHiddenGroup("testuser", "group1");
+            configuration.addHiddenGroup("testuser", "auditors", NOW.plusSeconds(60), null);
+
+            GroupHidingConfigurationImpl restarted = new GroupHidingConfigurationImpl();
+            restarted.setClock(Clock.fixed(NOW.plusSeconds(60), ZoneOffset.UTC));
+            restarted.setRuleStore(store);
+            restarted.build();
+
+            assertEquals(RuleValidity.of(NOW.plusSeconds(60), null), restarted.getValidity("testuser", "auditors"));
+            assertEquals(new HashSet<>(Arrays.asList("group1", "auditors")),
+                    restarted.getHiddenGroupsForUser("testuser"));
+        } finally {
+            Files.deleteIfExists(dir.resolve(FileRuleStore.DEFAULT_FILE_NAME));
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    @Test
+    public void testMembershipListeners() {
+        List<Set<String>> notified = new ArrayList<>();
+        MembershipListener listener = (usernames, groupNames) -> {
+            notified.add(usernames);
+            notified.add(groupNames);
+        };
+        configuration.addMembershipListener(listener);
+
+        configuration.membershipChanged(Collections.singleton("testuser"), Collections.singleton("group1"));
+        assertEquals(Arrays.asList(Collections.singleton("testuser"), Collections.singleton("group1")), notified);
+
+        configuration.removeMembershipListener(listener);
+        configuration.membershipChanged(null, Collections.emptySet());
+        assertEquals(2, notified.size());
+    }
+
+    @Test
+    public void testSubGroupsHidden() {
+        Map<String, List<String>> hierarchy = new HashMap<>();
+        hierarchy.put("administrators", Arrays.asList("admins-eu"));
+        configuration.setGroupClosure(new GroupClosureIndex(hierarchy::get));
+        configuration.addHiddenGroup("testuser", "administrators");
+
+        List<String> groups = Arrays.asList("members", "admins-eu", "administrators");
+        assertEquals(new HashSet<>(Arrays.asList("administrators", "admins-eu")),
+                configuration.getHiddenGroups("testuser", groups, null));
+
+        hierarchy.put("administrators", Arrays.asList("admins-eu", "members"));
+        configuration.membershipChanged(Collections.emptySet(), Collections.singleton("administrators"));
+        assertEquals(new HashSet<>(groups), configuration.getHiddenGroups("testuser", groups, null));
+    }
+
+    @Test
+    public void testShadowRulesAreNotEnforced() {
+        configuration.addHiddenGroup("testuser", "group1");
+        assertNull(configuration.getShadowStatistics());
+        long version = configuration.getRulesVersion();
+
+        BulkUpdateResult result = configuration.loadShadowRules(Arrays.asList(
+                RuleChange.add("testuser", "group2"), RuleChange.remove("testuser", "group1"),
+                RuleChange.add("otheruser", "group3")), false);
+
+        assertEquals(2, result.getAdded());
+        assertEquals(1, result.getRemoved());
+        assertEquals(version, configuration.getRulesVersion());
+        assertEquals(Collections.singleton("group1"), configuration.getHiddenGroupsForUser("testuser"));
+        assertFalse(configuration.hasHiddenGroups("otheruser"));
+
+        List<String> groups = Arrays.asList("group1", "group2", "group3");
+        assertEquals(Collections.singleton("group2"), configuration.getShadowHiddenGroups("testuser", groups, null));
+        assertEquals(Collections.singleton("group3"), configuration.getShadowHiddenGroups("otheruser", groups, null));
+        ShadowStatistics statistics = configuration.getShadowStatistics();
+        assertNotNull(statistics);
+        assertEquals(2, statistics.getCandidateRules());
+
+        configuration.clearShadowRules();
+        assertNull(configuration.getShadowStatistics());
+        assertTrue(configuration.getShadowHiddenGroups("testuser", groups, null).isEmpty());
+    }
+
+    @Test
+    public void testShadowRulesReplacingAll() {
+        configuration.addHiddenGroup("testuser", "group1");
+        configuration.loadShadowRules(Collections.singletonList(RuleChange.add("otheruser", "group2")), false);
+        ShadowStatistics previous = configuration.getShadowStatistics();
+
+        configuration.loadShadowRules(Collections.singletonList(RuleChange.add("otheruser", "group2")), true);
+
+        assertNotSame(previous, configuration.getShadowStatistics());
+        assertTrue(configuration.getShadowHiddenGroups("testuser", Arrays.asList("group1"), null).isEmpty());
+        assertEquals(Collections.singleton("group1"), configuration.getHiddenGroupsForUser("testuser"));
+    }
+
+    @Test
+    public void testListRulesPaginated() {
+        for (int i = 0; i < 25; i++) {
+            configuration.addHiddenGroup(String.format("user%02d", i), i % 2 == 0 ? "finance" : "hr");
+        }
+        configuration.addHiddenGroup("user00", "audit");
+        configuration.addHiddenGroup("admin", "finance");
+
+        List<String> listed = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            RulePage page = configuration.listRules("user", null, cursor, 10);
+            assertEquals(25, page.getTotal());
+            for (RulePage.Entry entry : page.getEntries()) {
+                listed.add(entry.getUsername());
+            }
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals(25, listed.size());
+        assertEquals("user00", listed.get(0));
+        assertEquals("user24", listed.get(24));
+        RulePage first = configuration.listRules("user0", null, null, 1);
+        assertEquals(Arrays.asList("audit", "finance"), first.getEntries().get(0).getHiddenGroups());
+        assertEquals(configuration.getRulesVersion(), first.getRulesVersion());
+    }
+
+    @Test
+    public void testListRulesByGroup() {
+        configuration.addHiddenGroup("bob", "finance");
+        configuration.addHiddenGroup("alice", "finance");
+        configuration.addHiddenGroup("carol", "hr");
+
+        RulePage page = configuration.listRules(null, "finance", null, 1);
+        assertEquals(2, page.getTotal());
+        assertEquals("alice", page.getEntries().get(0).getUsername());
+        assertEquals("alice", page.getNextCursor());
+        page = configuration.listRules(null, "finance", page.getNextCursor(), 1);
+        assertEquals("bob", page.getEntries().get(0).getUsername());
+        assertNull(page.getNextCursor());
+
+        assertEquals(Arrays.asList("alice", "bob"), configuration.getUsersHidingGroup("finance"));
+        configuration.removeHiddenGroup("alice", "finance");
+        assertEquals(Collections.singletonList("bob"), configuration.getUsersHidingGroup("finance"));
+        assertTrue(configuration.getUsersHidingGroup("unknown").isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testListRulesRejectsLargePages() {
+        configuration.listRules(null, null, null, RulePage.MAX_SIZE + 1);
+    }
+
+    @Test
+    public void testLifecycleListeners() {
+        List<String> events = new ArrayList<>();
+        configuration.addLifecycleListener(new LifecycleListener() {
+
+            @Override
+            public void shadowRulesLoaded() {
+                events.add("loaded");
+            }
+
+            @Override
+            public void shadowRulesCleared() {
+                events.add("cleared");
+            }
+
+            @Override
+            public void serviceStopped() {
+                events.add("stopped");
+            }
+        });
+
+        configuration.loadShadowRules(Collections.singletonList(RuleChange.add("testuser", "group1")), false);
+        configuration.clearShadowRules();
+        // Nothing to clear
+        configuration.clearShadowRules();
+        configuration.stop(null);
+        // Unregistered once stopped
+        configuration.loadShadowRules(Collections.singletonList(RuleChange.add("testuser", "group1")), false);
+
+        assertEquals(Arrays.asList("loaded", "cleared", "stopped"), events);
+    }
+
+    @Test
+    public void testScheduleOnlyUpdatesDueRules() {
+        setTime(NOW);
+        configuration.addHiddenGroup("testuser", "auditors", NOW.plusSeconds(60), null);
+        configuration.addHiddenGroup("otheruser", "auditors", null, NOW.plusSeconds(120));
+        configuration.addHiddenGroup("removeduser", "auditors", null, NOW.plusSeconds(30));
+        assertEquals(3, configuration.getScheduler().size());
+
+        // Removing a rule drops its boundary
+        configuration.removeHiddenGroup("removeduser", "auditors");
+        assertEquals(2, configuration.getScheduler().size());
+        assertEquals(NOW.plusSeconds(60), configuration.getScheduler().getNextBoundary());
+
+        setTime(NOW.plusSeconds(60));
+        configuration.applySchedule();
+        assertTrue(configuration.isGroupHiddenForUser("testuser", "auditors"));
+        assertTrue(configuration.isGroupHiddenForUser("otheruser", "auditors"));
+        // The rule of testuser has no further boundary
+        assertEquals(NOW.plusSeconds(120), configuration.getScheduler().getNextBoundary());
+
+        // A permanent rule replacing a time-bounded one drops its boundary
+        configuration.addHiddenGroup("otheruser", "auditors");
+        assertNull(configuration.getScheduler().getNextBoundary());
+    }
+
+    @Test
+    public void testTimeBoundedGroupRuleDescriptor() {
+        setTime(NOW);
+        GroupHidingDescriptor descriptor = new GroupHidingDescriptor();
+        descriptor.setSubjectGroup("contractors");
+        descriptor.setGroups(new String[] { "finance" });
+        descriptor.setValidUntil("2026-04-01");
+        configuration.registerContribution(descriptor, "hiddenGroups", null);
+        List<String> groups = Arrays.asList("contractors", "finance");
+
+        assertEquals(Collections.singleton("finance"), configuration.getHiddenGroups("jdoe", groups, null));
+
+        setTime(Instant.parse("2026-04-01T00:00:00Z"));
+        configuration.applySchedule();
+        assertEquals(Collections.emptySet(), configuration.getHiddenGroups("jdoe", groups, null));
+        assertNull(configuration.getScheduler().getNextBoundary());
+
+        configuration.unregisterContribution(descriptor, "hiddenGroups", null);
+        assertEquals(0, configuration.getRuleCount());
+    }
+
+    @Test
+    public void testConcurrentChangesOfSameUserAreMerged() throws IOException {
+        Path dir = Files.createTempDirectory("grouphiding");
+        try {
+            FileRuleStore store = new FileRuleStore(dir.resolve(FileRuleStore.DEFAULT_FILE_NAME));
+            configuration.setRuleStore(store);
+            configuration.build();
+            GroupHidingConfigurationImpl other = new GroupHidingConfigurationImpl();
+            other.setRuleStore(store);
+            other.build();
+
+            // Neither node sees the change of the other before writing its own
+            configuration.addHiddenGroup("testuser", "group1");
+            other.addHiddenGroup("testuser", "group2");
+
+            Set<String> both = new HashSet<>(Arrays.asList("group1", "group2"));
+            assertEquals(both, store.loadAll().get("testuser"));
+            assertEquals(both, other.getHiddenGroupsForUser("testuser"));
+            configuration.reload();
+            assertEquals(both, configuration.getHiddenGroupsForUser("testuser"));
+
+            configuration.removeHiddenGroup("testuser", "group1");
+            assertEquals(Collections.singleton("group2"), store.loadAll().get("testuser"));
+        } finally {
+            Files.deleteIfExists(dir.resolve(FileRuleStore.DEFAULT_FILE_NAME));
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    @Test
+    public void testClearingPendingRulesIsAnnounced() throws IOException {
+        Path dir = Files.createTempDirectory("grouphiding");
+        try {
+            FileRuleStore store = new FileRuleStore(dir.resolve(FileRuleStore.DEFAULT_FILE_NAME));
+            setTime(NOW);
+            configuration.setRuleStore(store);
+            AtomicInteger announces = new AtomicInteger();
+            configuration.setInvalidator(new ClusterRuleInvalidator(null, null, 0) {
+                @Override
+                public void rulesChanged() {
+                    announces.incrementAndGet();
+                }
+            });
+            configuration.addHiddenGroup("testuser", "group1", NOW.plusSeconds(60), null);
+            assertFalse(configuration.hasHiddenGroups("testuser"));
+            announces.set(0);
+
+            configuration.clearHiddenGroupsForUser("testuser");
+
+            assertEquals(1, announces.get());
+            assertNull(configuration.getValidity("testuser", "group1"));
+            assertFalse(store.loadAll().containsKey("testuser"));
+        } finally {
+            Files.deleteIfExists(dir.resolve(FileRuleStore.DEFAULT_FILE_NAME));
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    @Test
+    public void testHasRules() {
+        assertFalse(configuration.hasRules());
+        configuration.addHiddenGroup("testuser", "group1");
+        assertTrue(configuration.hasRules());
+        configuration.removeHiddenGroup("testuser", "group1");
+        assertFalse(configuration.hasRules());
+
+        GroupHidingDescriptor descriptor = new GroupHidingDescriptor();
+        descriptor.setSubjectGroup("contractors");
+        descriptor.setGroups(new String[] { "administrators" });
+        configuration.registerContribution(descriptor, "hiddenGroups", null);
+        assertTrue(configuration.hasRules());
+    }
 }
\ No newline at end of file
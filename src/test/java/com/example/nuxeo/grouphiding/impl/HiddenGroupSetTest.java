@@ -0,0 +1,67 @@
+package com.example.nuxeo.grouphiding.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+public class HiddenGroupSetTest {
+
+    private GroupDictionary dictionary;
+
+    @Before
+    public void setUp() {
+        dictionary = new GroupDictionary();
+    }
+
+    @Test
+    public void testOfInternsAndDeduplicates() {
+        HiddenGroupSet set = HiddenGroupSet.of(dictionary, Arrays.asList("group2", "group1", "group2"));
+
+        assertEquals(2, set.size());
+        assertTrue(set.contains("group1"));
+        assertTrue(set.contains("group2"));
+        assertFalse(set.contains("group3"));
+        assertEquals(new HashSet<>(Arrays.asList("group1", "group2")), set);
+        assertEquals(2, dictionary.size());
+    }
+
+    @Test
+    public void testWithAndWithout() {
+        HiddenGroupSet set = HiddenGroupSet.of(dictionary, Arrays.asList("group1"));
+
+        HiddenGroupSet added = set.with("group2");
+        assertNotSame(set, added);
+        assertEquals(1, set.size());
+        assertEquals(2, added.size());
+        assertSame(added, added.with("group2"));
+
+        HiddenGroupSet removed = added.without("group1");
+        assertEquals(1, removed.size());
+        assertTrue(removed.contains("group2"));
+        assertSame(removed, removed.without("unknown"));
+    }
+
+    @Test
+    public void testIdsAreSharedAcrossSets() {
+        HiddenGroupSet first = HiddenGroupSet.of(dictionary, Arrays.asList("group1"));
+        HiddenGroupSet second = HiddenGroupSet.of(dictionary, Arrays.asList("group1", "group2"));
+
+        int id = dictionary.idOf("group1");
+        assertTrue(first.containsId(id));
+        assertTrue(second.containsId(id));
+        assertEquals(GroupDictionary.UNKNOWN, dictionary.idOf("group3"));
+    }
+    @Test
+    public void testWithAll() {
+        HiddenGroupSet set = HiddenGroupSet.of(dictionary, Arrays.asList("group1", "group3"));
+
+        HiddenGroupSet merged = set.withAll(Arrays.asList("group2", "group3", "group4"));
+        assertEquals(new HashSet<>(Arrays.asList("group1", "group2", "group3", "group4")), merged);
+        assertEquals(2, set.size());
+        assertSame(merged, merged.withAll(Arrays.asList("group4", "group1")));
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.nuxeo.grouphiding.impl;
+
+import com.example.nuxeo.grouphiding.api.RuleChange;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RuleChangeReaderTest {
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testReadJson() throws IOException {
+        List<RuleChange> changes = RuleChangeReader.readAll(stream("["
+                + "{\"action\": \"add\", \"username\": \"testuser\", \"groupName\": \"group1\"},"
+                + "{\"action\": \"remove\", \"username\": \"testuser\", \"groups\": [\"group2\", \"group3\"]},"
+                + "{\"action\": \"clear\", \"username\": \"otheruser\"}]"), RuleChangeReader.FORMAT_JSON);
+
+        assertEquals(4, changes.size());
+        assertEquals(RuleChange.Action.ADD, changes.get(0).getAction());
+        assertEquals("group1", changes.get(0).getGroupName());
+        assertEquals(RuleChange.Action.REMOVE, changes.get(2).getAction());
+        assertEquals("group3", changes.get(2).getGroupName());
+        assertEquals(RuleChange.Action.CLEAR, changes.get(3).getAction());
+        assertEquals("otheruser", changes.get(3).getUsername());
+    }
+
+    @Test
+    public void testReadCsv() throws IOException {
+        List<RuleChange> changes = RuleChangeReader.readAll(stream("action,username,groupName\n"
+                + "add,testuser,group1\n"
+                + "# comment\n"
+                + "\n"
+                + "testuser,group2\n"
+                + "clear,otheruser,\n"), RuleChangeReader.FORMAT_CSV);
+
+        assertEquals(3, changes.size());
+        assertEquals(RuleChange.Action.ADD, changes.get(1).getAction());
+        assertEquals("group2", changes.get(1).getGroupName());
+        assertEquals(RuleChange.Action.CLEAR, changes.get(2).getAction());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidChangeIsRejected() throws IOException {
+        RuleChangeReader.readAll(stream("add,testuser,\n"), RuleChangeReader.FORMAT_CSV);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownFormatIsRejected() throws IOException {
+        RuleChangeReader.readAll(stream(""), "yaml");
+    }
+
+    @Test
+    public void testReadJsonLines() throws IOException {
+        List<RuleChange> changes = RuleChangeReader.readAll(stream(
+                "{\"username\": \"testuser\", \"groupName\": \"group1\"}\n"
+                + "{\"action\": \"remove\", \"username\": \"otheruser\", \"groups\": [\"group2\"]}\n"),
+                RuleChangeReader.FORMAT_JSONL);
+
+        assertEquals(2, changes.size());
+        assertEquals(RuleChange.Action.ADD, changes.get(0).getAction());
+        assertEquals(RuleChange.Action.REMOVE, changes.get(1).getAction());
+        assertEquals("group2", changes.get(1).getGroupName());
+    }
+
+    @Test
+    public void testReadXmlContribution() throws IOException {
+        List<RuleChange> changes = RuleChangeReader.readAll(stream("<?xml version=\"1.0\"?>"
+                + "<component name=\"test\"><extension target=\"x\" point=\"hiddenGroups\">"
+                + "<hiddenGroup username=\"testuser\"><group>group1</group><group>group2</group></hiddenGroup>"
+                + "<hiddenGroup group=\"contractors\"><group>administrators</group></hiddenGroup>"
+                + "</extension></component>"), RuleChangeReader.FORMAT_XML);
+
+        assertEquals(2, changes.size());
+        assertEquals("testuser", changes.get(1).getUsername());
+        assertEquals("group2", changes.get(1).getGroupName());
+    }
+
+    @Test
+    public void testReadQuotedCsv() throws IOException {
+        List<RuleChange> changes = RuleChangeReader.readAll(stream("add,\"doe, john\",\"say \"\"hi\"\"\"\n"
+                + "\"line\nbreak\",group1\n"), RuleChangeReader.FORMAT_CSV);
+
+        assertEquals(2, changes.size());
+        assertEquals("doe, john", changes.get(0).getUsername());
+        assertEquals("say \"hi\"", changes.get(0).getGroupName());
+        assertEquals("line\nbreak", changes.get(1).getUsername());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnterminatedQuoteIsRejected() throws IOException {
+        RuleChangeReader.readAll(stream("add,\"testuser,group1\n"), RuleChangeReader.FORMAT_CSV);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,179 @@
+package com.example.nuxeo.grouphiding.impl;
+
+import com.example.nuxeo.grouphiding.api.BulkUpdateResult;
+import com.example.nuxeo.grouphiding.api.RuleValidity;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RuleImporterTest {
+
+    private GroupHidingConfigurationImpl configuration;
+
+    @Before
+    public void setUp() {
+        configuration = new GroupHidingConfigurationImpl();
+    }
+
+    private static ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testImportIsAppliedInBatches() throws IOException {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 25; i++) {
+            csv.append("user").append(i).append(",group").append(i % 3).append('\n');
+        }
+        List<BulkUpdateResult> progress = new ArrayList<>();
+        long version = configuration.getRulesVersion();
+
+        BulkUpdateResult result = new RuleImporter(configuration, 10, progress::add)
+                .importRules(stream(csv.toString()), RuleChangeReader.FORMAT_CSV, false);
+
+        assertEquals(25, result.getChanges());
+        assertEquals(25, result.getAdded());
+        assertEquals(3, progress.size());
+        assertEquals(version + 3, configuration.getRulesVersion());
+        assertEquals(25, configuration.getUsersWithHiddenGroups().size());
+    }
+
+    @Test
+    public void testReplaceAllDropsPreviousRules() throws IOException {
+        configuration.addHiddenGroup("olduser", "group1");
+
+        new RuleImporter(configuration, 1, null)
+                .importRules(stream("newuser,group1\nnewuser,group2\n"), RuleChangeReader.FORMAT_CSV, true);
+
+        assertFalse(configuration.hasHiddenGroups("olduser"));
+        assertEquals(new HashSet<>(Arrays.asList("group1", "group2")),
+                configuration.getHiddenGroupsForUser("newuser"));
+    }
+
+    @Test
+    public void testExportCanBeImportedBack() throws IOException {
+        configuration.addHiddenGroup("testuser", "group2");
+        configuration.addHiddenGroup("testuser", "group1");
+        configuration.addHiddenGroup("otheruser", "group3");
+
+        for (String format : Arrays.asList(RuleChangeReader.FORMAT_CSV, RuleChangeReader.FORMAT_JSONL,
+                RuleChangeReader.FORMAT_JSON, RuleChangeReader.FORMAT_XML)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(3, RuleExporter.export(configuration, out, format));
+
+            GroupHidingConfigurationImpl imported = new GroupHidingConfigurationImpl();
+            new RuleImporter(imported).importRules(new ByteArrayInputStream(out.toByteArray()), format, false);
+            assertEquals(format, configuration.getHiddenGroupsForUser("testuser"),
+                    imported.getHiddenGroupsForUser("testuser"));
+            assertEquals(format, configuration.getHiddenGroupsForUser("otheruser"),
+                    imported.getHiddenGroupsForUser("otheruser"));
+        }
+    }
+
+    @Test
+    public void testExportIsSorted() throws IOException {
+        configuration.addHiddenGroup("user2", "group1");
+        configuration.addHiddenGroup("user1", "group2");
+        configuration.addHiddenGroup("user1", "group1");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RuleExporter.export(configuration, out, RuleChangeReader.FORMAT_CSV);
+
+        assertEquals("action,username,groupName,validFrom,validUntil\nadd,user1,group1,,\nadd,user1,group2,,\n"
+                + "add,user2,group1,,\n",
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testBatchesOnlyChangeTheirUsers() throws IOException {
+        Instant until = Instant.now().plusSeconds(3600);
+        configuration.addHiddenGroup("scheduled", "group1", null, until);
+        configuration.addHiddenGroup("removed", "group1");
+
+        new RuleImporter(configuration, 2, null).importRules(stream("user1,group1\nuser2,group1\n"
+                + "user3,group2\nremove,removed,group1\nuser4,group1\n"), RuleChangeReader.FORMAT_CSV, false);
+
+        assertEquals(RuleValidity.of(null, until), configuration.getValidity("scheduled", "group1"));
+        assertFalse(configuration.hasHiddenGroups("removed"));
+        for (String username : Arrays.asList("scheduled", "user1", "user2", "user3", "user4")) {
+            assertTrue(username, configuration.hasHiddenGroups(username));
+        }
+        assertEquals(5, configuration.getUsersWithHiddenGroups().size());
+    }
+
+    @Test
+    public void testCsvExportQuotesNames() throws IOException {
+        List<String> usernames = Arrays.asList("doe, john", "say \"hi\"", "line\nbreak", "#user");
+        for (String username : usernames) {
+            configuration.addHiddenGroup(username, "group, \"one\"");
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RuleExporter.export(configuration, out, RuleChangeReader.FORMAT_CSV);
+        GroupHidingConfigurationImpl imported = new GroupHidingConfigurationImpl();
+        new RuleImporter(imported).importRules(new ByteArrayInputStream(out.toByteArray()),
+                RuleChangeReader.FORMAT_CSV, false);
+
+        assertEquals(new HashSet<>(usernames), imported.getUsersWithHiddenGroups());
+        for (String username : usernames) {
+            assertEquals(Collections.singleton("group, \"one\""), imported.getHiddenGroupsForUser(username));
+        }
+    }
+
+    @Test
+    public void testReplaceAllKeepsRulesOnInvalidInput() throws IOException {
+        configuration.addHiddenGroup("olduser", "group1");
+        long version = configuration.getRulesVersion();
+
+        try {
+            new RuleImporter(configuration, 1, null).importRules(stream("newuser,group1\nnewuser,group2\n"
+                    + "newuser,group3,extra,field\n"), RuleChangeReader.FORMAT_CSV, true);
+            fail("Invalid input should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        assertEquals(version, configuration.getRulesVersion());
+        assertEquals(Collections.singleton("group1"), configuration.getHiddenGroupsForUser("olduser"));
+        assertFalse(configuration.hasHiddenGroups("newuser"));
+    }
+
+    @Test
+    public void testExportKeepsValidities() throws IOException {
+        Instant now = Instant.now();
+        RuleValidity pending = RuleValidity.of(now.plusSeconds(3600), now.plusSeconds(7200));
+        RuleValidity limited = RuleValidity.of(null, now.plusSeconds(3600));
+        configuration.addHiddenGroup("testuser", "group1");
+        configuration.addHiddenGroup("testuser", "pending", pending.getValidFrom(), pending.getValidUntil());
+        configuration.addHiddenGroup("testuser", "limited", null, limited.getValidUntil());
+        configuration.addHiddenGroup("scheduled", "pending", pending.getValidFrom(), pending.getValidUntil());
+
+        for (String format : Arrays.asList(RuleChangeReader.FORMAT_CSV, RuleChangeReader.FORMAT_JSONL,
+                RuleChangeReader.FORMAT_JSON, RuleChangeReader.FORMAT_XML)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(format, 4, RuleExporter.export(configuration, out, format));
+
+            GroupHidingConfigurationImpl imported = new GroupHidingConfigurationImpl();
+            new RuleImporter(imported).importRules(new ByteArrayInputStream(out.toByteArray()), format, false);
+            assertEquals(format, new HashSet<>(Arrays.asList("group1", "limited")),
+                    imported.getHiddenGroupsForUser("testuser"));
+            assertNull(imported.getValidity("testuser", "group1"));
+            assertEquals(format, pending, imported.getValidity("testuser", "pending"));
+            assertEquals(format, limited, imported.getValidity("testuser", "limited"));
+            assertFalse(format, imported.hasHiddenGroups("scheduled"));
+            assertEquals(format, pending, imported.getValidity("scheduled", "pending"));
+        }
+    }
+}
\ No newline at end of file
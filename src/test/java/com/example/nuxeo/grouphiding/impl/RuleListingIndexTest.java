@@ -0,0 +1,106 @@
+package com.example.nuxeo.grouphiding.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class RuleListingIndexTest {
+
+    private RuleListingIndex index;
+
+    @Before
+    public void setUp() {
+        GroupDictionary dictionary = new GroupDictionary();
+        Map<String, HiddenGroupSet> rules = new HashMap<>();
+        rules.put("carol", HiddenGroupSet.of(dictionary, Arrays.asList("finance")));
+        rules.put("alice", HiddenGroupSet.of(dictionary, Arrays.asList("finance", "hr")));
+        rules.put("bob", HiddenGroupSet.of(dictionary, Arrays.asList("hr")));
+        rules.put("albert", HiddenGroupSet.of(dictionary, Arrays.asList("finance")));
+        index = RuleListingIndex.of(rules);
+    }
+
+    @Test
+    public void testUsersAreSorted() {
+        assertArrayEquals(new String[] { "albert", "alice", "bob", "carol" }, index.users(null));
+    }
+
+    @Test
+    public void testReverseIndexIsSorted() {
+        assertArrayEquals(new String[] { "albert", "alice", "carol" }, index.users("finance"));
+        assertArrayEquals(new String[] { "alice", "bob" }, index.users("hr"));
+        assertEquals(0, index.users("unknown").length);
+    }
+
+    @Test
+    public void testPrefixRange() {
+        String[] users = index.users(null);
+
+        assertEquals(0, RuleListingIndex.first(users, "al"));
+        assertEquals(2, RuleListingIndex.end(users, "al"));
+        assertEquals(2, RuleListingIndex.first(users, "b"));
+        assertEquals(3, RuleListingIndex.end(users, "b"));
+        assertEquals(RuleListingIndex.first(users, "dave"), RuleListingIndex.end(users, "dave"));
+        assertEquals(0, RuleListingIndex.first(users, null));
+        assertEquals(4, RuleListingIndex.end(users, ""));
+    }
+
+    @Test
+    public void testAfterCursor() {
+        String[] users = index.users(null);
+
+        assertEquals(0, RuleListingIndex.after(users, null));
+        assertEquals(2, RuleListingIndex.after(users, "alice"));
+        // Users removed since the previous page do not break the listing
+        assertEquals(2, RuleListingIndex.after(users, "alicia"));
+        assertEquals(4, RuleListingIndex.after(users, "zoe"));
+    }
+
+    @Test
+    public void testDerivedIndexMatchesRebuiltIndex() {
+        GroupDictionary dictionary = new GroupDictionary();
+        Map<String, HiddenGroupSet> before = new HashMap<>();
+        before.put("carol", HiddenGroupSet.of(dictionary, Arrays.asList("finance")));
+        before.put("alice", HiddenGroupSet.of(dictionary, Arrays.asList("finance", "hr")));
+        before.put("bob", HiddenGroupSet.of(dictionary, Arrays.asList("hr")));
+        RuleListingIndex previous = RuleListingIndex.of(before);
+
+        Map<String, HiddenGroupSet> after = new HashMap<>(before);
+        // Removed, changed, added and unchanged users
+        after.remove("carol");
+        after.put("alice", HiddenGroupSet.of(dictionary, Arrays.asList("hr", "legal")));
+        after.put("aaron", HiddenGroupSet.of(dictionary, Arrays.asList("finance")));
+        RuleListingIndex derived = previous.with(before, after, Arrays.asList("carol", "alice", "aaron", "bob"));
+
+        RuleListingIndex rebuilt = RuleListingIndex.of(after);
+        for (String group : Arrays.asList(null, "finance", "hr", "legal")) {
+            assertArrayEquals(rebuilt.users(group), derived.users(group));
+        }
+        assertArrayEquals(new String[] { "aaron", "alice", "bob" }, derived.users(null));
+        assertArrayEquals(new String[] { "aaron" }, derived.users("finance"));
+        // The previous index is unchanged
+        assertArrayEquals(new String[] { "alice", "bob", "carol" }, previous.users(null));
+        assertSame(derived, derived.with(after, after, Arrays.asList("alice")));
+    }
+
+    @Test
+    public void testSnapshotListingFollowsWrites() {
+        RulesSnapshot snapshot = RulesSnapshot.empty(new GroupDictionary()).withHiddenGroup("bob", "hr");
+        // Builds the listing index of this snapshot, the next ones derive theirs
+        assertEquals(Arrays.asList("bob"), snapshot.getUsersHidingGroup("hr"));
+
+        snapshot = snapshot.withHiddenGroup("alice", "hr");
+        RulesSnapshot.Builder builder = snapshot.toBuilder();
+        builder.removeHiddenGroup("bob", "hr");
+        builder.addHiddenGroup("carol", "finance");
+        snapshot = builder.build();
+
+        assertEquals(Arrays.asList("alice"), snapshot.getUsersHidingGroup("hr"));
+        assertEquals(Arrays.asList("carol"), snapshot.getUsersHidingGroup("finance"));
+        assertEquals(2, snapshot.listRules(null, null, null, 10).getEntries().size());
+    }
+}
\ No newline at end of file
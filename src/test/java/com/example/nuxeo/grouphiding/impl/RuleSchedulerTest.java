@@ -0,0 +1,77 @@
+package com.example.nuxeo.grouphiding.impl;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RuleSchedulerTest {
+
+    private RuleScheduler scheduler;
+
+    @After
+    public void tearDown() {
+        if (scheduler != null) {
+            scheduler.stop();
+        }
+    }
+
+    @Test
+    public void testAppliesAtBoundaries() throws InterruptedException {
+        CountDownLatch applied = new CountDownLatch(2);
+        Set<Object> keys = ConcurrentHashMap.newKeySet();
+        scheduler = new RuleScheduler(due -> {
+            keys.addAll(due);
+            applied.countDown();
+        }, Clock.systemUTC());
+        scheduler.start();
+        Instant now = Instant.now();
+        scheduler.schedule("late", now.plusMillis(100));
+        scheduler.schedule("early", now.plusMillis(50));
+        // Already scheduled
+        scheduler.schedule("early", now.plusMillis(50));
+        assertEquals(now.plusMillis(50), scheduler.getNextBoundary());
+
+        assertTrue(applied.await(5, TimeUnit.SECONDS));
+        assertEquals(new HashSet<>(Arrays.asList("early", "late")), keys);
+        assertNull(scheduler.getNextBoundary());
+    }
+
+    @Test
+    public void testArmedOnStart() throws InterruptedException {
+        CountDownLatch applied = new CountDownLatch(1);
+        scheduler = new RuleScheduler(due -> applied.countDown(), Clock.systemUTC());
+        scheduler.schedule("key", Instant.now().minusMillis(10));
+        assertFalse(applied.await(50, TimeUnit.MILLISECONDS));
+
+        scheduler.start();
+        assertTrue(applied.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testKeysAreRescheduled() {
+        Instant now = Instant.parse("2026-03-01T00:00:00Z");
+        scheduler = new RuleScheduler(due -> fail("Not started"), Clock.fixed(now, ZoneOffset.UTC));
+        scheduler.schedule("moved", now.plusSeconds(60));
+        scheduler.schedule("removed", now.plusSeconds(30));
+        scheduler.schedule("moved", now.minusSeconds(1));
+        scheduler.unschedule("removed");
+
+        assertEquals(1, scheduler.size());
+        assertEquals(Collections.singleton("moved"), scheduler.takeDue());
+        assertEquals(0, scheduler.size());
+        assertNull(scheduler.getNextBoundary());
+        assertEquals(Collections.emptySet(), scheduler.takeDue());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,110 @@
+package com.example.nuxeo.grouphiding.security;
+
+import com.example.nuxeo.grouphiding.api.GroupHidingConfiguration;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+import org.nuxeo.ecm.core.api.security.ACE;
+import org.nuxeo.ecm.core.api.security.ACL;
+import org.nuxeo.ecm.core.api.security.ACP;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AccessExplainerTest {
+
+    @Mock
+    private NuxeoPrincipal principal;
+
+    @Mock
+    private GroupHidingConfiguration configuration;
+
+    private AccessExplainer explainer;
+
+    @Before
+    public void setUp() {
+        explainer = new AccessExplainer(configuration, new PermissionTable(permission -> null));
+        lenient().when(principal.getName()).thenReturn("testuser");
+        lenient().when(principal.getGroups()).thenReturn(Arrays.asList("group1", "hiddengroup"));
+        lenient().when(principal.isMemberOf("hiddengroup")).thenReturn(true);
+        lenient().when(configuration.hasHidingRules(eq("testuser"), any(), any())).thenReturn(true);
+        lenient().when(configuration.getHiddenGroups(eq("testuser"), any(), any()))
+                 .thenReturn(Collections.singleton("hiddengroup"));
+    }
+
+    @Test
+    public void testHiddenDeny() {
+        ACP acp = acp(ace("hiddengroup", "Read", true), ace("other", "Read", true));
+
+        AccessExplanation explanation = explainer.explain(principal, "doc1", acp, "Read");
+
+        assertEquals(AccessExplanation.Verdict.HIDDEN_DENY, explanation.getVerdict());
+        assertTrue(explanation.isDenied());
+        assertEquals("hiddengroup", explanation.getHiddenGroup());
+        assertEquals(Arrays.asList("testuser", "group1"), explanation.getVisiblePrincipals());
+        assertEquals(Collections.singletonList("hiddengroup"), explanation.getHiddenGroups());
+        assertEquals(1, explanation.getMatchingAces().size());
+        assertTrue(explanation.getMatchingAces().get(0).isHidden());
+    }
+
+    @Test
+    public void testBatch() {
+        Map<String, ACP> acps = new LinkedHashMap<>();
+        acps.put("doc1", acp(ace("group1", "Read", true), ace("hiddengroup", "Read", true)));
+        acps.put("doc2", acp(ace("hiddengroup", "Read", true)));
+        acps.put("doc3", acp(ace("other", "Read", true)));
+
+        List<AccessExplanation> explanations = explainer.explain(principal, acps, "Read");
+
+        assertEquals(3, explanations.size());
+        assertEquals("doc1", explanations.get(0).getDocumentId());
+        assertEquals(AccessExplanation.Verdict.VISIBLE_GRANT, explanations.get(0).getVerdict());
+        assertEquals(2, explanations.get(0).getMatchingAces().size());
+        assertEquals(AccessExplanation.Verdict.HIDDEN_DENY, explanations.get(1).getVerdict());
+        assertEquals(AccessExplanation.Verdict.NO_GRANT, explanations.get(2).getVerdict());
+        assertTrue(explanations.get(2).getMatchingAces().isEmpty());
+        // Resolved once for the whole batch
+        verify(configuration, times(1)).getHiddenGroups(eq("testuser"), any(), any());
+    }
+
+    @Test
+    public void testNotRestricted() {
+        when(configuration.hasHidingRules(eq("testuser"), any(), any())).thenReturn(false);
+
+        AccessExplanation explanation = explainer.explain(principal, "doc1",
+                acp(ace("hiddengroup", "Read", true)), "Read");
+
+        assertEquals(AccessExplanation.Verdict.NOT_RESTRICTED, explanation.getVerdict());
+        assertTrue(explanation.getHiddenGroups().isEmpty());
+        assertEquals(Arrays.asList("testuser", "group1", "hiddengroup"), explanation.getVisiblePrincipals());
+        assertFalse(explanation.getMatchingAces().get(0).isHidden());
+    }
+
+    private static ACP acp(ACE... aces) {
+        ACL acl = mock(ACL.class);
+        lenient().when(acl.getName()).thenReturn("local");
+        lenient().when(acl.getACEs()).thenReturn(aces);
+        ACP acp = mock(ACP.class);
+        lenient().when(acp.getACLs()).thenReturn(new ACL[] { acl });
+        return acp;
+    }
+
+    private static ACE ace(String username, String permission, boolean granted) {
+        ACE ace = mock(ACE.class);
+        lenient().when(ace.getUsername()).thenReturn(username);
+        lenient().when(ace.getPermission()).thenReturn(permission);
+        lenient().when(ace.isGranted()).thenReturn(granted);
+        lenient().when(ace.isEffective()).thenReturn(true);
+        return ace;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,120 @@
+package com.example.nuxeo.grouphiding.security;
+
+import com.example.nuxeo.grouphiding.api.GroupHidingConfiguration;
+import com.example.nuxeo.grouphiding.api.MembershipListener;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+import org.nuxeo.ecm.core.api.security.ACE;
+import org.nuxeo.ecm.core.api.security.ACL;
+import org.nuxeo.ecm.core.api.security.ACP;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BulkPermissionCheckerTest {
+
+    @Mock
+    private NuxeoPrincipal principal;
+
+    @Mock
+    private GroupHidingConfiguration configuration;
+
+    private BulkPermissionChecker checker;
+
+    @Before
+    public void setUp() {
+        checker = new BulkPermissionChecker(configuration, new PermissionTable(permission -> null));
+        lenient().when(principal.getName()).thenReturn("testuser");
+        lenient().when(principal.getGroups()).thenReturn(Arrays.asList("group1", "hiddengroup"));
+        lenient().when(principal.isMemberOf("hiddengroup")).thenReturn(true);
+        lenient().when(configuration.hasHidingRules(eq("testuser"), any(), any())).thenReturn(true);
+        lenient().when(configuration.getHiddenGroups(eq("testuser"), any(), any()))
+                 .thenReturn(Collections.singleton("hiddengroup"));
+    }
+
+    @Test
+    public void testCheck() {
+        ACP visible = acp(ace("group1", "Read", true));
+        ACP hidden = acp(ace("hiddengroup", "Read", true));
+        ACP none = acp(ace("other", "Read", true));
+
+        BitSet denied = checker.check(principal, Arrays.asList(visible, hidden, none, hidden), "Read");
+
+        assertEquals(2, denied.cardinality());
+        assertTrue(denied.get(1));
+        assertTrue(denied.get(3));
+        verify(configuration, times(1)).getHiddenGroups(eq("testuser"), any(), any());
+    }
+
+    @Test
+    public void testNoRules() {
+        when(configuration.hasHidingRules(eq("testuser"), any(), any())).thenReturn(false);
+
+        BitSet denied = checker.check(principal, Collections.singletonList(acp(ace("hiddengroup", "Read", true))),
+                "Read");
+
+        assertTrue(denied.isEmpty());
+        verify(configuration, never()).getHiddenGroups(any(), any(), any());
+    }
+
+    @Test
+    public void testParallelCheck() {
+        ACP visible = acp(ace("group1", "Read", true));
+        ACP hidden = acp(ace("hiddengroup", "Read", true));
+        List<ACP> acps = new ArrayList<>();
+        for (int i = 0; i < BulkPermissionChecker.PARALLEL_THRESHOLD * 2; i++) {
+            acps.add(i % 3 == 0 ? hidden : visible);
+        }
+
+        BitSet denied = checker.check(principal, acps, "Read");
+
+        for (int i = 0; i < acps.size(); i++) {
+            assertEquals(i % 3 == 0, denied.get(i));
+        }
+    }
+
+    private static ACP acp(ACE... aces) {
+        ACL acl = mock(ACL.class);
+        lenient().when(acl.getACEs()).thenReturn(aces);
+        ACP acp = mock(ACP.class);
+        lenient().when(acp.getACLs()).thenReturn(new ACL[] { acl });
+        return acp;
+    }
+
+    private static ACE ace(String username, String permission, boolean granted) {
+        ACE ace = mock(ACE.class);
+        lenient().when(ace.getUsername()).thenReturn(username);
+        lenient().when(ace.getPermission()).thenReturn(permission);
+        lenient().when(ace.isGranted()).thenReturn(granted);
+        lenient().when(ace.isEffective()).thenReturn(true);
+        return ace;
+    }
+
+    @Test
+    public void testMembershipChangeDropsCachedUser() {
+        ArgumentCaptor<MembershipListener> listener = ArgumentCaptor.forClass(MembershipListener.class);
+        verify(configuration).addMembershipListener(listener.capture());
+        List<ACP> acps = Collections.singletonList(acp(ace("hiddengroup", "Read", true)));
+
+        checker.check(principal, acps, "Read");
+        listener.getValue().membershipChanged(Collections.singleton("testuser"), Collections.emptySet());
+        checker.check(principal, acps, "Read");
+
+        verify(configuration, times(2)).getHiddenGroups(eq("testuser"), any(), any());
+
+        checker.close();
+        verify(configuration).removeMembershipListener(listener.getValue());
+    }
+}
\ No newline at end of file
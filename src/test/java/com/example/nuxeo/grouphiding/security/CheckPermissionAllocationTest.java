@@ -0,0 +1,185 @@
+package com.example.nuxeo.grouphiding.security;
+
+import com.example.nuxeo.grouphiding.impl.GroupHidingConfigurationImpl;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+import org.nuxeo.ecm.core.api.impl.UserPrincipal;
+import org.nuxeo.ecm.core.api.security.ACE;
+import org.nuxeo.ecm.core.api.security.ACP;
+import org.nuxeo.ecm.core.api.security.Access;
+import org.nuxeo.ecm.core.api.security.impl.ACLImpl;
+import org.nuxeo.ecm.core.api.security.impl.ACPImpl;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the common permission checks allocate nothing in the policy, and that evaluating an
+ * ACP for a user with hidden groups allocates at most the ACL array copied by the ACP, measured
+ * with the allocation counter of the current thread.
+ */
+public class CheckPermissionAllocationTest {
+
+    private static final int WARMUP = 20_000;
+
+    private static final int CHECKS = 10_000;
+
+    private static final int ROUNDS = 5;
+
+    private static final String[] READ = { "Read" };
+
+    private com.sun.management.ThreadMXBean threads;
+
+    private GroupHidingConfigurationImpl configuration;
+
+    private GroupHidingSecurityPolicy policy;
+
+    /**
+     * Principal returning the same group lists on each call, so that only the policy allocates.
+     */
+    private static final class FixedGroupsPrincipal extends UserPrincipal {
+
+        private final List<String> groups;
+
+        FixedGroupsPrincipal(String username, List<String> groups) {
+            super(username, groups, false, false);
+            this.groups = Collections.unmodifiableList(groups);
+        }
+
+        @Override
+        public List<String> getGroups() {
+            return groups;
+        }
+
+        @Override
+        public List<String> getAllGroups() {
+            return groups;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        configuration = new GroupHidingConfigurationImpl();
+        policy = new GroupHidingSecurityPolicy(configuration);
+    }
+
+    private static NuxeoPrincipal principal(String username, int groupCount) {
+        List<String> groups = new ArrayList<>(groupCount);
+        for (int i = 0; i < groupCount; i++) {
+            groups.add("group" + i);
+        }
+        return new FixedGroupsPrincipal(username, groups);
+    }
+
+    /**
+     * @return the bytes allocated by the current thread for {@value #CHECKS} checks after a warmup,
+     *         the least of a few rounds so that one-off allocations of the JVM are not counted
+     */
+    private long allocatedBytes(NuxeoPrincipal principal) {
+        for (int i = 0; i < WARMUP; i++) {
+            policy.checkPermission(null, null, principal, "Read", READ, null);
+        }
+        long threadId = Thread.currentThread().getId();
+        long least = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < CHECKS; i++) {
+                if (policy.checkPermission(null, null, principal, "Read", READ, null) != Access.UNKNOWN) {
+                    throw new AssertionError("Unexpected decision");
+                }
+            }
+            least = Math.min(least, threads.getThreadAllocatedBytes(threadId) - before);
+        }
+        return least;
+    }
+
+    /**
+     * @return the bytes allocated by the current thread for {@value #CHECKS} resolutions and
+     *         evaluations of an ACP, as done by the policy for a user with hidden groups, the resolved
+     *         principals being cached; the least of a few rounds
+     */
+    private long allocatedEvaluationBytes(NuxeoPrincipal principal, ACP acp, AcpEvaluator.Decision expected) {
+        PermissionTable.PermissionSet permissions = new PermissionTable(permission -> null).expand("Read", READ);
+        for (int i = 0; i < WARMUP; i++) {
+            AcpEvaluator.evaluate(acp, policy.resolve(principal), permissions);
+        }
+        long threadId = Thread.currentThread().getId();
+        long least = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < CHECKS; i++) {
+                if (AcpEvaluator.evaluate(acp, policy.resolve(principal), permissions).getDecision() != expected) {
+                    throw new AssertionError("Unexpected decision");
+                }
+            }
+            least = Math.min(least, threads.getThreadAllocatedBytes(threadId) - before);
+        }
+        return least;
+    }
+
+    private static ACP acp(ACE... localAces) {
+        ACLImpl local = new ACLImpl("local");
+        Collections.addAll(local, localAces);
+        ACLImpl inherited = new ACLImpl("inherited");
+        inherited.add(new ACE("administrators", "Everything", true));
+        ACPImpl acp = new ACPImpl();
+        acp.addACL(local);
+        acp.addACL(inherited);
+        return acp;
+    }
+
+    private static void assertAllocatesNothing(long bytes) {
+        // Below one byte per check: only the measurement itself may allocate
+        assertTrue("Allocated " + bytes + " bytes for " + CHECKS + " checks", bytes < CHECKS);
+    }
+
+    @Test
+    public void testNoRulesAllocatesNothing() {
+        assertAllocatesNothing(allocatedBytes(principal("testuser", 10)));
+    }
+
+    @Test
+    public void testUserWithoutRulesAllocatesNothing() {
+        configuration.addHiddenGroup("otheruser", "group1");
+
+        assertAllocatesNothing(allocatedBytes(principal("testuser", 100)));
+        assertEquals(policy.getMetrics().checks.getCount(), policy.getMetrics().fastExits.getCount());
+    }
+
+    @Test
+    public void testCachedHiddenGroupsEvaluationAllocatesOnlyTheAclArray() {
+        List<String> groups = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            groups.add("group" + i);
+        }
+        groups.add("hiddengroup");
+        NuxeoPrincipal principal = new FixedGroupsPrincipal("testuser", groups);
+        configuration.addHiddenGroup("testuser", "hiddengroup");
+        ResolvedPrincipals resolved = policy.resolve(principal);
+        assertTrue(resolved.hasHiddenGroups());
+
+        ACP visible = acp(new ACE("hiddengroup", "Read", true), new ACE("group3", "Read", true));
+        ACP notGranted = acp(new ACE("otheruser", "Read", true), new ACE("group3", "Write", true));
+        long bytes = Math.max(allocatedEvaluationBytes(principal, visible, AcpEvaluator.Decision.VISIBLE_GRANT),
+                allocatedEvaluationBytes(principal, notGranted, AcpEvaluator.Decision.NO_GRANT));
+
+        // Resolved once, then reused from the cache
+        assertSame(resolved, policy.resolve(principal));
+        // ACP.getACLs() copies its array of ACLs on each check, a few dozen bytes, nothing else may allocate
+        assertTrue("Allocated " + bytes + " bytes for " + CHECKS + " evaluations", bytes < 64L * CHECKS);
+    }
+}
\ No newline at end of file
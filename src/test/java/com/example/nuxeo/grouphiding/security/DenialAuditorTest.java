@@ -0,0 +1,87 @@
+package com.example.nuxeo.grouphiding.security;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DenialAuditorTest {
+
+    private final List<DenialEvent> events = new ArrayList<>();
+
+    @Test
+    public void testEventsAreWrittenOnDrain() {
+        DenialAuditor auditor = new DenialAuditor(events::addAll, 16, 1.0, 0);
+
+        auditor.denied("testuser", "hiddengroup", "Read", "default", "doc1");
+        auditor.denied("testuser", "hiddengroup", "Write", "default", "doc2");
+        assertTrue(events.isEmpty());
+
+        assertEquals(2, auditor.drain());
+        assertEquals(2, events.size());
+        DenialEvent event = events.get(0);
+        assertEquals("testuser", event.getUsername());
+        assertEquals("hiddengroup", event.getHiddenGroup());
+        assertEquals("Read", event.getPermission());
+        assertEquals("doc1", event.getDocId());
+    }
+
+    @Test
+    public void testRateLimitingPerUserAndGroup() {
+        DenialAuditor auditor = new DenialAuditor(events::addAll, 16, 1.0, 60000);
+
+        auditor.denied("testuser", "hiddengroup", "Read", "default", "doc1");
+        auditor.denied("testuser", "hiddengroup", "Read", "default", "doc2");
+        auditor.denied("testuser", "hiddengroup", "Read", "default", "doc3");
+        auditor.denied("testuser", "othergroup", "Read", "default", "doc1");
+        auditor.denied("otheruser", "hiddengroup", "Read", "default", "doc1");
+        auditor.drain();
+
+        assertEquals(3, events.size());
+        assertEquals(2, auditor.getSuppressed());
+    }
+
+    @Test
+    public void testFullBufferDropsEvents() {
+        DenialAuditor auditor = new DenialAuditor(events::addAll, 4, 1.0, 0);
+
+        for (int i = 0; i < 10; i++) {
+            auditor.denied("user" + i, "hiddengroup", "Read", "default", "doc");
+        }
+        assertEquals(6, auditor.getDropped());
+        assertEquals(4, auditor.drain());
+
+        // Space is available again once drained
+        auditor.denied("testuser", "hiddengroup", "Read", "default", "doc");
+        assertEquals(1, auditor.drain());
+        assertEquals(6, auditor.getDropped());
+    }
+
+    @Test
+    public void testBackgroundThreadDrainsOnStop() {
+        DenialAuditor auditor = new DenialAuditor(events::addAll, 16, 1.0, 0);
+        auditor.start();
+        auditor.denied("testuser", "hiddengroup", "Read", "default", "doc1");
+        auditor.stop();
+
+        assertEquals(1, events.size());
+    }
+
+    @Test
+    public void testOldestRateLimitsAreEvicted() {
+        DenialAuditor auditor = new DenialAuditor(events::addAll, 16, 1.0, 60000);
+
+        for (int i = 0; i <= DenialAuditor.MAX_RATE_LIMITS; i++) {
+            auditor.denied("user" + i, "hiddengroup", "Read", "default", "doc1");
+        }
+        assertEquals(0, auditor.getSuppressed());
+
+        // Recent windows are kept, the oldest ones are dropped
+        auditor.denied("user" + (DenialAuditor.MAX_RATE_LIMITS - 1), "hiddengroup", "Read", "default", "doc2");
+        assertEquals(1, auditor.getSuppressed());
+        auditor.denied("user0", "hiddengroup", "Read", "default", "doc2");
+        assertEquals(1, auditor.getSuppressed());
+    }
+}
\ No newline at end of file
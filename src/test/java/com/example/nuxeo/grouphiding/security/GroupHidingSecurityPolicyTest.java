@@ -7,6 +7,8 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+import org.nuxeo.ecm.core.api.security.ACE;
+import org.nuxeo.ecm.core.api.security.ACL;
 import org.nuxeo.ecm.core.api.security.ACP;
 import org.nuxeo.ecm.core.api.security.Access;
 import org.nuxeo.ecm.core.model.Document;
@@ -16,6 +18,8 @@ import java.util.HashSet;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -37,20 +41,20 @@ public class GroupHidingSecurityPolicyTest {
 
     @Before
     public void setUp() {
-        policy = new GroupHidingSecurityPolicy();
+        policy = new GroupHidingSecurityPolicy(configuration);
         
         // Mock principal setup
-        when(principal.getName()).thenReturn("testuser");
-        when(principal.getGroups()).thenReturn(Arrays.asList("group1", "group2", "hiddengroup"));
-        when(principal.isMemberOf("hiddengroup")).thenReturn(true);
-        when(principal.isMemberOf("group1")).thenReturn(true);
-        when(principal.isMemberOf("group2")).thenReturn(true);
+        lenient().when(principal.getName()).thenReturn("testuser");
+        lenient().when(principal.getGroups()).thenReturn(Arrays.asList("group1", "group2", "hiddengroup"));
+        lenient().when(principal.isMemberOf("hiddengroup")).thenReturn(true);
+        lenient().when(principal.isMemberOf("group1")).thenReturn(true);
+        lenient().when(principal.isMemberOf("group2")).thenReturn(true);
     }
 
     @Test
     public void testCheckPermission_NoHiddenGroups_ReturnsUnknown() {
         // Setup
-        when(configuration.getHiddenGroupsForUser("testuser")).thenReturn(new HashSet<>());
+        when(configuration.hasHidingRules(eq("testuser"), any(), any())).thenReturn(false);
 
         // Execute
         Access result = policy.checkPermission(document, mergedAcp, principal, "Read", 
@@ -58,6 +62,9 @@ public class GroupHidingSecurityPolicyTest {
 
         // Verify
         assertEquals(Access.UNKNOWN, result);
+        verify(configuration, never()).getHiddenGroups(any(), any(), any());
+        assertEquals(1, policy.getMetrics().checks.getCount());
+        assertEquals(1, policy.getMetrics().fastExits.getCount());
     }
 
     @Test
@@ -65,10 +72,11 @@ public class GroupHidingSecurityPolicyTest {
         // Setup
         Set<String> hiddenGroups = new HashSet<>();
         hiddenGroups.add("hiddengroup");
-        when(configuration.getHiddenGroupsForUser("testuser")).thenReturn(hiddenGroups);
+        when(configuration.hasHidingRules(eq("testuser"), any(), any())).thenReturn(true);
+        when(configuration.getHiddenGroups(eq("testuser"), any(), any())).thenReturn(hiddenGroups);
         
         // Mock ACP to grant access via visible groups
-        when(mergedAcp.getAccess(any(String[].class), eq("Read"))).thenReturn(Access.GRANT);
+        setAces(ace("group1", "Read", true), ace("hiddengroup", "Read", true));
 
         // Execute
         Access result = policy.checkPermission(document, mergedAcp, principal, "Read", 
@@ -76,6 +84,7 @@ public class GroupHidingSecurityPolicyTest {
 
         // Verify
         assertEquals(Access.UNKNOWN, result);
+        assertEquals(1, policy.getMetrics().visibleGrants.getCount());
     }
 
     @Test
@@ -83,15 +92,11 @@ public class GroupHidingSecurityPolicyTest {
         // Setup
         Set<String> hiddenGroups = new HashSet<>();
         hiddenGroups.add("hiddengroup");
-        when(configuration.getHiddenGroupsForUser("testuser")).thenReturn(hiddenGroups);
+        when(configuration.hasHidingRules(eq("testuser"), any(), any())).thenReturn(true);
+        when(configuration.getHiddenGroups(eq("testuser"), any(), any())).thenReturn(hiddenGroups);
         
-        // Mock ACP to deny access via visible principals but grant via hidden group
-        when(mergedAcp.getAccess(argThat(principals -> 
-            Arrays.asList(principals).contains("hiddengroup")), eq("Read")))
-            .thenReturn(Access.GRANT);
-        when(mergedAcp.getAccess(argThat(principals -> 
-            !Arrays.asList(principals).contains("hiddengroup")), eq("Read")))
-            .thenReturn(Access.DENY);
+        // Mock ACP to grant access via the hidden group only
+        setAces(ace("otheruser", "Read", true), ace("hiddengroup", "Read", true), ace("group1", "Write", true));
 
         // Execute
         Access result = policy.checkPermission(document, mergedAcp, principal, "Read", 
@@ -99,6 +104,95 @@ public class GroupHidingSecurityPolicyTest {
 
         // Verify
         assertEquals(Access.DENY, result);
+        assertEquals(1, policy.getMetrics().hiddenDenies.getCount());
+        assertEquals(0, policy.getMetrics().visibleGrants.getCount());
+    }
+
+    @Test
+    public void testCheckPermission_FirstMatchingAceDecides() {
+        when(configuration.hasHidingRules(eq("testuser"), any(), any())).thenReturn(true);
+        when(configuration.getHiddenGroups(eq("testuser"), any(), any()))
+            .thenReturn(new HashSet<>(Arrays.asList("hiddengroup")));
+
+        // Visible deny first: access is denied anyway, the policy does not interfere
+        setAces(ace("group1", "Read", false), ace("hiddengroup", "Read", true));
+        assertEquals(Access.UNKNOWN, policy.checkPermission(document, mergedAcp, principal, "Read",
+                                                            new String[]{"Read"}, new String[]{}));
+
+        // Hidden grant first: the visible grant that follows is shadowed, access is denied
+        setAces(ace("hiddengroup", "Read", true), ace("group2", "Read", false));
+        assertEquals(Access.DENY, policy.checkPermission(document, mergedAcp, principal, "Read",
+                                                         new String[]{"Read"}, new String[]{}));
+    }
+
+    @Test
+    public void testCheckPermission_ResolvedPermissionsAndEveryone() {
+        when(configuration.hasHidingRules(eq("testuser"), any(), any())).thenReturn(true);
+        when(configuration.getHiddenGroups(eq("testuser"), any(), any()))
+            .thenReturn(new HashSet<>(Arrays.asList("hiddengroup")));
+
+        // ReadWrite contains Read, and is granted through a hidden group only
+        setAces(ace("hiddengroup", "ReadWrite", true));
+        assertEquals(Access.DENY, policy.checkPermission(document, mergedAcp, principal, "Read",
+                                                         new String[]{"Read", "ReadWrite"}, new String[]{}));
+
+        // Everyone is a visible principal
+        setAces(ace("Everyone", "Read", true), ace("hiddengroup", "Read", true));
+        assertEquals(Access.UNKNOWN, policy.checkPermission(document, mergedAcp, principal, "Read",
+                                                            new String[]{"Read"}, new String[]{}));
+    }
+
+    private static ACE ace(String username, String permission, boolean granted) {
+        ACE ace = mock(ACE.class);
+        lenient().when(ace.getUsername()).thenReturn(username);
+        lenient().when(ace.getPermission()).thenReturn(permission);
+        lenient().when(ace.isGranted()).thenReturn(granted);
+        lenient().when(ace.isEffective()).thenReturn(true);
+        return ace;
+    }
+
+    private void setAces(ACE... aces) {
+        ACL acl = mock(ACL.class);
+        lenient().when(acl.getACEs()).thenReturn(aces);
+        when(mergedAcp.getACLs()).thenReturn(new ACL[] { acl });
+    }
+
+    @Test
+    public void testMembershipChanged_DropsResolvedPrincipals() {
+        when(configuration.hasHidingRules(eq("testuser"), any(), any())).thenReturn(true);
+        when(configuration.getHiddenGroups(eq("testuser"), any(), any()))
+            .thenReturn(new HashSet<>(Arrays.asList("hiddengroup")));
+        policy.resolve(principal);
+        assertEquals(1, policy.getPrincipalsCache().size());
+
+        policy.membershipChanged(new HashSet<>(Arrays.asList("otheruser")), new HashSet<>());
+        assertEquals(1, policy.getPrincipalsCache().size());
+
+        policy.membershipChanged(new HashSet<>(), new HashSet<>(Arrays.asList("hiddengroup")));
+        assertEquals(0, policy.getPrincipalsCache().size());
+    }
+
+    @Test
+    public void testCheckPermission_Error_FailsOpenByDefault() {
+        when(configuration.hasHidingRules(eq("testuser"), any(), any())).thenThrow(new IllegalStateException("broken"));
+
+        Access result = policy.checkPermission(document, mergedAcp, principal, "Read",
+                                             new String[]{"Read"}, new String[]{});
+
+        assertEquals(Access.UNKNOWN, result);
+        assertEquals(1, policy.getMetrics().errors.getCount());
+    }
+
+    @Test
+    public void testCheckPermission_Error_FailsClosed() {
+        policy = new GroupHidingSecurityPolicy(configuration, true);
+        when(configuration.hasHidingRules(eq("testuser"), any(), any())).thenThrow(new IllegalStateException("broken"));
+
+        Access result = policy.checkPermission(document, mergedAcp, principal, "Read",
+                                             new String[]{"Read"}, new String[]{});
+
+        assertEquals(Access.DENY, result);
+        assertEquals(1, policy.getMetrics().errors.getCount());
     }
 
     @Test
@@ -109,7 +203,15 @@ public class GroupHidingSecurityPolicyTest {
     }
 
     @Test
-    public void testIsExpressibleInQuery_ReturnsTrue() {
+    public void testIsExpressibleInQuery_ReturnsFalse() {
+        // Queries are post-filtered with checkPermission
+        when(configuration.hasRules()).thenReturn(true);
+        assertFalse(policy.isExpressibleInQuery("default"));
+    }
+
+    @Test
+    public void testIsExpressibleInQuery_NoRules_ReturnsTrue() {
+        when(configuration.hasRules()).thenReturn(false);
         assertTrue(policy.isExpressibleInQuery("default"));
     }
 }
\ No newline at end of file
@@ -0,0 +1,76 @@
+package com.example.nuxeo.grouphiding.security;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class PermissionTableTest {
+
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    private PermissionTable table;
+
+    @Before
+    public void setUp() {
+        table = new PermissionTable(permission -> {
+            lookups.incrementAndGet();
+            switch (permission) {
+            case "Read":
+                return new String[] { "ReadWrite", "Everything" };
+            case "Write":
+                return new String[] { "ReadWrite", "Everything" };
+            default:
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void testExpansionFromPermissionGroups() {
+        PermissionTable.PermissionSet read = table.expand("Read", null);
+
+        assertTrue(read.contains("Read"));
+        assertTrue(read.contains("ReadWrite"));
+        assertTrue(read.contains("Everything"));
+        assertFalse(read.contains("Write"));
+        assertFalse(read.contains("Unknown"));
+        assertFalse(read.contains(null));
+        assertEquals(new HashSet<>(Arrays.asList("Read", "ReadWrite", "Everything")),
+                new HashSet<>(Arrays.asList(read.getPermissions())));
+    }
+
+    @Test
+    public void testExpansionIsComputedOnce() {
+        PermissionTable.PermissionSet first = table.expand("Read", null);
+        assertSame(first, table.expand("Read", new String[] { "Read", "Everything" }));
+        assertEquals(1, lookups.get());
+    }
+
+    @Test
+    public void testResolvedPermissionsAreIncluded() {
+        PermissionTable.PermissionSet read = table.expand("Read", new String[] { "Read", "Browse" });
+
+        assertTrue(read.contains("Browse"));
+        assertTrue(read.contains("ReadWrite"));
+        assertFalse(table.expand("Read", null).contains("Browse"));
+    }
+
+    @Test
+    public void testPermissionsBeyondTheBitmask() {
+        for (int i = 0; i < PermissionTable.MAX_BITS; i++) {
+            table.expand("Permission" + i, null);
+        }
+
+        PermissionTable.PermissionSet read = table.expand("Read", null);
+        assertEquals(-1, table.bitOf("Read", false));
+        assertTrue(read.contains("Read"));
+        assertTrue(read.contains("ReadWrite"));
+        assertFalse(read.contains("Permission0"));
+        assertFalse(read.contains("Write"));
+    }
+}
\ No newline at end of file
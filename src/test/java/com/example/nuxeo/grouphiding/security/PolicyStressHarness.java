@@ -0,0 +1,665 @@
+package com.example.nuxeo.grouphiding.security;
+
+import com.example.nuxeo.grouphiding.impl.GroupHidingConfigurationImpl;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+import org.nuxeo.ecm.core.api.impl.UserPrincipal;
+import org.nuxeo.ecm.core.api.security.ACE;
+import org.nuxeo.ecm.core.api.security.ACP;
+import org.nuxeo.ecm.core.api.security.Access;
+import org.nuxeo.ecm.core.api.security.impl.ACLImpl;
+import org.nuxeo.ecm.core.api.security.impl.ACPImpl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Stress harness running many readers through {@link GroupHidingSecurityPolicy#checkPermission}
+ * while writers churn the rules of a {@link GroupHidingConfigurationImpl}, entirely in memory.
+ * <p>
+ * It reports the throughput and latency percentiles of the checks and of the rule changes, and
+ * the consistency violations observed:
+ * <ul>
+ * <li>each writer owns its users and checks after each change, then at the end, that the rules
+ * of its users are the ones it wrote, so a change lost by a concurrent writer is reported</li>
+ * <li>writers also regularly change a few shared users all at the same time, the rules of which
+ * must then be given by a linearization of these changes, see {@link SharedRulesModel}</li>
+ * <li>readers regularly check a pinned user whose rules never change, which must always be denied
+ * access granted through its hidden group only and never be denied access granted visibly</li>
+ * <li>readers check that the rules version they observe never decreases</li>
+ * <li>any check failing with an error</li>
+ * </ul>
+ * Run it with {@code mvn -Pstress test [-Dstress.args="..."]}, see {@link Options#parse} for the
+ * arguments and {@link PolicyStressHarnessTest#testConfiguredRun}.
+ */
+public class PolicyStressHarness {
+
+    private static final Logger log = LogManager.getLogger(PolicyStressHarness.class);
+
+    private static final String PERMISSION = "Read";
+
+    private static final String[] PERMISSIONS = { PERMISSION };
+
+    private static final String PINNED_USER = "pinned";
+
+    private static final String PINNED_GROUP = "pinned-hidden";
+
+    private static final String PINNED_VISIBLE_GROUP = "pinned-visible";
+
+    // Maximum number of violation messages kept, the others are only counted
+    private static final int MAX_VIOLATIONS = 100;
+
+    // Each writer changes the shared users every so many changes of its own users
+    private static final int SHARED_BURST_INTERVAL = 64;
+
+    private static final int SHARED_BURST_CHANGES = 32;
+
+    // Few groups, so that concurrent changes of a shared user often hit the same group
+    private static final int SHARED_GROUPS = 4;
+
+    /**
+     * Settings of a run.
+     */
+    public static final class Options {
+
+        int readers = 32;
+
+        int writers = 2;
+
+        long durationMs = 10_000;
+
+        int users = 1000;
+
+        int sharedUsers = 4;
+
+        int groups = 200;
+
+        int userGroups = 20;
+
+        int aces = 20;
+
+        int acps = 256;
+
+        boolean virtualThreads;
+
+        long seed = 42L;
+
+        /**
+         * Parse {@code --readers N}, {@code --writers N}, {@code --seconds N}, {@code --users N},
+         * {@code --shared N}, {@code --groups N}, {@code --aces N} and {@code --virtual}.
+         */
+        public static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                case "--readers":
+                    options.readers = Integer.parseInt(args[++i]);
+                    break;
+                case "--writers":
+                    options.writers = Integer.parseInt(args[++i]);
+                    break;
+                case "--seconds":
+                    options.durationMs = TimeUnit.SECONDS.toMillis(Long.parseLong(args[++i]));
+                    break;
+                case "--users":
+                    options.users = Integer.parseInt(args[++i]);
+                    break;
+                case "--shared":
+                    options.sharedUsers = Integer.parseInt(args[++i]);
+                    break;
+                case "--groups":
+                    options.groups = Integer.parseInt(args[++i]);
+                    break;
+                case "--aces":
+                    options.aces = Integer.parseInt(args[++i]);
+                    break;
+                case "--virtual":
+                    options.virtualThreads = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument: " + args[i]);
+                }
+            }
+            return options;
+        }
+    }
+
+    /**
+     * Outcome of a run.
+     */
+    public static final class Report {
+
+        final long checks;
+
+        final long writes;
+
+        final long elapsedNanos;
+
+        final LatencyHistogram checkLatency;
+
+        final LatencyHistogram writeLatency;
+
+        final int violationCount;
+
+        final List<String> violations;
+
+        Report(long elapsedNanos, LatencyHistogram checkLatency, LatencyHistogram writeLatency,
+               int violationCount, List<String> violations) {
+            this.checks = checkLatency.count();
+            this.writes = writeLatency.count();
+            this.elapsedNanos = elapsedNanos;
+            this.checkLatency = checkLatency;
+            this.writeLatency = writeLatency;
+            this.violationCount = violationCount;
+            this.violations = violations;
+        }
+
+        public long getChecksPerSecond() {
+            return elapsedNanos > 0 ? checks * TimeUnit.SECONDS.toNanos(1) / elapsedNanos : 0;
+        }
+
+        public int getViolationCount() {
+            return violationCount;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("checks: %d (%d/s), p50=%dns p99=%dns p999=%dns max=%dns%n", checks,
+                    getChecksPerSecond(), checkLatency.percentile(0.5), checkLatency.percentile(0.99),
+                    checkLatency.percentile(0.999), checkLatency.max()));
+            sb.append(String.format("rule changes: %d, p50=%dns p99=%dns p999=%dns max=%dns%n", writes,
+                    writeLatency.percentile(0.5), writeLatency.percentile(0.99), writeLatency.percentile(0.999),
+                    writeLatency.max()));
+            sb.append("violations: ").append(violationCount);
+            for (String violation : violations) {
+                sb.append(System.lineSeparator()).append("  ").append(violation);
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Log-linear latency histogram, with 16 buckets per power of two so percentiles are accurate to
+     * about 6%. Not thread safe: each thread records in its own histogram, merged at the end.
+     */
+    static final class LatencyHistogram {
+
+        private static final int SUB_BITS = 4;
+
+        private static final int SUB_COUNT = 1 << SUB_BITS;
+
+        private final long[] counts = new long[64 << SUB_BITS];
+
+        private long count;
+
+        private long max;
+
+        void record(long nanos) {
+            long value = Math.max(0, nanos);
+            counts[index(value)]++;
+            count++;
+            max = Math.max(max, value);
+        }
+
+        void merge(LatencyHistogram other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+            count += other.count;
+            max = Math.max(max, other.max);
+        }
+
+        long count() {
+            return count;
+        }
+
+        long max() {
+            return max;
+        }
+
+        /**
+         * @return the upper bound of the bucket holding the given percentile, 0 if empty
+         */
+        long percentile(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max);
+                }
+            }
+            return max;
+        }
+
+        static int index(long value) {
+            if (value < SUB_COUNT) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+            return ((exponent - SUB_BITS + 1) << SUB_BITS) + sub;
+        }
+
+        static long upperBound(int index) {
+            if (index < SUB_COUNT) {
+                return index;
+            }
+            int exponent = (index >>> SUB_BITS) + SUB_BITS - 1;
+            int sub = index & (SUB_COUNT - 1);
+            return ((long) (SUB_COUNT + sub + 1) << (exponent - SUB_BITS)) - 1;
+        }
+    }
+
+    /**
+     * Linearizable model of the rules of the users shared by all writers. Each pair of a user and a
+     * group is a register, set by an add and reset by a remove or a clear of the user; as
+     * linearizability is local, each register is checked on its own. The changes of a burst are
+     * recorded with the times they were invoked and returned, and checked once the writers are
+     * quiescent: a register must hold the value of a change that no other change of the burst was
+     * invoked after, which can be linearized last, or its previous value if it was not changed.
+     */
+    static final class SharedRulesModel {
+
+        /**
+         * A change of a shared user, without group for a clear.
+         */
+        static final class Change {
+
+            final String username;
+
+            final String group;
+
+            final boolean added;
+
+            final long invoked;
+
+            final long returned;
+
+            Change(String username, String group, boolean added, long invoked, long returned) {
+                this.username = username;
+                this.group = group;
+                this.added = added;
+                this.invoked = invoked;
+                this.returned = returned;
+            }
+
+            boolean writes(String register) {
+                return group == null || group.equals(register);
+            }
+        }
+
+        // Groups of each user after the last checked burst
+        private final Map<String, Set<String>> state = new HashMap<>();
+
+        private final Queue<Change> burst = new ConcurrentLinkedQueue<>();
+
+        void record(Change change) {
+            burst.add(change);
+        }
+
+        /**
+         * Check the rules of the users at the end of a burst, then use them as the state before the
+         * next one. Must be called while no change is made to these users.
+         *
+         * @param usernames the shared users
+         * @param actual the hidden groups of a user
+         * @return the violations
+         */
+        List<String> verify(Collection<String> usernames, Function<String, Set<String>> actual) {
+            Map<String, List<Change>> changes = new HashMap<>();
+            for (Change change : burst) {
+                changes.computeIfAbsent(change.username, u -> new ArrayList<>()).add(change);
+            }
+            burst.clear();
+            List<String> violations = new ArrayList<>();
+            for (String username : usernames) {
+                List<Change> userChanges = changes.getOrDefault(username, Collections.emptyList());
+                Set<String> previous = state.getOrDefault(username, Collections.emptySet());
+                Set<String> current = new HashSet<>(actual.apply(username));
+                Set<String> registers = new HashSet<>(previous);
+                registers.addAll(current);
+                for (Change change : userChanges) {
+                    if (change.group != null) {
+                        registers.add(change.group);
+                    }
+                }
+                for (String group : registers) {
+                    boolean value = current.contains(group);
+                    if (!isLinearizable(userChanges, group, previous.contains(group), value)) {
+                        violations.add("Hidden group " + group + " of shared user " + username + " is "
+                                + (value ? "present" : "absent") + ", no order of the concurrent changes gives it");
+                    }
+                }
+                state.put(username, current);
+            }
+            return violations;
+        }
+
+        private static boolean isLinearizable(List<Change> changes, String group, boolean previous, boolean value) {
+            long lastInvoked = Long.MIN_VALUE;
+            boolean written = false;
+            for (Change change : changes) {
+                if (change.writes(group)) {
+                    lastInvoked = written ? Math.max(lastInvoked, change.invoked) : change.invoked;
+                    written = true;
+                }
+            }
+            if (!written) {
+                return value == previous;
+            }
+            for (Change change : changes) {
+                // Not followed by another change in real time, so it may be the last one
+                if (change.writes(group) && change.returned - lastInvoked >= 0 && change.added == value) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final Options options;
+
+    private final GroupHidingConfigurationImpl configuration = new GroupHidingConfigurationImpl();
+
+    private final GroupHidingSecurityPolicy policy = new GroupHidingSecurityPolicy(configuration);
+
+    private final NuxeoPrincipal[] principals;
+
+    private final ACP[] acps;
+
+    private final NuxeoPrincipal pinnedPrincipal;
+
+    private final ACP hiddenAcp;
+
+    private final ACP visibleAcp;
+
+    private final AtomicInteger violationCount = new AtomicInteger();
+
+    private final Queue<String> violations = new ConcurrentLinkedQueue<>();
+
+    private final List<String> sharedUsers = new ArrayList<>();
+
+    private final SharedRulesModel sharedModel = new SharedRulesModel();
+
+    // Writers meet before and after each burst of changes of the shared users, checked after it
+    private final Phaser bursts = new Phaser() {
+        @Override
+        protected boolean onAdvance(int phase, int registeredParties) {
+            if ((phase & 1) == 1) {
+                for (String message : sharedModel.verify(sharedUsers, configuration::getHiddenGroupsForUser)) {
+                    violation(message);
+                }
+            }
+            return registeredParties == 0;
+        }
+    };
+
+    private volatile boolean running;
+
+    public PolicyStressHarness(Options options) {
+        this.options = options;
+        SplittableRandom random = new SplittableRandom(options.seed);
+        principals = new NuxeoPrincipal[options.users];
+        for (int i = 0; i < options.users; i++) {
+            List<String> groups = new ArrayList<>(options.userGroups);
+            for (int j = 0; j < options.userGroups; j++) {
+                groups.add(group(random));
+            }
+            principals[i] = new UserPrincipal(user(i), groups, false, false);
+        }
+        for (int i = 0; i < options.sharedUsers; i++) {
+            sharedUsers.add("shared" + i);
+        }
+        acps = new ACP[options.acps];
+        for (int i = 0; i < options.acps; i++) {
+            ACLImpl acl = new ACLImpl("local");
+            for (int j = 0; j < options.aces; j++) {
+                acl.add(new ACE(group(random), PERMISSION, random.nextInt(10) != 0));
+            }
+            acps[i] = acp(acl);
+        }
+
+        // Rules of the pinned user never change, so its decisions are known whatever the churn
+        pinnedPrincipal = new UserPrincipal(PINNED_USER, List.of(PINNED_GROUP, PINNED_VISIBLE_GROUP), false, false);
+        configuration.addHiddenGroup(PINNED_USER, PINNED_GROUP);
+        ACLImpl hidden = new ACLImpl("local");
+        hidden.add(new ACE(PINNED_GROUP, PERMISSION, true));
+        hiddenAcp = acp(hidden);
+        ACLImpl visible = new ACLImpl("local");
+        visible.add(new ACE(PINNED_GROUP, PERMISSION, true));
+        visible.add(new ACE(PINNED_VISIBLE_GROUP, PERMISSION, true));
+        visibleAcp = acp(visible);
+    }
+
+    private static ACP acp(ACLImpl acl) {
+        ACPImpl acp = new ACPImpl();
+        acp.addACL(acl);
+        return acp;
+    }
+
+    private String group(SplittableRandom random) {
+        return "group" + random.nextInt(options.groups);
+    }
+
+    private static String user(int i) {
+        return "user" + i;
+    }
+
+    /**
+     * Run the readers and writers for the configured duration.
+     */
+    public Report run() throws InterruptedException {
+        ExecutorService readerExecutor = newReaderExecutor();
+        ExecutorService writerExecutor = Executors.newFixedThreadPool(Math.max(1, options.writers));
+        List<Future<LatencyHistogram>> readers = new ArrayList<>();
+        List<Future<LatencyHistogram>> writers = new ArrayList<>();
+        running = true;
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < options.readers; i++) {
+                readers.add(readerExecutor.submit(reader(options.seed + i)));
+            }
+            bursts.bulkRegister(options.writers);
+            for (int i = 0; i < options.writers; i++) {
+                writers.add(writerExecutor.submit(writer(i)));
+            }
+            Thread.sleep(options.durationMs);
+            running = false;
+            LatencyHistogram checkLatency = collect(readers);
+            LatencyHistogram writeLatency = collect(writers);
+            long elapsed = System.nanoTime() - start;
+            long errors = policy.getMetrics().errors.getCount();
+            if (errors > 0) {
+                violation(errors + " checks failed with an error");
+            }
+            return new Report(elapsed, checkLatency, writeLatency, violationCount.get(),
+                    Collections.unmodifiableList(new ArrayList<>(violations)));
+        } finally {
+            running = false;
+            readerExecutor.shutdownNow();
+            writerExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return an executor with one virtual thread per reader if requested and available (Java 21
+     *         and later), with platform threads otherwise
+     */
+    private ExecutorService newReaderExecutor() {
+        if (options.virtualThreads) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                log.warn("Virtual threads are not available on Java {}, using platform threads",
+                        System.getProperty("java.specification.version"));
+            }
+        }
+        return Executors.newFixedThreadPool(Math.max(1, options.readers));
+    }
+
+    private static LatencyHistogram collect(List<Future<LatencyHistogram>> futures) throws InterruptedException {
+        LatencyHistogram merged = new LatencyHistogram();
+        for (Future<LatencyHistogram> future : futures) {
+            try {
+                merged.merge(future.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Stress task failed", e.getCause());
+            }
+        }
+        return merged;
+    }
+
+    private Callable<LatencyHistogram> reader(long seed) {
+        return () -> {
+            SplittableRandom random = new SplittableRandom(seed);
+            LatencyHistogram histogram = new LatencyHistogram();
+            long lastVersion = configuration.getRulesVersion();
+            long iteration = 0;
+            while (running) {
+                if ((++iteration & 15) == 0) {
+                    checkPinned(histogram);
+                    long version = configuration.getRulesVersion();
+                    if (version < lastVersion) {
+                        violation("Rules version went back from " + lastVersion + " to " + version);
+                    }
+                    lastVersion = version;
+                    continue;
+                }
+                NuxeoPrincipal principal = principals[random.nextInt(principals.length)];
+                ACP acp = acps[random.nextInt(acps.length)];
+                long begin = System.nanoTime();
+                policy.checkPermission(null, acp, principal, PERMISSION, PERMISSIONS, null);
+                histogram.record(System.nanoTime() - begin);
+            }
+            return histogram;
+        };
+    }
+
+    private void checkPinned(LatencyHistogram histogram) {
+        long begin = System.nanoTime();
+        Access hidden = policy.checkPermission(null, hiddenAcp, pinnedPrincipal, PERMISSION, PERMISSIONS, null);
+        Access visible = policy.checkPermission(null, visibleAcp, pinnedPrincipal, PERMISSION, PERMISSIONS, null);
+        long elapsed = (System.nanoTime() - begin) / 2;
+        histogram.record(elapsed);
+        histogram.record(elapsed);
+        if (hidden != Access.DENY) {
+            violation("Access through the hidden group of the pinned user was " + hidden);
+        }
+        if (visible == Access.DENY) {
+            violation("Access through a visible group of the pinned user was denied");
+        }
+    }
+
+    private Callable<LatencyHistogram> writer(int index) {
+        return () -> {
+            try {
+                return writeRules(index);
+            } finally {
+                bursts.arriveAndDeregister();
+            }
+        };
+    }
+
+    private LatencyHistogram writeRules(int index) {
+        SplittableRandom random = new SplittableRandom(options.seed ^ (index + 1) * 0x9E3779B97F4A7C15L);
+        LatencyHistogram histogram = new LatencyHistogram();
+        // Users i with i % writers == index belong to this writer only
+        List<String> owned = new ArrayList<>();
+        for (int i = index; i < options.users; i += options.writers) {
+            owned.add(user(i));
+        }
+        if (owned.isEmpty()) {
+            return histogram;
+        }
+        Map<String, Set<String>> expected = new HashMap<>();
+        long iteration = 0;
+        while (running) {
+            if (!sharedUsers.isEmpty() && ++iteration % SHARED_BURST_INTERVAL == 0) {
+                changeSharedUsers(random, histogram);
+                continue;
+            }
+            String username = owned.get(random.nextInt(owned.size()));
+            Set<String> groups = expected.computeIfAbsent(username, u -> new HashSet<>());
+            String group = group(random);
+            int operation = random.nextInt(10);
+            long begin = System.nanoTime();
+            if (operation < 5) {
+                configuration.addHiddenGroup(username, group);
+                groups.add(group);
+            } else if (operation < 9) {
+                configuration.removeHiddenGroup(username, group);
+                groups.remove(group);
+            } else {
+                configuration.clearHiddenGroupsForUser(username);
+                groups.clear();
+            }
+            histogram.record(System.nanoTime() - begin);
+            verify(username, groups);
+        }
+        for (Map.Entry<String, Set<String>> entry : expected.entrySet()) {
+            verify(entry.getKey(), entry.getValue());
+        }
+        return histogram;
+    }
+
+    private void changeSharedUsers(SplittableRandom random, LatencyHistogram histogram) {
+        // All the writers start together, so that their changes overlap
+        bursts.arriveAndAwaitAdvance();
+        for (int i = 0; i < SHARED_BURST_CHANGES; i++) {
+            String username = sharedUsers.get(random.nextInt(sharedUsers.size()));
+            String group = "group" + random.nextInt(SHARED_GROUPS);
+            int operation = random.nextInt(10);
+            long begin = System.nanoTime();
+            if (operation < 5) {
+                configuration.addHiddenGroup(username, group);
+            } else if (operation < 9) {
+                configuration.removeHiddenGroup(username, group);
+            } else {
+                configuration.clearHiddenGroupsForUser(username);
+                group = null;
+            }
+            long end = System.nanoTime();
+            histogram.record(end - begin);
+            sharedModel.record(new SharedRulesModel.Change(username, group, operation < 5, begin, end));
+        }
+        // Checked by the last writer done with the burst
+        bursts.arriveAndAwaitAdvance();
+    }
+
+    private void verify(String username, Set<String> expected) {
+        Set<String> actual = configuration.getHiddenGroupsForUser(username);
+        if (!actual.equals(expected)) {
+            violation("Hidden groups of " + username + " are " + actual + ", expected " + expected);
+        }
+    }
+
+    private void violation(String message) {
+        if (violationCount.incrementAndGet() <= MAX_VIOLATIONS) {
+            violations.add(message);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,108 @@
+package com.example.nuxeo.grouphiding.security;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PolicyStressHarnessTest {
+
+    private static final Logger log = LogManager.getLogger(PolicyStressHarnessTest.class);
+
+    /**
+     * System property holding the arguments of a full run, see {@link PolicyStressHarness.Options#parse}.
+     */
+    static final String ARGS_PROPERTY = "stress.args";
+
+    private static PolicyStressHarness.Options shortRun(String... args) {
+        PolicyStressHarness.Options options = PolicyStressHarness.Options.parse(args);
+        options.durationMs = 500;
+        options.users = 100;
+        return options;
+    }
+
+    @Test
+    public void testConcurrentChecksAndRuleChurn() throws InterruptedException {
+        PolicyStressHarness.Report report = new PolicyStressHarness(
+                shortRun("--readers", "8", "--writers", "4")).run();
+
+        assertEquals(report.toString(), 0, report.getViolationCount());
+        assertTrue(report.checks > 0);
+        assertTrue(report.writes > 0);
+        assertTrue(report.checkLatency.percentile(0.5) <= report.checkLatency.percentile(0.999));
+    }
+
+    @Test
+    public void testVirtualThreadReaders() throws InterruptedException {
+        // Falls back to platform threads before Java 21
+        PolicyStressHarness.Report report = new PolicyStressHarness(
+                shortRun("--readers", "64", "--writers", "2", "--virtual")).run();
+
+        assertEquals(report.toString(), 0, report.getViolationCount());
+        assertTrue(report.checks > 0);
+    }
+
+    /**
+     * Full run with the arguments of the {@value #ARGS_PROPERTY} system property, set by the
+     * {@code stress} Maven profile; skipped otherwise.
+     */
+    @Test
+    public void testConfiguredRun() throws InterruptedException {
+        String args = System.getProperty(ARGS_PROPERTY);
+        Assume.assumeTrue(args != null && !args.trim().isEmpty());
+
+        PolicyStressHarness.Report report = new PolicyStressHarness(
+                PolicyStressHarness.Options.parse(args.trim().split("\\s+"))).run();
+        log.info("Policy stress run with {}:\n{}", args.trim(), report);
+
+        assertEquals(report.toString(), 0, report.getViolationCount());
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        PolicyStressHarness.LatencyHistogram histogram = new PolicyStressHarness.LatencyHistogram();
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+
+        assertEquals(1000, histogram.count());
+        assertEquals(1_000_000, histogram.max());
+        long p50 = histogram.percentile(0.5);
+        assertTrue(String.valueOf(p50), p50 >= 500_000 && p50 <= 500_000 * 1.07);
+        long p99 = histogram.percentile(0.99);
+        assertTrue(String.valueOf(p99), p99 >= 990_000 && p99 <= 1_000_000);
+        assertEquals(0, new PolicyStressHarness.LatencyHistogram().percentile(0.99));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownArgument() {
+        PolicyStressHarness.Options.parse(new String[] { "--unknown" });
+    }
+
+    @Test
+    public void testSharedRulesModel() {
+        PolicyStressHarness.SharedRulesModel model = new PolicyStressHarness.SharedRulesModel();
+        List<String> users = Collections.singletonList("shared0");
+        // Overlapping add and remove: either may be last
+        model.record(new PolicyStressHarness.SharedRulesModel.Change("shared0", "group1", true, 0, 10));
+        model.record(new PolicyStressHarness.SharedRulesModel.Change("shared0", "group1", false, 5, 15));
+        assertEquals(Collections.emptyList(), model.verify(users, u -> Collections.singleton("group1")));
+
+        // The remove returned before the add was invoked, the group must be present
+        model.record(new PolicyStressHarness.SharedRulesModel.Change("shared0", "group1", false, 20, 30));
+        model.record(new PolicyStressHarness.SharedRulesModel.Change("shared0", "group1", true, 40, 50));
+        assertEquals(1, model.verify(users, u -> Collections.emptySet()).size());
+
+        // Unchanged since the last burst, and a clear overlapping an add of another group
+        model.record(new PolicyStressHarness.SharedRulesModel.Change("shared0", null, false, 60, 70));
+        model.record(new PolicyStressHarness.SharedRulesModel.Change("shared0", "group2", true, 65, 75));
+        assertEquals(Collections.emptyList(), model.verify(users, u -> Collections.singleton("group2")));
+        assertEquals(1, model.verify(users, u -> Collections.emptySet()).size());
+    }
+}
\ No newline at end of file
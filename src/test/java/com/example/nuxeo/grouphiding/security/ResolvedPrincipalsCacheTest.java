@@ -0,0 +1,127 @@
+package com.example.nuxeo.grouphiding.security;
+
+import com.example.nuxeo.grouphiding.impl.GroupHidingConfigurationImpl;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+import org.nuxeo.ecm.core.api.impl.UserPrincipal;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ResolvedPrincipalsCacheTest {
+
+    @Mock
+    private NuxeoPrincipal principal;
+
+    private GroupHidingConfigurationImpl configuration;
+
+    private ResolvedPrincipalsCache cache;
+
+    @Before
+    public void setUp() {
+        configuration = new GroupHidingConfigurationImpl();
+        cache = new ResolvedPrincipalsCache();
+
+        when(principal.getName()).thenReturn("testuser");
+        when(principal.getGroups()).thenReturn(Arrays.asList("group1", "hiddengroup"));
+        lenient().when(principal.isMemberOf("hiddengroup")).thenReturn(true);
+    }
+
+    @Test
+    public void testResolveSplitsVisibleAndHidden() {
+        configuration.addHiddenGroup("testuser", "hiddengroup");
+
+        ResolvedPrincipals resolved = cache.resolve(principal, configuration);
+
+        assertTrue(resolved.hasHiddenGroups());
+        assertArrayEquals(new String[] { "testuser", "group1" }, resolved.getVisiblePrincipals());
+        assertArrayEquals(new String[] { "hiddengroup" }, resolved.getHiddenGroups());
+    }
+
+    @Test
+    public void testResolveIsCachedUntilRulesChange() {
+        configuration.addHiddenGroup("testuser", "hiddengroup");
+
+        ResolvedPrincipals first = cache.resolve(principal, configuration);
+        assertSame(first, cache.resolve(principal, configuration));
+
+        configuration.removeHiddenGroup("testuser", "hiddengroup");
+        ResolvedPrincipals afterRemove = cache.resolve(principal, configuration);
+        assertNotSame(first, afterRemove);
+        assertFalse(afterRemove.hasHiddenGroups());
+    }
+
+    @Test
+    public void testResolveIsRecomputedWhenGroupsChange() {
+        configuration.addHiddenGroup("testuser", "hiddengroup");
+        ResolvedPrincipals first = cache.resolve(principal, configuration);
+
+        when(principal.getGroups()).thenReturn(Arrays.asList("group1", "group2", "hiddengroup"));
+        ResolvedPrincipals second = cache.resolve(principal, configuration);
+
+        assertNotSame(first, second);
+        assertArrayEquals(new String[] { "testuser", "group1", "group2" }, second.getVisiblePrincipals());
+    }
+
+    @Test
+    public void testResolveWithoutRules() {
+        ResolvedPrincipals resolved = cache.resolve(principal, configuration);
+        assertFalse(resolved.hasHiddenGroups());
+        assertEquals(0, resolved.getHiddenGroups().length);
+    }
+
+    @Test
+    public void testInvalidateGroups() {
+        configuration.addHiddenGroup("testuser", "hiddengroup");
+        ResolvedPrincipals first = cache.resolve(principal, configuration);
+
+        cache.invalidateGroups(Collections.singleton("othergroup"));
+        assertSame(first, cache.resolve(principal, configuration));
+
+        cache.invalidateGroups(Collections.singleton("group1"));
+        assertEquals(0, cache.size());
+        assertNotSame(first, cache.resolve(principal, configuration));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedUserIsEvicted() {
+        ResolvedPrincipalsCache bounded = new ResolvedPrincipalsCache(2);
+        NuxeoPrincipal alice = new UserPrincipal("alice", Arrays.asList("group1"), false, false);
+        NuxeoPrincipal bob = new UserPrincipal("bob", Arrays.asList("group1"), false, false);
+        NuxeoPrincipal carol = new UserPrincipal("carol", Arrays.asList("group1"), false, false);
+
+        ResolvedPrincipals first = bounded.resolve(alice, configuration);
+        ResolvedPrincipals second = bounded.resolve(bob, configuration);
+        // Alice is used again, so Bob is the least recently used user
+        assertSame(first, bounded.resolve(alice, configuration));
+        bounded.resolve(carol, configuration);
+
+        assertEquals(2, bounded.size());
+        assertSame(first, bounded.resolve(alice, configuration));
+        assertNotSame(second, bounded.resolve(bob, configuration));
+    }
+
+    @Test
+    public void testResolveIsRecomputedWhenInheritedGroupsChange() {
+        configuration.addHiddenGroup("testuser", "hiddengroup");
+        ResolvedPrincipals first = cache.resolve(principal, configuration);
+        assertSame(first, cache.resolve(principal, configuration));
+
+        // The user became a member of a group through one of its groups
+        when(principal.getAllGroups()).thenReturn(Arrays.asList("group1", "hiddengroup", "parentgroup"));
+        ResolvedPrincipals second = cache.resolve(principal, configuration);
+
+        assertNotSame(first, second);
+        assertArrayEquals(new String[] { "testuser", "group1", "parentgroup" }, second.getVisiblePrincipals());
+        assertSame(second, cache.resolve(principal, configuration));
+    }
+}
\ No newline at end of file
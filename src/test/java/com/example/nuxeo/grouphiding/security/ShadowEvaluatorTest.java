@@ -0,0 +1,139 @@
+package com.example.nuxeo.grouphiding.security;
+
+import com.example.nuxeo.grouphiding.api.RuleChange;
+import com.example.nuxeo.grouphiding.api.ShadowStatistics;
+import com.example.nuxeo.grouphiding.impl.GroupHidingConfigurationImpl;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+import org.nuxeo.ecm.core.api.impl.UserPrincipal;
+import org.nuxeo.ecm.core.api.security.ACE;
+import org.nuxeo.ecm.core.api.security.ACP;
+import org.nuxeo.ecm.core.api.security.Access;
+import org.nuxeo.ecm.core.api.security.impl.ACLImpl;
+import org.nuxeo.ecm.core.api.security.impl.ACPImpl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ShadowEvaluatorTest {
+
+    private static final String[] READ = { "Read" };
+
+    private GroupHidingConfigurationImpl configuration;
+
+    private GroupHidingSecurityPolicy policy;
+
+    private NuxeoPrincipal principal;
+
+    @Before
+    public void setUp() {
+        configuration = new GroupHidingConfigurationImpl();
+        policy = new GroupHidingSecurityPolicy(configuration);
+        principal = new UserPrincipal("testuser", Arrays.asList("group1", "group2"), false, false);
+    }
+
+    private static ACP grantedTo(String principal) {
+        ACLImpl acl = new ACLImpl("local");
+        acl.add(new ACE(principal, "Read", true));
+        ACPImpl acp = new ACPImpl();
+        acp.addACL(acl);
+        return acp;
+    }
+
+    private Access check(ACP acp) {
+        return policy.checkPermission(null, acp, principal, "Read", READ, null);
+    }
+
+    private void loadShadowRules(RuleChange... changes) {
+        configuration.loadShadowRules(Arrays.asList(changes), false);
+    }
+
+    @Test
+    public void testNothingSampledWithoutCandidate() {
+        check(grantedTo("group1"));
+
+        assertEquals(0, policy.getShadowEvaluator().drain());
+    }
+
+    @Test
+    public void testCandidateWouldDeny() {
+        loadShadowRules(RuleChange.add("testuser", "group1"));
+
+        // Enforced with the live rules only
+        assertEquals(Access.UNKNOWN, check(grantedTo("group1")));
+        check(grantedTo("group2"));
+        assertEquals(2, policy.getShadowEvaluator().drain());
+
+        ShadowStatistics statistics = configuration.getShadowStatistics();
+        assertEquals(2, statistics.getSampled());
+        assertEquals(1, statistics.getWouldDeny());
+        assertEquals(1, statistics.getUnchanged());
+        List<ShadowStatistics.Difference> top = statistics.getTopWouldDeny(10);
+        assertEquals(1, top.size());
+        assertEquals("testuser", top.get(0).getUsername());
+        assertEquals("group1", top.get(0).getHiddenGroup());
+        assertEquals(1, top.get(0).getCount());
+    }
+
+    @Test
+    public void testCandidateWouldAllow() {
+        configuration.addHiddenGroup("testuser", "group1");
+        loadShadowRules(RuleChange.remove("testuser", "group1"));
+
+        assertEquals(Access.DENY, check(grantedTo("group1")));
+        policy.getShadowEvaluator().drain();
+
+        ShadowStatistics statistics = configuration.getShadowStatistics();
+        assertEquals(1, statistics.getWouldAllow());
+        assertEquals(0, statistics.getWouldDeny());
+        assertEquals("group1", statistics.getTopWouldAllow(10).get(0).getHiddenGroup());
+    }
+
+    @Test
+    public void testReplacedCandidateIgnoresPendingChecks() {
+        loadShadowRules(RuleChange.add("testuser", "group1"));
+        check(grantedTo("group1"));
+        ShadowStatistics previous = configuration.getShadowStatistics();
+
+        loadShadowRules(RuleChange.add("testuser", "group2"));
+        policy.getShadowEvaluator().drain();
+
+        assertEquals(1, previous.getSampled());
+        assertEquals(0, previous.getWouldDeny());
+        assertEquals(0, configuration.getShadowStatistics().getSampled());
+    }
+
+    @Test
+    public void testChecksDroppedWhenBufferIsFull() {
+        ShadowEvaluator evaluator = new ShadowEvaluator(() -> configuration, new PermissionTable(permission -> null),
+                2, 1.0);
+        loadShadowRules(RuleChange.add("testuser", "group1"));
+        for (int i = 0; i < 5; i++) {
+            evaluator.sample(principal, grantedTo("group1"), "Read", READ);
+        }
+
+        assertEquals(2, evaluator.drain());
+        ShadowStatistics statistics = configuration.getShadowStatistics();
+        assertEquals(5, statistics.getSampled());
+        assertEquals(3, statistics.getDropped());
+        assertEquals(2, statistics.getWouldDeny());
+    }
+
+    @Test
+    public void testSamplingRate() {
+        ShadowEvaluator evaluator = new ShadowEvaluator(() -> configuration, new PermissionTable(permission -> null),
+                1024, 0.1);
+        loadShadowRules(RuleChange.add("testuser", "group1"));
+        for (int i = 0; i < 1000; i++) {
+            evaluator.sample(principal, grantedTo("group1"), "Read", READ);
+        }
+
+        long sampled = configuration.getShadowStatistics().getSampled();
+        assertEquals(String.valueOf(sampled), true, sampled > 30 && sampled < 250);
+        assertEquals(Collections.emptyList(), configuration.getShadowStatistics().getTopWouldAllow(10));
+    }
+}
\ No newline at end of file